@@ -14,6 +14,8 @@
 
 package org.jruyi.core.internal;
 
+import java.io.IOException;
+import java.nio.channels.FileChannel;
 import java.util.HashMap;
 import java.util.Map;
 
@@ -21,10 +23,14 @@ import org.jruyi.common.StrUtil;
 import org.jruyi.core.IBufferFactory;
 import org.jruyi.io.IBuffer;
 import org.jruyi.io.buffer.BufferFactory;
+import org.jruyi.io.buffer.IBufferFactoryConfiguration;
+import org.jruyi.io.buffer.IPooledBufferFactory;
+import org.jruyi.io.buffer.LeakDetector;
 
-final class BufferFactoryWrapper implements IBufferFactory, IBufferFactory.IConfiguration {
+final class BufferFactoryWrapper implements IBufferFactory, IBufferFactory.IConfiguration, IPooledBufferFactory,
+		IBufferFactoryConfiguration {
 
-	private final Map<String, Object> m_properties = new HashMap<>(2);
+	private final Map<String, Object> m_properties = new HashMap<>(8);
 	private final BufferFactory m_bf = new BufferFactory();
 	private boolean m_started;
 
@@ -52,6 +58,95 @@ final class BufferFactoryWrapper implements IBufferFactory, IBufferFactory.IConf
 		return v == null ? 8 * 1024 : (int) v;
 	}
 
+	@Override
+	public IBufferFactoryConfiguration unitType(String unitType) {
+		if (!BufferFactory.UNIT_TYPE_HEAP.equals(unitType) && !BufferFactory.UNIT_TYPE_DIRECT.equals(unitType))
+			throw new IllegalArgumentException(StrUtil.join("Illegal unitType: ", unitType));
+		m_properties.put(BufferFactory.UNIT_TYPE, unitType);
+		return this;
+	}
+
+	@Override
+	public String unitType() {
+		final Object v = m_properties.get(BufferFactory.UNIT_TYPE);
+		return v == null ? BufferFactory.UNIT_TYPE_HEAP : (String) v;
+	}
+
+	@Override
+	public IBufferFactoryConfiguration arenaCapacity(long arenaCapacity) {
+		if (arenaCapacity < 0L)
+			throw new IllegalArgumentException(StrUtil.join("Illegal arenaCapacity: ", arenaCapacity, " >= 0"));
+		m_properties.put(BufferFactory.ARENA_CAPACITY, arenaCapacity);
+		return this;
+	}
+
+	@Override
+	public long arenaCapacity() {
+		final Object v = m_properties.get(BufferFactory.ARENA_CAPACITY);
+		return v == null ? 64L * 1024 * 1024 : (long) v;
+	}
+
+	@Override
+	public IBufferFactoryConfiguration magazineSize(int magazineSize) {
+		if (magazineSize < 0)
+			throw new IllegalArgumentException(StrUtil.join("Illegal magazineSize: ", magazineSize, " >= 0"));
+		m_properties.put(BufferFactory.MAGAZINE_SIZE, magazineSize);
+		return this;
+	}
+
+	@Override
+	public int magazineSize() {
+		final Object v = m_properties.get(BufferFactory.MAGAZINE_SIZE);
+		return v == null ? 32 : (int) v;
+	}
+
+	@Override
+	public IBufferFactoryConfiguration leakDetection(String leakDetection) {
+		if (!LeakDetector.OFF.equals(leakDetection) && !LeakDetector.SAMPLE.equals(leakDetection)
+				&& !LeakDetector.PARANOID.equals(leakDetection))
+			throw new IllegalArgumentException(StrUtil.join("Illegal leakDetection: ", leakDetection));
+		m_properties.put(BufferFactory.LEAK_DETECTION, leakDetection);
+		return this;
+	}
+
+	@Override
+	public String leakDetection() {
+		final Object v = m_properties.get(BufferFactory.LEAK_DETECTION);
+		return v == null ? LeakDetector.OFF : (String) v;
+	}
+
+	@Override
+	public IBufferFactoryConfiguration memoryBudget(long memoryBudget) {
+		if (memoryBudget < 0L)
+			throw new IllegalArgumentException(StrUtil.join("Illegal memoryBudget: ", memoryBudget, " >= 0"));
+		m_properties.put(BufferFactory.MEMORY_BUDGET, memoryBudget);
+		return this;
+	}
+
+	@Override
+	public long memoryBudget() {
+		final Object v = m_properties.get(BufferFactory.MEMORY_BUDGET);
+		return v == null ? 0L : (long) v;
+	}
+
+	@Override
+	public IBufferFactoryConfiguration memoryLowWatermark(long memoryLowWatermark) {
+		if (memoryLowWatermark < 0L)
+			throw new IllegalArgumentException(StrUtil.join("Illegal memoryLowWatermark: ", memoryLowWatermark,
+					" >= 0"));
+		m_properties.put(BufferFactory.MEMORY_LOW_WATERMARK, memoryLowWatermark);
+		return this;
+	}
+
+	@Override
+	public long memoryLowWatermark() {
+		final Object v = m_properties.get(BufferFactory.MEMORY_LOW_WATERMARK);
+		if (v != null)
+			return (long) v;
+		final long memoryBudget = memoryBudget();
+		return memoryBudget - (memoryBudget >>> 2);
+	}
+
 	@Override
 	public String name() {
 		return (String) m_properties.get(BufferFactory.BUFFER_ID);
@@ -67,6 +162,51 @@ final class BufferFactoryWrapper implements IBufferFactory, IBufferFactory.IConf
 		return m_bf.create();
 	}
 
+	@Override
+	public IBuffer create(int sizeHint) {
+		return m_bf.create(sizeHint);
+	}
+
+	@Override
+	public IBuffer allocate(int capacity) {
+		return m_bf.allocate(capacity);
+	}
+
+	@Override
+	public IBuffer map(FileChannel fileChannel, long position, long size) throws IOException {
+		return m_bf.map(fileChannel, position, size);
+	}
+
+	@Override
+	public IBuffer wrap(byte[] bytes, int offset, int length) {
+		return m_bf.wrap(bytes, offset, length);
+	}
+
+	@Override
+	public IBuffer wrap(byte[][] arrays) {
+		return m_bf.wrap(arrays);
+	}
+
+	@Override
+	public long usage() {
+		return m_bf.usage();
+	}
+
+	@Override
+	public long footprint() {
+		return m_bf.footprint();
+	}
+
+	@Override
+	public long highWaterMark() {
+		return m_bf.highWaterMark();
+	}
+
+	@Override
+	public boolean isOverBudget() {
+		return m_bf.isOverBudget();
+	}
+
 	@Override
 	public synchronized void apply() {
 		if (m_started)
@@ -18,8 +18,9 @@ import java.util.Map;
 
 import org.jruyi.common.StrUtil;
 import org.jruyi.core.ITcpClientConfiguration;
+import org.jruyi.io.service.IAdaptiveReadConfiguration;
 
-abstract class TcpClientConfiguration implements ITcpClientConfiguration {
+abstract class TcpClientConfiguration implements ITcpClientConfiguration, IAdaptiveReadConfiguration {
 
 	private final Map<String, Object> m_properties;
 
@@ -51,6 +52,18 @@ abstract class TcpClientConfiguration implements ITcpClientConfiguration {
 		return this;
 	}
 
+	@Override
+	public boolean adaptiveRead() {
+		final Object v = m_properties.get("adaptiveRead");
+		return v == null ? true : (Boolean) v;
+	}
+
+	@Override
+	public TcpClientConfiguration adaptiveRead(boolean adaptiveRead) {
+		m_properties.put("adaptiveRead", adaptiveRead);
+		return this;
+	}
+
 	@Override
 	public int connectTimeoutInSeconds() {
 		final Object v = m_properties.get("connectTimeoutInSeconds");
@@ -14,6 +14,7 @@
 
 package org.jruyi.core.internal;
 
+import java.util.Collection;
 import java.util.Map;
 
 import org.jruyi.common.StrUtil;
@@ -23,9 +24,13 @@ import org.jruyi.core.ITcpServerConfiguration;
 import org.jruyi.io.ISession;
 import org.jruyi.io.ISessionListener;
 import org.jruyi.io.IoConstants;
+import org.jruyi.io.service.IAdaptiveReadConfiguration;
+import org.jruyi.io.service.IBroadcastConfiguration;
+import org.jruyi.io.service.IBroadcastService;
 import org.jruyi.io.tcpserver.TcpServer;
 
-final class TcpServerWrapper<I, O> implements ITcpServerConfiguration, INioService<I, O, ITcpServerConfiguration> {
+final class TcpServerWrapper<I, O> implements ITcpServerConfiguration, INioService<I, O, ITcpServerConfiguration>,
+		IBroadcastService<O>, IBroadcastConfiguration, IAdaptiveReadConfiguration {
 
 	private final Map<String, Object> m_properties;
 	private final TcpServer<I, O> m_tcpServer = new TcpServer<>();
@@ -102,6 +107,30 @@ final class TcpServerWrapper<I, O> implements ITcpServerConfiguration, INioServi
 		return this;
 	}
 
+	@Override
+	public boolean adaptiveRead() {
+		final Object v = m_properties.get("adaptiveRead");
+		return v == null ? true : (boolean) v;
+	}
+
+	@Override
+	public TcpServerWrapper<I, O> adaptiveRead(boolean adaptiveRead) {
+		m_properties.put("adaptiveRead", adaptiveRead);
+		return this;
+	}
+
+	@Override
+	public boolean statelessFilters() {
+		final Object v = m_properties.get("statelessFilters");
+		return v == null ? false : (boolean) v;
+	}
+
+	@Override
+	public TcpServerWrapper<I, O> statelessFilters(boolean statelessFilters) {
+		m_properties.put("statelessFilters", statelessFilters);
+		return this;
+	}
+
 	@Override
 	public Boolean keepAlive() {
 		return (Boolean) m_properties.get("keepAlive");
@@ -248,6 +277,16 @@ final class TcpServerWrapper<I, O> implements ITcpServerConfiguration, INioServi
 		m_tcpServer.write(session, msg);
 	}
 
+	@Override
+	public void broadcast(O msg) {
+		m_tcpServer.broadcast(msg);
+	}
+
+	@Override
+	public void broadcast(Collection<? extends ISession> sessions, O msg) {
+		m_tcpServer.broadcast(sessions, msg);
+	}
+
 	@Override
 	public synchronized void start() throws Throwable {
 		if (m_started)
@@ -20,20 +20,37 @@ import java.io.OutputStream;
 import java.nio.BufferUnderflowException;
 import java.nio.InvalidMarkException;
 import java.nio.channels.GatheringByteChannel;
+import java.nio.ByteBuffer;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
 import java.nio.channels.WritableByteChannel;
 import java.util.Arrays;
+import java.util.zip.Checksum;
 
 import org.jruyi.common.*;
 import org.jruyi.common.StringBuilder;
 import org.jruyi.io.*;
+import org.jruyi.io.hash.IByteBufferChecksum;
+import org.jruyi.io.search.ByteAhoCorasick;
+import org.jruyi.io.search.ByteHorspool;
 
 public final class Buffer implements IBuffer {
 
+	/**
+	 * The maximum number of units to read into by a single scattering read.
+	 */
+	public static final int MAX_SCATTER_UNITS = 16;
+
+	private static final int CHECKSUM_CHUNK_SIZE = 512;
+
 	private Var m_var;
+	private LeakDetector.Leak m_leak;
 
 	private Buffer(Var var) {
 		m_var = var;
+		final BufferFactory factory = var.factory();
+		if (factory != null)
+			m_leak = factory.leakDetector().track(this);
 	}
 
 	static Buffer get(BufferFactory factory) {
@@ -42,40 +59,45 @@ public final class Buffer implements IBuffer {
 		return new Buffer(var);
 	}
 
+	static Buffer get(BufferFactory factory, IUnit unit) {
+		final Var var = Var.get();
+		var.init(factory, unit);
+		return new Buffer(var);
+	}
+
+	static Buffer get(BufferFactory factory, IUnit[] units, int count) {
+		final Var var = Var.get(count);
+		var.init(factory, units, 0, count);
+		return new Buffer(var);
+	}
+
 	/**
 	 * {@code fromIndex} must be less than m_size and non-negative.
 	 */
 	private static int indexOf(byte b, IUnit unit, int fromIndex) {
-		int start = unit.start();
-		int end = start + unit.size();
-		fromIndex += start;
-		while (fromIndex < end) {
-			if (unit.byteAt(fromIndex) == b)
-				return fromIndex - start;
-			++fromIndex;
-		}
-		return -1;
+		final int start = unit.start();
+		final int index = Swar.indexOf(unit, b, start + fromIndex, start + unit.size());
+		return index < 0 ? -1 : index - start;
 	}
 
+	/**
+	 * Returns the index of the first occurrence of {@code bytes} in the unit,
+	 * or of its prefix running to the end of the unit. {@code bytes} must not
+	 * be empty.
+	 */
 	private static int indexOf(byte[] bytes, IUnit unit, int leftIndex) {
-		int start = unit.start();
-		int end = start + unit.size();
+		final int start = unit.start();
+		final int end = start + unit.size();
+		final int length = bytes.length;
+		final byte first = bytes[0];
 		int index = start + leftIndex;
-		int length = bytes.length;
-
-		next: for (; index < end; ++index) {
-			leftIndex = index;
-			int rightIndex = index + length;
-			if (rightIndex > end)
-				rightIndex = end;
-
-			int i = 0;
-			for (; leftIndex < rightIndex; ++leftIndex, ++i) {
-				if (unit.byteAt(leftIndex) != bytes[i])
-					continue next;
-			}
-
-			return index - start;
+		while (index < end && (index = Swar.indexOf(unit, first, index, end)) >= 0) {
+			int n = end - index;
+			if (n > length)
+				n = length;
+			if (Swar.equals(unit, index + 1, bytes, 1, n - 1))
+				return index - start;
+			++index;
 		}
 
 		return -1;
@@ -121,34 +143,20 @@ public final class Buffer implements IBuffer {
 	}
 
 	private static boolean startsWith(byte[] bytes, int offset, IUnit unit) {
-		int start = unit.start();
-		int end = bytes.length - offset;
-		int size = unit.size();
-		if (end > size)
-			end = size;
+		int length = bytes.length - offset;
+		final int size = unit.size();
+		if (length > size)
+			length = size;
 
-		end += start;
-		for (; start < end; ++start, ++offset) {
-			if (unit.byteAt(start) != bytes[offset])
-				return false;
-		}
-
-		return true;
+		return Swar.equals(unit, unit.start(), bytes, offset, length);
 	}
 
 	private static boolean endsWith(byte[] bytes, int offset, IUnit unit) {
-		int start = unit.start();
-		int size = unit.size();
-		int end = start + size;
-		if (offset < size)
-			start = end - offset;
-
-		while (end > start) {
-			if (unit.byteAt(--end) != bytes[--offset])
-				return false;
-		}
+		int length = unit.size();
+		if (length > offset)
+			length = offset;
 
-		return true;
+		return Swar.equals(unit, unit.start() + unit.size() - length, bytes, offset - length, length);
 	}
 
 	private static int compare(IUnit unit, IByteSequence sequence, int from, int len) {
@@ -165,16 +173,20 @@ public final class Buffer implements IBuffer {
 	}
 
 	private static int compare(IUnit unit1, int i, IUnit unit2, int j, int len) {
-		i += unit1.start();
-		j += unit2.start();
-		for (; len > 0; ++i, ++j, --len) {
-			byte b1 = unit1.byteAt(i);
-			byte b2 = unit2.byteAt(j);
-			if (b1 != b2)
-				return (b1 < b2) ? -1 : 1;
-		}
+		return Swar.compare(unit1, i + unit1.start(), unit2, j + unit2.start(), len);
+	}
 
-		return 0;
+	/**
+	 * Releases the units of the given var from index {@code p} on.
+	 */
+	private static void releaseFrom(Var var, int p) {
+		final IUnit[] units = var.units();
+		final BufferFactory factory = var.factory();
+		for (int i = var.length() - 1; i >= p; --i) {
+			factory.putUnit(units[i]);
+			units[i] = null;
+		}
+		var.length(p);
 	}
 
 	@Override
@@ -425,6 +437,121 @@ public final class Buffer implements IBuffer {
 		return n < 0 ? n : fromIndex + n;
 	}
 
+	/**
+	 * Returns the index of the first match of any pattern of the given
+	 * {@code matcher}, or -1 if not found.
+	 *
+	 * @param matcher
+	 *            the patterns to find
+	 * @return the index of the match, or -1
+	 */
+	public int indexOf(ByteAhoCorasick matcher) {
+		return indexOf(matcher, new ByteAhoCorasick.State(), 0);
+	}
+
+	/**
+	 * Feeds the bytes of this buffer from {@code fromIndex} on into the given
+	 * search over all the units in one pass, and returns the index of the first
+	 * byte of the match, or -1 if not found. The id of the matched pattern is
+	 * kept in {@code state}.
+	 * <p>
+	 * If not found, the search can be resumed from {@link #size()} with the
+	 * same state after more data is written. The returned index may then be
+	 * less than {@code fromIndex}.
+	 *
+	 * @param matcher
+	 *            the patterns to find
+	 * @param state
+	 *            the progress of the search
+	 * @param fromIndex
+	 *            the index to start searching at
+	 * @return the index of the match, or -1
+	 */
+	public int indexOf(ByteAhoCorasick matcher, ByteAhoCorasick.State state, int fromIndex) {
+		if (fromIndex < 0)
+			fromIndex = 0;
+
+		final Var var = m_var;
+		final IUnit[] units = var.units();
+		final int count = var.length();
+		int i = 0;
+		IUnit unit = units[i];
+		int index = fromIndex;
+		int unitSize;
+		while (index >= (unitSize = unit.size())) {
+			index -= unitSize;
+			if (++i == count)
+				return -1;
+			unit = units[i];
+		}
+
+		// base - the index of the first byte of the unit
+		int base = fromIndex - index;
+		for (;;) {
+			final int start = unit.start();
+			final int end = matcher.findIn(state, unit, start + index, unitSize - index);
+			if (end >= 0)
+				return base + end - start - matcher.length(state.pattern());
+
+			base += unitSize;
+			if (++i == count)
+				return -1;
+			unit = units[i];
+			unitSize = unit.size();
+			index = 0;
+		}
+	}
+
+	/**
+	 * Returns the index of the first occurrence of the given {@code pattern},
+	 * or -1 if not found.
+	 *
+	 * @param pattern
+	 *            the pattern to find
+	 * @return the index of the match, or -1
+	 */
+	public int indexOf(ByteHorspool pattern) {
+		return indexOf(pattern, 0);
+	}
+
+	/**
+	 * Returns the index of the first occurrence of the given {@code pattern}
+	 * starting at {@code fromIndex}, or -1 if not found.
+	 *
+	 * @param pattern
+	 *            the pattern to find
+	 * @param fromIndex
+	 *            the index to start searching at
+	 * @return the index of the match, or -1
+	 */
+	public int indexOf(ByteHorspool pattern, int fromIndex) {
+		if (fromIndex < 0)
+			fromIndex = 0;
+
+		final Var var = m_var;
+		final IUnit[] units = var.units();
+		final int count = var.length();
+		int i = 0;
+		IUnit unit = units[i];
+		int index = fromIndex;
+		int unitSize;
+		while (index >= (unitSize = unit.size())) {
+			index -= unitSize;
+			if (++i == count)
+				return pattern.length() < 1 ? fromIndex - index : -1;
+			unit = units[i];
+		}
+
+		// within one unit, search the unit directly
+		if (i == count - 1) {
+			final int start = unit.start();
+			final int n = pattern.findIn(unit, start + index, unitSize - index);
+			return n < 0 ? -1 : fromIndex + n - start - index;
+		}
+
+		return pattern.findIn(new Cursor(this), fromIndex, size() - fromIndex);
+	}
+
 	@Override
 	public int lastIndexOf(byte b) {
 		final Var var = m_var;
@@ -968,16 +1095,11 @@ public final class Buffer implements IBuffer {
 		final Var var = m_var;
 		final IUnit[] units = var.units();
 		final int len = var.length();
-		int i = 0;
-		IUnit unit;
-		int size;
-		while (index > (size = (unit = units[i]).size())) {
-			index -= size;
-			if (++i == len)
-				throw new IndexOutOfBoundsException();
-		}
+		int i = var.locateEnd(index);
+		IUnit unit = units[i];
+		index -= var.offset(i);
 
-		int n = size - index;
+		int n = unit.size() - index;
 		index += unit.start();
 		for (;;) {
 			if (n >= count) {
@@ -1026,33 +1148,18 @@ public final class Buffer implements IBuffer {
 	@Override
 	public IBuffer set(int index, byte b) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		final int len = var.length();
-		int i = 0;
-		IUnit unit;
-		int size;
-		while (index >= (size = (unit = units[i]).size())) {
-			index -= size;
-			if (++i == len)
-				throw new IndexOutOfBoundsException();
-		}
-		unit.set(unit.start() + index, b);
+		final int i = var.locate(index);
+		final IUnit unit = var.units()[i];
+		unit.set(unit.start() + index - var.offset(i), b);
 		return this;
 	}
 
 	@Override
 	public IBuffer set(int index, char c, ISetCharEncoder encoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			encoder.set(c, var, index);
@@ -1065,16 +1172,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public IBuffer set(int index, short s, ISetShortEncoder encoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			encoder.set(s, var, index);
@@ -1087,16 +1187,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public IBuffer set(int index, int i, ISetIntEncoder encoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int j = 0;
-		int size;
-		while (index > (size = units[j].size())) {
-			index -= size;
-			if (++j == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int j = var.locateEnd(index);
+		index -= var.offset(j);
+		final int n = var.positionIndex();
 		var.positionIndex(j);
 		try {
 			encoder.set(i, var, index);
@@ -1109,16 +1202,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public IBuffer set(int index, long l, ISetLongEncoder encoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			encoder.set(l, var, index);
@@ -1131,16 +1217,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public IBuffer set(int index, float f, ISetFloatEncoder encoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			encoder.set(f, var, index);
@@ -1153,16 +1232,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public IBuffer set(int index, double d, ISetDoubleEncoder encoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			encoder.set(d, var, index);
@@ -1175,16 +1247,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public <T> IBuffer set(int index, T src, ISetEncoder<T> encoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			encoder.set(src, var, index);
@@ -1197,16 +1262,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public <T> IBuffer set(int index, T src, int offset, int length, ISetRangedEncoder<T> encoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			encoder.set(src, offset, length, var, index);
@@ -1281,18 +1339,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public byte byteAt(int index) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		final int n = var.length();
-		int i = 0;
-		IUnit unit = units[i];
-		int size;
-		while (index >= (size = unit.size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-			unit = units[i];
-		}
-		return unit.byteAt(unit.start() + index);
+		final int i = var.locate(index);
+		final IUnit unit = var.units()[i];
+		return unit.byteAt(unit.start() + index - var.offset(i));
 	}
 
 	@Override
@@ -1318,16 +1367,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public char get(int index, IGetCharDecoder decoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			return decoder.get(var, index);
@@ -1339,16 +1381,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public short get(int index, IGetShortDecoder decoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			return decoder.get(var, index);
@@ -1360,16 +1395,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public int get(int index, IGetIntDecoder decoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			return decoder.get(var, index);
@@ -1381,16 +1409,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public long get(int index, IGetLongDecoder decoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			return decoder.get(var, index);
@@ -1402,16 +1423,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public float get(int index, IGetFloatDecoder decoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			return decoder.get(var, index);
@@ -1423,16 +1437,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public double get(int index, IGetDoubleDecoder decoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			return decoder.get(var, index);
@@ -1444,16 +1451,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public <T> T get(int index, IGetDecoder<T> decoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			return decoder.get(var, index);
@@ -1465,16 +1465,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public <T> T get(int index, int length, IGetLimitedDecoder<T> decoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			return decoder.get(var, index, length);
@@ -1486,16 +1479,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public <T> void get(int index, T dst, IGetToDstDecoder<T> decoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			decoder.get(dst, var, index);
@@ -1507,16 +1493,9 @@ public final class Buffer implements IBuffer {
 	@Override
 	public <T> void get(int index, T dst, int offset, int length, IGetToRangedDstDecoder<T> decoder) {
 		final Var var = m_var;
-		final IUnit[] units = var.units();
-		int n = var.length();
-		int i = 0;
-		int size;
-		while (index > (size = units[i].size())) {
-			index -= size;
-			if (++i == n)
-				throw new IndexOutOfBoundsException();
-		}
-		n = var.positionIndex();
+		final int i = var.locateEnd(index);
+		index -= var.offset(i);
+		final int n = var.positionIndex();
 		var.positionIndex(i);
 		try {
 			decoder.get(dst, offset, length, var, index);
@@ -1680,6 +1659,12 @@ public final class Buffer implements IBuffer {
 			return;
 		m_var = null;
 		var.close();
+
+		final LeakDetector.Leak leak = m_leak;
+		if (leak != null) {
+			m_leak = null;
+			leak.close();
+		}
 	}
 
 	@Override
@@ -1815,6 +1800,68 @@ public final class Buffer implements IBuffer {
 		return n;
 	}
 
+	/**
+	 * Reads a sequence of bytes from the given channel into this buffer. If
+	 * the last unit has room, the bytes are read into it alone as
+	 * {@link #readIn(ReadableByteChannel)} does. Otherwise, that is, the
+	 * previous read filled it up, new units are appended to hold up to
+	 * {@code maxBytes} bytes, at most {@value #MAX_SCATTER_UNITS} of them, and
+	 * the bytes are read into them by a single scattering read.
+	 * The appended units left empty are released.
+	 *
+	 * @param in
+	 *            the channel to read from
+	 * @param maxBytes
+	 *            the number of bytes the appended units are to hold
+	 * @return the number of bytes read, possibly zero, or -1 if the channel has
+	 *         reached end-of-stream
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public long readIn(ScatteringByteChannel in, long maxBytes) throws IOException {
+		final Var var = m_var;
+		if (var.lastUnit().appendable())
+			return readIn(in);
+
+		final int p = var.length();
+		IUnit unit = var.create();
+		final int capacity = unit.capacity();
+		final long count = maxBytes / capacity;
+		final int m = count < 2L ? 1 : (count < MAX_SCATTER_UNITS ? (int) count : MAX_SCATTER_UNITS);
+		final ByteBufferArray bba = ByteBufferArray.get(m);
+		final long n;
+		try {
+			for (;;) {
+				var.append(unit);
+				bba.add(unit.getByteBufferForWrite());
+				if (bba.size() == m)
+					break;
+				unit = var.create();
+			}
+			n = in.read(bba.array(), 0, m);
+		} catch (Throwable t) {
+			bba.clear();
+			releaseFrom(var, p);
+			throw t;
+		}
+
+		final ByteBuffer[] bbs = bba.array();
+		final IUnit[] units = var.units();
+		int i = 0;
+		if (n > 0L) {
+			for (; i < m; ++i) {
+				unit = units[p + i];
+				final int size = bbs[i].position() - unit.start();
+				if (size < 1)
+					break;
+				unit.size(size);
+			}
+		}
+		bba.clear();
+		releaseFrom(var, p + i);
+		return n;
+	}
+
 	@Override
 	public int writeOut(WritableByteChannel out) throws IOException {
 		final Var var = m_var;
@@ -1860,6 +1907,101 @@ public final class Buffer implements IBuffer {
 		return n;
 	}
 
+	/**
+	 * Adds read-only views of the bytes in the range [{@code index},
+	 * {@code index + length}) of this buffer to {@code dst}, one per unit the
+	 * range spans. The views share the content of the units without copying,
+	 * so they can be handed to JDK APIs such as a {@code MessageDigest} or a
+	 * {@code Cipher}. They are valid until this buffer is next modified or
+	 * closed.
+	 *
+	 * @param index
+	 *            the index of the first byte of the range
+	 * @param length
+	 *            the number of bytes of the range
+	 * @param dst
+	 *            the array to add the views to
+	 * @return the number of views added
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is out of this buffer
+	 */
+	public int getByteBuffers(int index, int length, ByteBufferArray dst) {
+		if (index < 0 || length < 0 || index > size() - length)
+			throw new IndexOutOfBoundsException();
+
+		final Var var = m_var;
+		final IUnit[] units = var.units();
+		int i = var.locateEnd(index);
+		index -= var.offset(i);
+		int n = 0;
+		while (length > 0) {
+			final IUnit unit = units[i++];
+			int m = unit.size() - index;
+			if (m > 0) {
+				if (m > length)
+					m = length;
+				dst.add(unit.getByteBufferForRead(index, m).asReadOnlyBuffer());
+				length -= m;
+				++n;
+			}
+			index = 0;
+		}
+		return n;
+	}
+
+	/**
+	 * Updates the given checksum with the bytes in the range [{@code index},
+	 * {@code index + length}) of this buffer, straight from the units. The
+	 * bytes of direct units are copied out in small chunks unless the checksum
+	 * is an {@link IByteBufferChecksum}.
+	 *
+	 * @param index
+	 *            the index of the first byte of the range
+	 * @param length
+	 *            the number of bytes of the range
+	 * @param checksum
+	 *            the checksum to update
+	 * @return the given checksum
+	 * @throws IndexOutOfBoundsException
+	 *             if the range is out of this buffer
+	 */
+	public <T extends Checksum> T checksum(int index, int length, T checksum) {
+		if (index < 0 || length < 0 || index > size() - length)
+			throw new IndexOutOfBoundsException();
+
+		final Var var = m_var;
+		final IUnit[] units = var.units();
+		int i = var.locateEnd(index);
+		index -= var.offset(i);
+		byte[] chunk = null;
+		while (length > 0) {
+			final IUnit unit = units[i++];
+			int m = unit.size() - index;
+			if (m > 0) {
+				if (m > length)
+					m = length;
+				final ByteBuffer bb = unit.getByteBufferForRead(index, m);
+				if (bb.hasArray())
+					checksum.update(bb.array(), bb.arrayOffset() + bb.position(), m);
+				else if (checksum instanceof IByteBufferChecksum)
+					((IByteBufferChecksum) checksum).update(bb);
+				else {
+					if (chunk == null)
+						chunk = new byte[Math.min(length, CHECKSUM_CHUNK_SIZE)];
+					for (int n = m; n > 0;) {
+						final int k = Math.min(n, chunk.length);
+						bb.get(chunk, 0, k);
+						checksum.update(chunk, 0, k);
+						n -= k;
+					}
+				}
+				length -= m;
+			}
+			index = 0;
+		}
+		return checksum;
+	}
+
 	@Override
 	public OutputStream getOutputStream() {
 		return new BufferOutputStream(this);
@@ -1910,6 +2052,50 @@ public final class Buffer implements IBuffer {
 		return new Buffer(dupVar);
 	}
 
+	/**
+	 * Returns a new read-only buffer sharing the content of this buffer, with
+	 * its own position and mark. The shared units are reference counted and go
+	 * back to the buffer factory when this buffer and all the retained ones are
+	 * closed. Unlike {@link #duplicate()}, the retained buffer is meant to be
+	 * closed and may be handed to another thread. So one encoded message can be
+	 * written to many sessions without copying it, each session closing its own
+	 * copy.
+	 * <p>
+	 * The shared units cannot be modified through the retained buffer. Writing
+	 * to it, such as a filter prepending a header, goes to new units of its
+	 * own. The content must not be modified through this buffer while it is
+	 * shared. This method must be called by the thread owning this buffer.
+	 *
+	 * @return a new buffer sharing the content of this buffer
+	 */
+	public Buffer retain() {
+		final Var var = m_var;
+		final IUnit[] units = var.units();
+		final int n = var.length();
+
+		final Var retainedVar = Var.get(n);
+		retainedVar.init(var.factory(), units, 0, n);
+		final IUnit[] retainedUnits = retainedVar.units();
+		for (int i = 0; i < n; ++i) {
+			final IUnit unit = retainedUnits[i].duplicate();
+			retainedUnits[i] = unit instanceof ReadOnlyUnit ? unit : new ReadOnlyUnit(unit, true);
+		}
+
+		retainedVar.positionIndex(var.positionIndex());
+		retainedVar.markIndex(var.markIndex());
+
+		return new Buffer(retainedVar);
+	}
+
+	/**
+	 * Releases this reference to the shared content. The units go back to the
+	 * buffer factory once the last reference is released. Same as
+	 * {@link #close()}.
+	 */
+	public void release() {
+		close();
+	}
+
 	public IUnitChain unitChain() {
 		return m_var;
 	}
@@ -1928,6 +2114,17 @@ public final class Buffer implements IBuffer {
 		return i;
 	}
 
+	int peekByte() {
+		final Var var = m_var;
+		final IUnit[] units = var.units();
+		for (int i = var.positionIndex(), n = var.length(); i < n; ++i) {
+			final IUnit unit = units[i];
+			if (!unit.isEmpty())
+				return unit.byteAt(unit.start() + unit.position()) & 0xFF;
+		}
+		return -1;
+	}
+
 	private int compareInternal(IBuffer that) {
 		final Var var = m_var;
 		int n = that.remaining();
@@ -1968,15 +2165,89 @@ public final class Buffer implements IBuffer {
 		return n;
 	}
 
+	/**
+	 * A view of the bytes of a buffer for random access nearby, which moves
+	 * from unit to unit instead of walking from the first unit on each access.
+	 */
+	static final class Cursor implements IByteSequence {
+
+		private final Buffer m_buffer;
+		private final IUnit[] m_units;
+		private int m_i;
+		private IUnit m_unit;
+		// the index of the first byte of the current unit
+		private int m_base;
+
+		Cursor(Buffer buffer) {
+			final IUnit[] units = buffer.m_var.units();
+			m_buffer = buffer;
+			m_units = units;
+			m_unit = units[0];
+		}
+
+		@Override
+		public byte byteAt(int index) {
+			IUnit unit = m_unit;
+			int base = m_base;
+			if (index < base) {
+				int i = m_i;
+				do {
+					unit = m_units[--i];
+					base -= unit.size();
+				} while (index < base);
+				m_i = i;
+				m_unit = unit;
+				m_base = base;
+			} else if (index >= base + unit.size()) {
+				int i = m_i;
+				do {
+					base += unit.size();
+					unit = m_units[++i];
+				} while (index >= base + unit.size());
+				m_i = i;
+				m_unit = unit;
+				m_base = base;
+			}
+			return unit.byteAt(unit.start() + index - base);
+		}
+
+		@Override
+		public byte[] getBytes(int start) {
+			return m_buffer.getBytes(start);
+		}
+
+		@Override
+		public byte[] getBytes(int start, int length) {
+			return m_buffer.getBytes(start, length);
+		}
+
+		@Override
+		public void getBytes(int srcBegin, int srcEnd, byte[] dst, int dstBegin) {
+			m_buffer.getBytes(srcBegin, srcEnd, dst, dstBegin);
+		}
+
+		@Override
+		public int length() {
+			return m_buffer.length();
+		}
+	}
+
 	static final class Var implements ICloseable, IUnitChain {
 
 		private static final IThreadLocalCache<Var> c_cache = ThreadLocalCache.weakLinkedCache();
+		// the number of units from which index lookups use binary search
+		private static final int INDEX_THRESHOLD = 8;
 
 		private BufferFactory m_factory;
 		private int m_positionIndex = -1;
 		private int m_markIndex = -1;
 		private IUnit[] m_units;
 		private int m_length = 0;
+		// m_offsets[i] is the offset of unit i from the end of unit 0, valid
+		// for 0 < i <= m_indexed. Unit 0 and the last unit are not indexed, as
+		// prepending and appending change their sizes.
+		private int[] m_offsets;
+		private int m_indexed;
 
 		private Var() {
 			m_units = new IUnit[8];
@@ -2014,6 +2285,7 @@ public final class Buffer implements IBuffer {
 		}
 
 		void init(BufferFactory factory) {
+			m_indexed = 0;
 			m_units[0] = factory.getUnit();
 			m_positionIndex = 0;
 			m_length = 1;
@@ -2021,6 +2293,7 @@ public final class Buffer implements IBuffer {
 		}
 
 		void init(BufferFactory factory, IUnit unit) {
+			m_indexed = 0;
 			m_positionIndex = 0;
 			m_length = 1;
 			m_units[0] = unit;
@@ -2028,6 +2301,7 @@ public final class Buffer implements IBuffer {
 		}
 
 		void init(BufferFactory factory, IUnit[] units, int offset, int count) {
+			m_indexed = 0;
 			m_positionIndex = 0;
 			m_length = count;
 			System.arraycopy(units, offset, m_units, 0, count);
@@ -2047,9 +2321,128 @@ public final class Buffer implements IBuffer {
 		}
 
 		void length(int newLength) {
+			m_indexed = 0;
 			m_length = newLength;
 		}
 
+		/**
+		 * Returns the index of the unit holding the byte at the given index.
+		 */
+		int locate(int index) {
+			final IUnit[] units = m_units;
+			int size = units[0].size();
+			if (index < size)
+				return 0;
+
+			final int last = m_length - 1;
+			if (last < INDEX_THRESHOLD) {
+				int i = 0;
+				do {
+					index -= size;
+					if (++i > last)
+						throw new IndexOutOfBoundsException();
+				} while (index >= (size = units[i].size()));
+				return i;
+			}
+
+			index -= size;
+			final int i = search(index, last, false);
+			if (i == last && index - m_offsets[i] >= units[i].size())
+				throw new IndexOutOfBoundsException();
+			return i;
+		}
+
+		/**
+		 * Returns the index of the first unit holding the byte at the given
+		 * index or ending at it.
+		 */
+		int locateEnd(int index) {
+			final IUnit[] units = m_units;
+			int size = units[0].size();
+			if (index <= size)
+				return 0;
+
+			final int last = m_length - 1;
+			if (last < INDEX_THRESHOLD) {
+				int i = 0;
+				do {
+					index -= size;
+					if (++i > last)
+						throw new IndexOutOfBoundsException();
+				} while (index > (size = units[i].size()));
+				return i;
+			}
+
+			index -= size;
+			final int i = search(index, last, true);
+			if (i == last && index - m_offsets[i] > units[i].size())
+				throw new IndexOutOfBoundsException();
+			return i;
+		}
+
+		/**
+		 * Returns the index of the first byte of the given unit. The unit index
+		 * must have been returned by {@link #locate(int)} or
+		 * {@link #locateEnd(int)} with no change to this var since.
+		 */
+		int offset(int i) {
+			if (i < 1)
+				return 0;
+
+			final IUnit[] units = m_units;
+			if (m_length - 1 < INDEX_THRESHOLD) {
+				int offset = 0;
+				while (i > 0)
+					offset += units[--i].size();
+				return offset;
+			}
+
+			return units[0].size() + m_offsets[i];
+		}
+
+		/**
+		 * Returns the largest unit index i in [1, last] with m_offsets[i] less
+		 * than {@code r}, or not greater than {@code r} unless {@code end}.
+		 */
+		private int search(int r, int last, boolean end) {
+			final int[] offsets = index(last);
+			int lo = 1;
+			int hi = last;
+			while (lo < hi) {
+				final int mid = (lo + hi + 1) >>> 1;
+				final int offset = offsets[mid];
+				if (offset < r || (!end && offset == r))
+					lo = mid;
+				else
+					hi = mid - 1;
+			}
+			return lo;
+		}
+
+		private int[] index(int last) {
+			int[] offsets = m_offsets;
+			int i = m_indexed;
+			if (offsets == null || offsets.length <= last) {
+				final int[] newOffsets = new int[m_units.length > last ? m_units.length : last + 1];
+				if (i > 0)
+					System.arraycopy(offsets, 0, newOffsets, 0, i + 1);
+				offsets = newOffsets;
+				m_offsets = offsets;
+			}
+
+			if (i < last) {
+				final IUnit[] units = m_units;
+				if (i < 1) {
+					offsets[1] = 0;
+					i = 1;
+				}
+				for (; i < last; ++i)
+					offsets[i + 1] = offsets[i] + units[i].size();
+				m_indexed = last;
+			}
+			return offsets;
+		}
+
 		int positionIndex() {
 			return m_positionIndex;
 		}
@@ -2127,6 +2520,7 @@ public final class Buffer implements IBuffer {
 
 			m_units[0] = unit;
 			m_length = newLength;
+			m_indexed = 0;
 		}
 
 		@Override
@@ -2207,6 +2601,7 @@ public final class Buffer implements IBuffer {
 			m_positionIndex = 0;
 			m_markIndex = -1;
 			m_length = 1;
+			m_indexed = 0;
 			units[0].clear();
 		}
 
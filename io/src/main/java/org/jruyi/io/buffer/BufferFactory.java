@@ -14,13 +14,14 @@
 
 package org.jruyi.io.buffer;
 
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
 
-import org.jruyi.common.IThreadLocalCache;
 import org.jruyi.common.StrUtil;
-import org.jruyi.common.ThreadLocalCache;
 import org.jruyi.io.IBuffer;
-import org.jruyi.io.IBufferFactory;
 import org.jruyi.io.IUnit;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Modified;
@@ -28,23 +29,270 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 @Component(name = "jruyi.io.buffer", xmlns = "http://www.osgi.org/xmlns/scr/v1.1.0")
-public final class BufferFactory implements IBufferFactory {
+public final class BufferFactory implements IPooledBufferFactory {
 
 	public static final int MIN_UNIT_CAPACITY = 8;
 
 	public static final String BUFFER_ID = "jruyi.io.buffer.id";
 	public static final String UNIT_CAPACITY = "unitCapacity";
+	public static final String UNIT_TYPE = "unitType";
+	public static final String ARENA_CAPACITY = "arenaCapacity";
+	public static final String MAGAZINE_SIZE = "magazineSize";
+	public static final String LEAK_DETECTION = "leakDetection";
+	public static final String MEMORY_BUDGET = "memoryBudget";
+	public static final String MEMORY_LOW_WATERMARK = "memoryLowWatermark";
+
+	public static final String UNIT_TYPE_HEAP = "heap";
+	public static final String UNIT_TYPE_DIRECT = "direct";
+
+	private static final int MAX_MAPPED_UNIT_SIZE = 1024 * 1024 * 1024;
+	private static final long DEFAULT_ARENA_CAPACITY = 64L * 1024 * 1024;
+	private static final int DEFAULT_MAGAZINE_SIZE = 32;
 
 	private static final Logger c_logger = LoggerFactory.getLogger(BufferFactory.class);
 
-	private final IThreadLocalCache<HeapUnit> m_unitCache = ThreadLocalCache.weakLinkedCache();
+	private final UnitArena m_heapArena = new UnitArena(false, DEFAULT_ARENA_CAPACITY, DEFAULT_MAGAZINE_SIZE);
+	private final UnitArena m_directArena = new UnitArena(true, DEFAULT_ARENA_CAPACITY, DEFAULT_MAGAZINE_SIZE);
+	private final LeakDetector m_leakDetector = new LeakDetector();
+	private UnitArena m_arena = m_heapArena;
 	private int m_unitCapacity = 1024 * 8;
+	private String m_name = "BufferFactory";
+
+	// 0 for no budget
+	private volatile long m_memoryBudget;
+	private volatile long m_lowWatermark;
+	private volatile boolean m_overBudget;
+	private final ConcurrentLinkedQueue<IBudgetListener> m_budgetWaiters = new ConcurrentLinkedQueue<>();
 
 	@Override
 	public IBuffer create() {
 		return Buffer.get(this);
 	}
 
+	/**
+	 * Creates a buffer whose first unit is taken from the smallest size class
+	 * that holds {@code sizeHint} bytes, so that a small message does not pin a
+	 * whole unit of {@code unitCapacity} bytes. Units appended later are of
+	 * {@code unitCapacity} as usual.
+	 *
+	 * @param sizeHint
+	 *            the expected size of the buffer
+	 * @return a new buffer
+	 */
+	@Override
+	public IBuffer create(int sizeHint) {
+		return Buffer.get(this, getUnitForSize(sizeHint));
+	}
+
+	/**
+	 * Creates a buffer whose first unit is taken from the smallest size class
+	 * that holds {@code capacity} bytes. Unlike {@link #create(int)}, the unit
+	 * may be larger than {@code unitCapacity}. It is meant for reading in bulk
+	 * data with fewer system calls.
+	 *
+	 * @param capacity
+	 *            the minimum capacity of the first unit
+	 * @return a new buffer
+	 */
+	@Override
+	public IBuffer allocate(int capacity) {
+		return Buffer.get(this, m_arena.take(UnitArena.classCapacity(capacity)));
+	}
+
+	/**
+	 * Maps the given region of the given file into memory read-only and returns
+	 * a buffer over it. The content stays in the page cache rather than being
+	 * copied onto the heap, and writing the buffer out to a channel gathers
+	 * straight from the mapping.
+	 * <p>
+	 * The region is unmapped when the mapped units are garbage collected. The
+	 * mapped content cannot be modified through the returned buffer, and the
+	 * file must not be truncated while the buffer is in use.
+	 *
+	 * @param fileChannel
+	 *            the file to map
+	 * @param position
+	 *            the position within the file at which the region starts
+	 * @param size
+	 *            the size of the region to map
+	 * @return a new buffer over the mapped region
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	@Override
+	public IBuffer map(FileChannel fileChannel, long position, long size) throws IOException {
+		if (position < 0L || size < 0L)
+			throw new IllegalArgumentException();
+
+		int n = (int) ((size + MAX_MAPPED_UNIT_SIZE - 1) / MAX_MAPPED_UNIT_SIZE);
+		if (n < 1)
+			return create();
+
+		final IUnit[] units = new IUnit[n];
+		n = 0;
+		do {
+			final int length = (int) Math.min(size, MAX_MAPPED_UNIT_SIZE);
+			final MappedByteBuffer mbb = fileChannel.map(FileChannel.MapMode.READ_ONLY, position, length);
+			units[n++] = new ReadOnlyUnit(new DirectUnit(mbb, 0, length, null));
+			position += length;
+			size -= length;
+		} while (size > 0L);
+
+		return Buffer.get(this, units, n);
+	}
+
+	/**
+	 * Returns a read-only buffer over the given region of the given byte array
+	 * without copying. Writing the buffer out to a channel reads straight from
+	 * the array, and the array never goes into the unit pool.
+	 * <p>
+	 * The content cannot be modified through the returned buffer, but changes
+	 * made to the array by the caller are visible to it.
+	 *
+	 * @param bytes
+	 *            the byte array to wrap
+	 * @param offset
+	 *            the offset of the region within the array
+	 * @param length
+	 *            the length of the region
+	 * @return a new buffer over the given region
+	 */
+	@Override
+	public IBuffer wrap(byte[] bytes, int offset, int length) {
+		if ((offset | length | (offset + length) | (bytes.length - (offset + length))) < 0)
+			throw new IndexOutOfBoundsException();
+
+		if (length < 1)
+			return create();
+
+		return Buffer.get(this, new ReadOnlyUnit(new HeapUnit(bytes, offset, length, null)));
+	}
+
+	/**
+	 * Returns a read-only buffer over the given byte arrays in order without
+	 * copying, one unit per non-empty array.
+	 *
+	 * @param arrays
+	 *            the byte arrays to wrap
+	 * @return a new buffer over the given arrays
+	 * @see #wrap(byte[], int, int)
+	 */
+	@Override
+	public IBuffer wrap(byte[][] arrays) {
+		final IUnit[] units = new IUnit[arrays.length];
+		int n = 0;
+		for (final byte[] bytes : arrays) {
+			if (bytes.length > 0)
+				units[n++] = new ReadOnlyUnit(new HeapUnit(bytes, 0, bytes.length, null));
+		}
+
+		if (n < 1)
+			return create();
+
+		return Buffer.get(this, units, n);
+	}
+
+	/**
+	 * Returns the number of bytes currently allocated by the unit arena,
+	 * including units in use and units pooled.
+	 *
+	 * @return the current footprint of the unit arena in bytes
+	 */
+	@Override
+	public long footprint() {
+		return m_arena.footprint();
+	}
+
+	/**
+	 * Returns the peak of {@link #footprint()} since this factory was created.
+	 *
+	 * @return the high-water mark of the unit arena in bytes
+	 */
+	@Override
+	public long highWaterMark() {
+		return m_arena.highWaterMark();
+	}
+
+	/**
+	 * Returns the number of bytes of the units currently taken by buffers,
+	 * excluding the units pooled.
+	 *
+	 * @return the bytes in use
+	 */
+	@Override
+	public long usage() {
+		return m_heapArena.inUse() + m_directArena.inUse();
+	}
+
+	/**
+	 * Returns the memory budget in bytes, or 0 if there is no budget.
+	 *
+	 * @return the memory budget
+	 */
+	public long memoryBudget() {
+		return m_memoryBudget;
+	}
+
+	/**
+	 * Returns the usage in bytes to which this factory has to drop before it is
+	 * no longer over budget.
+	 *
+	 * @return the low watermark of the memory budget
+	 */
+	public long memoryLowWatermark() {
+		return m_lowWatermark;
+	}
+
+	/**
+	 * Tests whether {@link #usage()} has reached the memory budget and not
+	 * dropped to the low watermark since. Producers of arrival data, such as
+	 * the channels reading from sockets, are expected to stop producing while
+	 * the factory is over budget and wait for it by
+	 * {@link #awaitBudget(IBudgetListener)}.
+	 *
+	 * @return true if over budget, otherwise false
+	 */
+	@Override
+	public boolean isOverBudget() {
+		final long budget = m_memoryBudget;
+		if (budget < 1L)
+			return false;
+
+		final long usage = usage();
+		if (m_overBudget) {
+			if (usage > m_lowWatermark)
+				return true;
+			m_overBudget = false;
+			notifyWaiters();
+			return false;
+		}
+
+		if (usage < budget)
+			return false;
+
+		m_overBudget = true;
+		return true;
+	}
+
+	/**
+	 * Registers the given listener to be notified once when the usage drops to
+	 * the low watermark. If this factory is not over budget, the listener is
+	 * notified right away.
+	 *
+	 * @param listener
+	 *            the listener to be notified
+	 */
+	public void awaitBudget(IBudgetListener listener) {
+		m_budgetWaiters.add(listener);
+		// the usage may have dropped before the listener got queued
+		if (!isOverBudget())
+			notifyWaiters();
+	}
+
+	public LeakDetector leakDetector() {
+		return m_leakDetector;
+	}
+
 	@Modified
 	public void modified(Map<String, ?> properties) {
 		final Integer value = (Integer) properties.get(UNIT_CAPACITY);
@@ -55,10 +303,43 @@ public final class BufferFactory implements IBufferFactory {
 			unitCapacity = value > MIN_UNIT_CAPACITY ? value : MIN_UNIT_CAPACITY;
 		m_unitCapacity = unitCapacity;
 
+		String unitType = (String) properties.get(UNIT_TYPE);
+		if (unitType == null || (unitType = unitType.trim()).isEmpty())
+			unitType = UNIT_TYPE_HEAP;
+		else if (!unitType.equals(UNIT_TYPE_HEAP) && !unitType.equals(UNIT_TYPE_DIRECT))
+			throw new IllegalArgumentException(StrUtil.join("Illegal unitType: ", unitType));
+
+		final Long capacity = (Long) properties.get(ARENA_CAPACITY);
+		final long arenaCapacity = capacity == null ? DEFAULT_ARENA_CAPACITY : (capacity > 0L ? capacity : 0L);
+
+		final Integer size = (Integer) properties.get(MAGAZINE_SIZE);
+		final int magazineSize = size == null ? DEFAULT_MAGAZINE_SIZE : (size > 0 ? size : 0);
+
+		m_heapArena.configure(arenaCapacity, magazineSize);
+		m_directArena.configure(arenaCapacity, magazineSize);
+		m_arena = unitType.equals(UNIT_TYPE_DIRECT) ? m_directArena : m_heapArena;
+
+		final String leakDetection = LeakDetector.level((String) properties.get(LEAK_DETECTION));
+
+		final Long budget = (Long) properties.get(MEMORY_BUDGET);
+		final long memoryBudget = budget == null || budget < 0L ? 0L : budget;
+		final Long watermark = (Long) properties.get(MEMORY_LOW_WATERMARK);
+		final long lowWatermark = watermark == null || watermark < 0L || watermark > memoryBudget
+				? memoryBudget - (memoryBudget >>> 2) : watermark;
+		m_lowWatermark = lowWatermark;
+		m_memoryBudget = memoryBudget;
+		m_overBudget = false;
+		notifyWaiters();
+
 		final String id = (String) properties.get(BUFFER_ID);
 		final String bfName = id != null ? StrUtil.join("BufferFactory[", id, "]") : "BufferFactory";
+		m_name = bfName;
+		m_leakDetector.configure(bfName, leakDetection);
 
-		c_logger.info("{}: unitCapacity={}", bfName, unitCapacity);
+		c_logger.info(
+				"{}: unitCapacity={}, unitType={}, arenaCapacity={}, magazineSize={}, leakDetection={}, memoryBudget={}, memoryLowWatermark={}",
+				bfName, unitCapacity, unitType, arenaCapacity, magazineSize, leakDetection, memoryBudget,
+				lowWatermark);
 	}
 
 	public void activate(Map<String, ?> properties) {
@@ -66,45 +347,64 @@ public final class BufferFactory implements IBufferFactory {
 	}
 
 	public void deactivate() {
+		final UnitArena arena = m_arena;
+		c_logger.info("{}: footprint={}, highWaterMark={}, usage={}", m_name, arena.footprint(),
+				arena.highWaterMark(), usage());
+		m_memoryBudget = 0L;
+		m_overBudget = false;
+		notifyWaiters();
+		m_heapArena.clear();
+		m_directArena.clear();
 	}
 
 	IUnit getUnit() {
-		HeapUnit unit = m_unitCache.take();
-		if (unit == null)
-			unit = new HeapUnit(m_unitCapacity);
-		else {
-			final int capacity = m_unitCapacity;
-			if (unit.capacity() < capacity)
-				unit.setCapacity(capacity);
-
-			unit.clear();
-		}
-
-		return unit;
+		return m_arena.take(m_unitCapacity);
 	}
 
 	IUnit getUnit(int capacity) {
 		if (capacity < m_unitCapacity)
 			capacity = m_unitCapacity;
 
-		HeapUnit unit = m_unitCache.take();
-		if (unit == null)
-			unit = new HeapUnit(capacity);
-		else {
-			if (unit.capacity() < capacity)
-				unit.setCapacity(capacity);
+		return m_arena.take(capacity);
+	}
 
-			unit.clear();
-		}
+	IUnit getUnitForSize(int size) {
+		final int unitCapacity = m_unitCapacity;
+		if (size >= unitCapacity || (size = UnitArena.classCapacity(size)) >= unitCapacity)
+			return m_arena.take(unitCapacity);
 
-		return unit;
+		return m_arena.take(size);
 	}
 
 	void putUnit(IUnit unit) {
-		((HeapUnit) unit).cache(this);
+		if (unit instanceof HeapUnit)
+			((HeapUnit) unit).cache(this);
+		else if (unit instanceof DirectUnit)
+			((DirectUnit) unit).cache(this);
+		else if (unit instanceof ReadOnlyUnit)
+			((ReadOnlyUnit) unit).cache(this);
 	}
 
 	void cache(HeapUnit unit) {
-		m_unitCache.put(unit);
+		m_heapArena.put(unit);
+		if (m_overBudget)
+			isOverBudget();
+	}
+
+	void cache(DirectUnit unit) {
+		m_directArena.put(unit);
+		if (m_overBudget)
+			isOverBudget();
+	}
+
+	private void notifyWaiters() {
+		IBudgetListener listener;
+		while ((listener = m_budgetWaiters.poll()) != null) {
+			try {
+				listener.onBudgetAvailable();
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join(m_name, ": failed to notify budget listener"), t);
+			}
+		}
 	}
 }
@@ -14,12 +14,25 @@
 
 package org.jruyi.io.buffer;
 
+import org.jruyi.common.StringBuilder;
+import org.jruyi.io.IntCodec;
+import org.jruyi.io.LongCodec;
+import org.jruyi.io.ShortCodec;
 import org.jruyi.io.buffer.codec.ByteArrayCodec;
 
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
+import java.nio.BufferUnderflowException;
 
-final class BufferInputStream extends InputStream {
+/**
+ * Reads the buffer as an {@code InputStream} and a {@code DataInput}. The
+ * primitives are read in big-endian by the codecs, which read a whole primitive
+ * from the current unit at once unless it crosses a unit boundary.
+ */
+final class BufferInputStream extends InputStream implements DataInput {
 
 	private final Buffer m_buffer;
 
@@ -73,4 +86,114 @@ final class BufferInputStream extends InputStream {
 	public long skip(long n) throws IOException {
 		return m_buffer.skip((int) n);
 	}
+
+	@Override
+	public void readFully(byte[] b) throws IOException {
+		readFully(b, 0, b.length);
+	}
+
+	@Override
+	public void readFully(byte[] b, int off, int len) throws IOException {
+		if (m_buffer.read(b, off, len, ByteArrayCodec.INST) < len)
+			throw new EOFException();
+	}
+
+	@Override
+	public int skipBytes(int n) throws IOException {
+		return m_buffer.skip(n);
+	}
+
+	@Override
+	public boolean readBoolean() throws IOException {
+		return readByte() != 0;
+	}
+
+	@Override
+	public byte readByte() throws IOException {
+		final int b = m_buffer.readByte();
+		if (b < 0)
+			throw new EOFException();
+		return (byte) b;
+	}
+
+	@Override
+	public int readUnsignedByte() throws IOException {
+		return readByte() & 0xFF;
+	}
+
+	@Override
+	public short readShort() throws IOException {
+		try {
+			return m_buffer.read(ShortCodec.bigEndian());
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public int readUnsignedShort() throws IOException {
+		return readShort() & 0xFFFF;
+	}
+
+	@Override
+	public char readChar() throws IOException {
+		try {
+			return (char) m_buffer.read(ShortCodec.bigEndian());
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public int readInt() throws IOException {
+		try {
+			return m_buffer.read(IntCodec.bigEndian());
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public long readLong() throws IOException {
+		try {
+			return m_buffer.read(LongCodec.bigEndian());
+		} catch (BufferUnderflowException e) {
+			throw new EOFException();
+		}
+	}
+
+	@Override
+	public float readFloat() throws IOException {
+		return Float.intBitsToFloat(readInt());
+	}
+
+	@Override
+	public double readDouble() throws IOException {
+		return Double.longBitsToDouble(readLong());
+	}
+
+	@Override
+	public String readLine() throws IOException {
+		final Buffer buffer = m_buffer;
+		int b = buffer.readByte();
+		if (b < 0)
+			return null;
+
+		try (StringBuilder builder = StringBuilder.get()) {
+			for (; b >= 0 && b != '\n'; b = buffer.readByte()) {
+				if (b == '\r') {
+					if (buffer.peekByte() == '\n')
+						buffer.readByte();
+					break;
+				}
+				builder.append((char) b);
+			}
+			return builder.toString();
+		}
+	}
+
+	@Override
+	public String readUTF() throws IOException {
+		return DataInputStream.readUTF(this);
+	}
 }
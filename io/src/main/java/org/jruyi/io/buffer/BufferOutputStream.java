@@ -14,12 +14,23 @@
 
 package org.jruyi.io.buffer;
 
+import org.jruyi.common.StrUtil;
+import org.jruyi.io.IntCodec;
+import org.jruyi.io.LongCodec;
+import org.jruyi.io.ShortCodec;
 import org.jruyi.io.buffer.codec.ByteArrayCodec;
 
+import java.io.DataOutput;
 import java.io.IOException;
 import java.io.OutputStream;
+import java.io.UTFDataFormatException;
 
-final class BufferOutputStream extends OutputStream {
+/**
+ * Writes the buffer as an {@code OutputStream} and a {@code DataOutput}. The
+ * primitives are written in big-endian by the codecs, which write a whole
+ * primitive into the last unit at once unless it crosses a unit boundary.
+ */
+final class BufferOutputStream extends OutputStream implements DataOutput {
 
 	private final Buffer m_buffer;
 
@@ -50,4 +61,92 @@ final class BufferOutputStream extends OutputStream {
 	public void write(int b) throws IOException {
 		m_buffer.write((byte) b);
 	}
+
+	@Override
+	public void writeBoolean(boolean v) throws IOException {
+		m_buffer.write((byte) (v ? 1 : 0));
+	}
+
+	@Override
+	public void writeByte(int v) throws IOException {
+		m_buffer.write((byte) v);
+	}
+
+	@Override
+	public void writeShort(int v) throws IOException {
+		m_buffer.write((short) v, ShortCodec.bigEndian());
+	}
+
+	@Override
+	public void writeChar(int v) throws IOException {
+		m_buffer.write((short) v, ShortCodec.bigEndian());
+	}
+
+	@Override
+	public void writeInt(int v) throws IOException {
+		m_buffer.write(v, IntCodec.bigEndian());
+	}
+
+	@Override
+	public void writeLong(long v) throws IOException {
+		m_buffer.write(v, LongCodec.bigEndian());
+	}
+
+	@Override
+	public void writeFloat(float v) throws IOException {
+		writeInt(Float.floatToIntBits(v));
+	}
+
+	@Override
+	public void writeDouble(double v) throws IOException {
+		writeLong(Double.doubleToLongBits(v));
+	}
+
+	@Override
+	public void writeBytes(String s) throws IOException {
+		final Buffer buffer = m_buffer;
+		for (int i = 0, n = s.length(); i < n; ++i)
+			buffer.write((byte) s.charAt(i));
+	}
+
+	@Override
+	public void writeChars(String s) throws IOException {
+		final Buffer buffer = m_buffer;
+		for (int i = 0, n = s.length(); i < n; ++i)
+			buffer.write((short) s.charAt(i), ShortCodec.bigEndian());
+	}
+
+	/**
+	 * Writes the given string in the modified UTF-8 of {@link DataOutput}.
+	 */
+	@Override
+	public void writeUTF(String s) throws IOException {
+		final int n = s.length();
+		int length = n;
+		for (int i = 0; i < n; ++i) {
+			final char c = s.charAt(i);
+			if (c >= 0x0800)
+				length += 2;
+			else if (c > 0x007F || c == 0)
+				++length;
+		}
+		if (length > 0xFFFF)
+			throw new UTFDataFormatException(StrUtil.join("Encoded string too long: ", length, " bytes"));
+
+		final Buffer buffer = m_buffer;
+		buffer.write((short) length, ShortCodec.bigEndian());
+		for (int i = 0; i < n; ++i) {
+			final char c = s.charAt(i);
+			if (c > 0 && c <= 0x007F)
+				buffer.write((byte) c);
+			else if (c < 0x0800) {
+				buffer.write((byte) (0xC0 | (c >> 6)));
+				buffer.write((byte) (0x80 | (c & 0x3F)));
+			} else {
+				buffer.write((byte) (0xE0 | (c >> 12)));
+				buffer.write((byte) (0x80 | ((c >> 6) & 0x3F)));
+				buffer.write((byte) (0x80 | (c & 0x3F)));
+			}
+		}
+	}
 }
@@ -17,6 +17,12 @@ package org.jruyi.io.buffer;
 import java.lang.ref.WeakReference;
 import java.nio.ByteBuffer;
 
+/**
+ * A growable array of {@code ByteBuffer}s to be reused across gathering and
+ * scattering operations. {@link #get()} returns the one of the current thread,
+ * which is used internally by the buffers; callers holding on to the added
+ * buffers should create their own.
+ */
 public final class ByteBufferArray {
 
 	private static final ThreadLocal<WeakReference<ByteBufferArray>> c_wtl;
@@ -33,7 +39,7 @@ public final class ByteBufferArray {
 		};
 	}
 
-	ByteBufferArray() {
+	public ByteBufferArray() {
 		m_array = new ByteBuffer[3];
 	}
 
@@ -460,6 +460,14 @@ final class HeapUnit implements IUnit {
 		}
 	}
 
+	/**
+	 * Reads the long word at the given index of the given byte array in native
+	 * byte order.
+	 */
+	static long longAt(byte[] array, int index) {
+		return c_unsafe.getLong(array, byteArrayOffset(index));
+	}
+
 	private static long byteArrayOffset(long index) {
 		return ARRAY_BYTE_BASE_OFFSET + index;
 	}
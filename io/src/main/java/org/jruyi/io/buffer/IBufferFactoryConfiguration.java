@@ -0,0 +1,92 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer;
+
+/**
+ * The configuration of the unit pooling, the leak detection and the memory
+ * budget of a buffer factory, beyond its unit capacity. The configuration of
+ * a buffer factory created by {@code RuyiCore} may be cast to it. Changes
+ * take effect on {@code apply()}.
+ */
+public interface IBufferFactoryConfiguration {
+
+	/**
+	 * Sets the type of the units, {@code heap} or {@code direct}.
+	 *
+	 * @param unitType
+	 *            the type of the units
+	 * @return this configuration
+	 */
+	IBufferFactoryConfiguration unitType(String unitType);
+
+	String unitType();
+
+	/**
+	 * Sets the maximum number of bytes of the units pooled in the arena.
+	 *
+	 * @param arenaCapacity
+	 *            the capacity of the arena, 0 for no pooling
+	 * @return this configuration
+	 */
+	IBufferFactoryConfiguration arenaCapacity(long arenaCapacity);
+
+	long arenaCapacity();
+
+	/**
+	 * Sets the number of units of each size class cached per thread.
+	 *
+	 * @param magazineSize
+	 *            the size of the magazines, 0 for no thread caching
+	 * @return this configuration
+	 */
+	IBufferFactoryConfiguration magazineSize(int magazineSize);
+
+	int magazineSize();
+
+	/**
+	 * Sets the leak detection, {@code off}, {@code sample} or
+	 * {@code paranoid}.
+	 *
+	 * @param leakDetection
+	 *            the leak detection
+	 * @return this configuration
+	 */
+	IBufferFactoryConfiguration leakDetection(String leakDetection);
+
+	String leakDetection();
+
+	/**
+	 * Sets the usage in bytes at which reads are suspended.
+	 *
+	 * @param memoryBudget
+	 *            the memory budget, 0 for no budget
+	 * @return this configuration
+	 */
+	IBufferFactoryConfiguration memoryBudget(long memoryBudget);
+
+	long memoryBudget();
+
+	/**
+	 * Sets the usage in bytes to which the memory has to drop before reads
+	 * resume.
+	 *
+	 * @param memoryLowWatermark
+	 *            the low watermark of the memory budget
+	 * @return this configuration
+	 */
+	IBufferFactoryConfiguration memoryLowWatermark(long memoryLowWatermark);
+
+	long memoryLowWatermark();
+}
@@ -0,0 +1,118 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.IBufferFactory;
+
+/**
+ * A buffer factory pooling its units in an arena. It is implemented by the
+ * buffer factories of JRuyi, which may be cast to it.
+ */
+public interface IPooledBufferFactory extends IBufferFactory {
+
+	/**
+	 * Creates a buffer whose first unit is of the smallest size class that
+	 * holds {@code sizeHint} bytes, but no larger than {@code unitCapacity}.
+	 *
+	 * @param sizeHint
+	 *            the expected size of the buffer
+	 * @return a new buffer
+	 */
+	IBuffer create(int sizeHint);
+
+	/**
+	 * Creates a buffer whose first unit is of the smallest size class that
+	 * holds {@code capacity} bytes.
+	 *
+	 * @param capacity
+	 *            the minimum capacity of the first unit
+	 * @return a new buffer
+	 */
+	IBuffer allocate(int capacity);
+
+	/**
+	 * Maps the given region of the given file into memory read-only and returns
+	 * a buffer over it.
+	 *
+	 * @param fileChannel
+	 *            the file to map
+	 * @param position
+	 *            the position within the file at which the region starts
+	 * @param size
+	 *            the size of the region to map
+	 * @return a new buffer over the mapped region
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	IBuffer map(FileChannel fileChannel, long position, long size) throws IOException;
+
+	/**
+	 * Returns a read-only buffer over the given region of the given byte array
+	 * without copying.
+	 *
+	 * @param bytes
+	 *            the byte array to wrap
+	 * @param offset
+	 *            the offset of the region within the array
+	 * @param length
+	 *            the length of the region
+	 * @return a new buffer over the given region
+	 */
+	IBuffer wrap(byte[] bytes, int offset, int length);
+
+	/**
+	 * Returns a read-only buffer over the given byte arrays in order without
+	 * copying.
+	 *
+	 * @param arrays
+	 *            the byte arrays to wrap
+	 * @return a new buffer over the given arrays
+	 */
+	IBuffer wrap(byte[][] arrays);
+
+	/**
+	 * Returns the number of bytes of the units currently taken by buffers.
+	 *
+	 * @return the bytes in use
+	 */
+	long usage();
+
+	/**
+	 * Returns the number of bytes currently allocated by the unit arena,
+	 * including units in use and units pooled.
+	 *
+	 * @return the footprint in bytes
+	 */
+	long footprint();
+
+	/**
+	 * Returns the peak of {@link #footprint()}.
+	 *
+	 * @return the high-water mark in bytes
+	 */
+	long highWaterMark();
+
+	/**
+	 * Tests whether {@link #usage()} has reached the memory budget and not
+	 * dropped to the low watermark since.
+	 *
+	 * @return true if over budget, otherwise false
+	 */
+	boolean isOverBudget();
+}
@@ -0,0 +1,208 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer;
+
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.lang.ref.PhantomReference;
+import java.lang.ref.ReferenceQueue;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jruyi.common.StrUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Detects buffers that are garbage collected without being closed.
+ * <p>
+ * A sampled buffer is tracked by a phantom reference together with the stack
+ * trace of where it was created. If the buffer is collected before being
+ * closed, the stack trace is logged and kept in the report.
+ */
+public final class LeakDetector {
+
+	public static final String OFF = "off";
+	public static final String SAMPLE = "sample";
+	public static final String PARANOID = "paranoid";
+
+	// 1 out of SAMPLE_INTERVAL buffers is tracked at level "sample"
+	private static final int SAMPLE_INTERVAL = 100;
+	private static final int MAX_RECORDS = 64;
+
+	private static final Logger c_logger = LoggerFactory.getLogger(LeakDetector.class);
+
+	private final ReferenceQueue<Buffer> m_queue = new ReferenceQueue<>();
+	private final Set<Leak> m_leaks = Collections.newSetFromMap(new ConcurrentHashMap<Leak, Boolean>());
+	private final Map<List<StackTraceElement>, Record> m_records = new LinkedHashMap<List<StackTraceElement>, Record>(
+			16, 0.75f, true) {
+
+		private static final long serialVersionUID = 3911829466823437826L;
+
+		@Override
+		protected boolean removeEldestEntry(Map.Entry<List<StackTraceElement>, Record> eldest) {
+			return size() > MAX_RECORDS;
+		}
+	};
+	private final AtomicLong m_count = new AtomicLong();
+	private String m_name = "BufferFactory";
+	private volatile String m_level = OFF;
+
+	static final class Leak extends PhantomReference<Buffer> {
+
+		private final Set<Leak> m_leaks;
+		private final Throwable m_trace;
+
+		Leak(Buffer buffer, ReferenceQueue<Buffer> queue, Set<Leak> leaks) {
+			super(buffer, queue);
+			m_leaks = leaks;
+			m_trace = new Throwable("Buffer created at");
+			leaks.add(this);
+		}
+
+		Throwable trace() {
+			return m_trace;
+		}
+
+		void close() {
+			if (m_leaks.remove(this))
+				clear();
+		}
+	}
+
+	static final class Record {
+
+		private final Throwable m_trace;
+		private int m_count;
+
+		Record(Throwable trace) {
+			m_trace = trace;
+		}
+	}
+
+	/**
+	 * Returns the detection level: {@code off}, {@code sample} for tracking
+	 * about 1% of the buffers, or {@code paranoid} for tracking all of them.
+	 *
+	 * @return the detection level
+	 */
+	public String level() {
+		return m_level;
+	}
+
+	/**
+	 * Returns the number of leaks detected so far.
+	 *
+	 * @return the number of leaks
+	 */
+	public long count() {
+		poll();
+		return m_count.get();
+	}
+
+	/**
+	 * Returns a report of the leaks detected so far, grouped by the stack
+	 * trace where the leaked buffers were created.
+	 *
+	 * @return the leak report
+	 */
+	public String report() {
+		poll();
+		final List<Record> records;
+		synchronized (m_records) {
+			records = new ArrayList<>(m_records.values());
+		}
+
+		final StringWriter sw = new StringWriter(records.size() * 1024 + 64);
+		final PrintWriter pw = new PrintWriter(sw);
+		pw.print(m_name);
+		pw.print(": level=");
+		pw.print(m_level);
+		pw.print(", leaks=");
+		pw.println(m_count.get());
+		for (Record record : records) {
+			final int count;
+			synchronized (m_records) {
+				count = record.m_count;
+			}
+			pw.println();
+			pw.print(count);
+			pw.print(" leak(s) of ");
+			record.m_trace.printStackTrace(pw);
+		}
+		pw.flush();
+		return sw.toString();
+	}
+
+	void configure(String name, String level) {
+		m_name = name;
+		m_level = level;
+	}
+
+	Leak track(Buffer buffer) {
+		final String level = m_level;
+		if (level == OFF)
+			return null;
+
+		if (level == SAMPLE && ThreadLocalRandom.current().nextInt(SAMPLE_INTERVAL) != 0)
+			return null;
+
+		poll();
+		return new Leak(buffer, m_queue, m_leaks);
+	}
+
+	static String level(String level) {
+		if (level == null || (level = level.trim()).isEmpty() || level.equals(OFF))
+			return OFF;
+		if (level.equals(SAMPLE))
+			return SAMPLE;
+		if (level.equals(PARANOID))
+			return PARANOID;
+
+		throw new IllegalArgumentException(StrUtil.join("Illegal leakDetection: ", level));
+	}
+
+	private void poll() {
+		Leak leak;
+		while ((leak = (Leak) m_queue.poll()) != null) {
+			// closed before being enqueued
+			if (!m_leaks.remove(leak))
+				continue;
+
+			m_count.incrementAndGet();
+			final Throwable trace = leak.trace();
+			c_logger.error(StrUtil.join(m_name, ": LEAK - buffer was garbage collected without being closed"),
+					trace);
+
+			final List<StackTraceElement> key = Arrays.asList(trace.getStackTrace());
+			synchronized (m_records) {
+				Record record = m_records.get(key);
+				if (record == null) {
+					record = new Record(trace);
+					m_records.put(key, record);
+				}
+				++record.m_count;
+			}
+		}
+	}
+}
@@ -0,0 +1,323 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer;
+
+import java.nio.ByteBuffer;
+import java.nio.ReadOnlyBufferException;
+
+import org.jruyi.common.IByteSequence;
+import org.jruyi.io.IUnit;
+
+/**
+ * A unit whose data cannot be modified. It wraps either memory not owned by
+ * the buffer factory, such as a mapped file region, which never goes back to
+ * the buffer factory, or a reference-counted duplicate of a pooled unit shared
+ * by retained buffers, which is released to the buffer factory. Writing to a
+ * buffer holding such units appends or prepends pooled units instead.
+ */
+final class ReadOnlyUnit implements IUnit {
+
+	private final IUnit m_unit;
+	private final boolean m_pooled;
+
+	ReadOnlyUnit(IUnit unit) {
+		this(unit, false);
+	}
+
+	ReadOnlyUnit(IUnit unit, boolean pooled) {
+		m_unit = unit;
+		m_pooled = pooled;
+	}
+
+	@Override
+	public IUnit set(int index, byte b) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public IUnit set(int index, short s) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public IUnit set(int index, int i) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public IUnit set(int index, long l) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public IUnit set(int index, float f) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public IUnit set(int index, double d) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public short getShort(int index) {
+		return m_unit.getShort(index);
+	}
+
+	@Override
+	public int getInt(int index) {
+		return m_unit.getInt(index);
+	}
+
+	@Override
+	public long getLong(int index) {
+		return m_unit.getLong(index);
+	}
+
+	@Override
+	public float getFloat(int index) {
+		return m_unit.getFloat(index);
+	}
+
+	@Override
+	public double getDouble(int index) {
+		return m_unit.getDouble(index);
+	}
+
+	@Override
+	public IUnit set(int index, IByteSequence src, int srcBegin, int srcEnd) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public IUnit set(int index, byte[] src, int offset, int length) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public void get(int index, int length, long[] dst, int dstBegin) {
+		m_unit.get(index, length, dst, dstBegin);
+	}
+
+	@Override
+	public IUnit set(int index, long[] src, int offset, int length) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public void get(int index, int length, int[] dst, int dstBegin) {
+		m_unit.get(index, length, dst, dstBegin);
+	}
+
+	@Override
+	public IUnit set(int index, int[] src, int offset, int length) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public void get(int index, int length, short[] dst, int dstBegin) {
+		m_unit.get(index, length, dst, dstBegin);
+	}
+
+	@Override
+	public IUnit set(int index, short[] src, int offset, int length) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public void get(int index, int length, float[] dst, int dstBegin) {
+		m_unit.get(index, length, dst, dstBegin);
+	}
+
+	@Override
+	public IUnit set(int index, float[] src, int offset, int length) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public void get(int index, int length, double[] dst, int dstBegin) {
+		m_unit.get(index, length, dst, dstBegin);
+	}
+
+	@Override
+	public IUnit set(int index, double[] src, int offset, int length) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public IUnit setFill(int index, byte b, int count) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public IUnit slice(int beginIndex, int endIndex) {
+		return new ReadOnlyUnit(m_unit.slice(beginIndex, endIndex), m_pooled);
+	}
+
+	@Override
+	public IUnit duplicate() {
+		return new ReadOnlyUnit(m_unit.duplicate(), m_pooled);
+	}
+
+	@Override
+	public byte byteAt(int index) {
+		return m_unit.byteAt(index);
+	}
+
+	@Override
+	public byte[] getBytes(int index) {
+		return m_unit.getBytes(index);
+	}
+
+	@Override
+	public byte[] getBytes(int index, int length) {
+		return m_unit.getBytes(index, length);
+	}
+
+	@Override
+	public void getBytes(int srcBegin, int srcEnd, byte[] dst, int dstBegin) {
+		m_unit.getBytes(srcBegin, srcEnd, dst, dstBegin);
+	}
+
+	@Override
+	public void getBytes(int srcBegin, int srcEnd, ByteBuffer dst) {
+		m_unit.getBytes(srcBegin, srcEnd, dst);
+	}
+
+	@Override
+	public IUnit set(int index, int length, ByteBuffer src) {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public int length() {
+		return m_unit.length();
+	}
+
+	@Override
+	public int start() {
+		return m_unit.start();
+	}
+
+	@Override
+	public void start(int start) {
+		m_unit.start(start);
+	}
+
+	@Override
+	public int position() {
+		return m_unit.position();
+	}
+
+	@Override
+	public void position(int position) {
+		m_unit.position(position);
+	}
+
+	@Override
+	public int size() {
+		return m_unit.size();
+	}
+
+	@Override
+	public void size(int size) {
+		m_unit.size(size);
+	}
+
+	@Override
+	public int mark() {
+		return m_unit.mark();
+	}
+
+	@Override
+	public void mark(int mark) {
+		m_unit.mark(mark);
+	}
+
+	@Override
+	public int remaining() {
+		return m_unit.remaining();
+	}
+
+	@Override
+	public int available() {
+		return 0;
+	}
+
+	@Override
+	public int capacity() {
+		return m_unit.capacity();
+	}
+
+	@Override
+	public boolean appendable() {
+		return false;
+	}
+
+	@Override
+	public boolean prependable() {
+		return false;
+	}
+
+	@Override
+	public boolean isEmpty() {
+		return m_unit.isEmpty();
+	}
+
+	@Override
+	public void reset() {
+		m_unit.reset();
+	}
+
+	@Override
+	public void rewind() {
+		m_unit.rewind();
+	}
+
+	@Override
+	public int skip(int n) {
+		return m_unit.skip(n);
+	}
+
+	@Override
+	public ByteBuffer getByteBufferForRead() {
+		return m_unit.getByteBufferForRead();
+	}
+
+	@Override
+	public ByteBuffer getByteBufferForRead(int offset, int length) {
+		return m_unit.getByteBufferForRead(offset, length);
+	}
+
+	@Override
+	public ByteBuffer getByteBufferForWrite() {
+		throw new ReadOnlyBufferException();
+	}
+
+	@Override
+	public void clear() {
+		m_unit.clear();
+	}
+
+	@Override
+	public void compact() {
+		m_unit.compact();
+	}
+
+	void cache(BufferFactory factory) {
+		if (m_pooled)
+			factory.putUnit(m_unit);
+	}
+}
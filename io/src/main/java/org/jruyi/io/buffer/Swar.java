@@ -0,0 +1,120 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer;
+
+import static org.jruyi.io.buffer.Helper.*;
+
+import org.jruyi.io.IUnit;
+
+/**
+ * Scans and compares bytes a long word (8 bytes) at a time. Words are read in
+ * native byte order through {@link IUnit#getLong(int)}; the trailing bytes of
+ * a range shorter than a word are handled one at a time.
+ * <p>
+ * All the indexes are absolute indexes of the unit.
+ */
+final class Swar {
+
+	private static final long LOW7 = 0x7F7F7F7F7F7F7F7FL;
+
+	private Swar() {
+	}
+
+	/**
+	 * Returns the index of the first occurrence of {@code b} in the range
+	 * [{@code fromIndex}, {@code endIndex}) of the given unit, or -1 if not
+	 * found.
+	 */
+	static int indexOf(IUnit unit, byte b, int fromIndex, int endIndex) {
+		final long pattern = (b & 0xFFL) * 0x0101010101010101L;
+		final int last = endIndex - SIZE_OF_LONG;
+		for (; fromIndex <= last; fromIndex += SIZE_OF_LONG) {
+			final long zeros = zeroBytes(unit.getLong(fromIndex) ^ pattern);
+			if (zeros != 0L)
+				return fromIndex + firstByte(zeros);
+		}
+
+		for (; fromIndex < endIndex; ++fromIndex) {
+			if (unit.byteAt(fromIndex) == b)
+				return fromIndex;
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Tests whether the {@code length} bytes of the given unit starting at
+	 * {@code index} equal those of {@code bytes} starting at {@code offset}.
+	 */
+	static boolean equals(IUnit unit, int index, byte[] bytes, int offset, int length) {
+		for (; length >= SIZE_OF_LONG; length -= SIZE_OF_LONG) {
+			if (unit.getLong(index) != HeapUnit.longAt(bytes, offset))
+				return false;
+			index += SIZE_OF_LONG;
+			offset += SIZE_OF_LONG;
+		}
+
+		for (; length > 0; --length) {
+			if (unit.byteAt(index++) != bytes[offset++])
+				return false;
+		}
+
+		return true;
+	}
+
+	/**
+	 * Compares the {@code length} bytes of {@code unit1} starting at {@code i}
+	 * with those of {@code unit2} starting at {@code j} as signed bytes.
+	 * Returns -1, 0 or 1.
+	 */
+	static int compare(IUnit unit1, int i, IUnit unit2, int j, int length) {
+		for (; length >= SIZE_OF_LONG; length -= SIZE_OF_LONG) {
+			final long diff = unit1.getLong(i) ^ unit2.getLong(j);
+			if (diff != 0L) {
+				final int n = firstByte(diff);
+				return unit1.byteAt(i + n) < unit2.byteAt(j + n) ? -1 : 1;
+			}
+			i += SIZE_OF_LONG;
+			j += SIZE_OF_LONG;
+		}
+
+		for (; length > 0; ++i, ++j, --length) {
+			final byte b1 = unit1.byteAt(i);
+			final byte b2 = unit2.byteAt(j);
+			if (b1 != b2)
+				return b1 < b2 ? -1 : 1;
+		}
+
+		return 0;
+	}
+
+	/**
+	 * Returns a word whose high bit of each byte is set iff the byte of the
+	 * given word is zero. Unlike {@code (w - 0x01..01) & ~w & 0x80..80}, there
+	 * are no false positives above a zero byte, so it is exact for both byte
+	 * orders.
+	 */
+	private static long zeroBytes(long w) {
+		return ~(((w & LOW7) + LOW7) | w | LOW7);
+	}
+
+	/**
+	 * Returns the offset in memory of the first byte flagged in the given
+	 * non-zero word.
+	 */
+	private static int firstByte(long flags) {
+		return (LE_NATIVE ? Long.numberOfTrailingZeros(flags) : Long.numberOfLeadingZeros(flags)) >>> 3;
+	}
+}
@@ -0,0 +1,398 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer;
+
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+
+import org.jruyi.io.IUnit;
+
+/**
+ * A bounded pool of units organized in power-of-two size classes.
+ * <p>
+ * Each thread keeps a small magazine of units per size class. A full magazine
+ * spills half of its units to the shared depot of the home size class, and an
+ * empty magazine refills from there. So units allocated on one thread and
+ * released on another find their way back without growing unbounded
+ * per-thread caches. The depot is bounded by the arena capacity; units that do
+ * not fit are dropped and left to GC.
+ * <p>
+ * The magazines are registered with the arena, so the units they hold are
+ * returned to the depots once their thread dies, and dropped on
+ * {@link #clear()}.
+ */
+final class UnitArena {
+
+	// the smallest size class holds units up to 64 bytes
+	static final int MIN_CLASS_SHIFT = 6;
+	static final int MAX_CLASS_SHIFT = 30;
+	private static final int NUM_OF_CLASSES = MAX_CLASS_SHIFT - MIN_CLASS_SHIFT + 1;
+
+	private final boolean m_direct;
+	private final Depot[] m_depots;
+	private final ThreadLocal<Magazine[]> m_magazines;
+	private final ConcurrentLinkedQueue<Rack> m_racks = new ConcurrentLinkedQueue<>();
+	// bytes held by all the depots
+	private final AtomicLong m_pooled = new AtomicLong();
+	// bytes of all the units allocated by this arena and not dropped yet
+	private final AtomicLong m_footprint = new AtomicLong();
+	private final AtomicLong m_highWaterMark = new AtomicLong();
+	// bytes of the units taken and not put back yet
+	private final AtomicLong m_inUse = new AtomicLong();
+	private volatile long m_capacity;
+	private volatile int m_magazineSize;
+
+	// Only the owner thread takes from and puts into its magazines. The lock is
+	// for draining them from other threads.
+	static final class Magazine {
+
+		private IUnit[] m_units;
+		private int m_size;
+
+		Magazine(int capacity) {
+			m_units = new IUnit[capacity > 0 ? capacity : 1];
+		}
+
+		synchronized int size() {
+			return m_size;
+		}
+
+		synchronized IUnit pop() {
+			int size = m_size;
+			if (size < 1)
+				return null;
+
+			final IUnit[] units = m_units;
+			final IUnit unit = units[--size];
+			units[size] = null;
+			m_size = size;
+			return unit;
+		}
+
+		synchronized void push(IUnit unit) {
+			final int size = m_size;
+			if (size == m_units.length)
+				m_units = Arrays.copyOf(m_units, size << 1);
+			m_units[size] = unit;
+			m_size = size + 1;
+		}
+
+		synchronized IUnit[] drain() {
+			final int size = m_size;
+			if (size < 1)
+				return null;
+
+			final IUnit[] units = Arrays.copyOf(m_units, size);
+			Arrays.fill(m_units, 0, size, null);
+			m_size = 0;
+			return units;
+		}
+	}
+
+	// the magazines of a thread
+	static final class Rack {
+
+		private final Thread m_owner;
+		private final Magazine[] m_magazines;
+
+		Rack(Thread owner, Magazine[] magazines) {
+			m_owner = owner;
+			m_magazines = magazines;
+		}
+
+		boolean isDead() {
+			return !m_owner.isAlive();
+		}
+
+		Magazine[] magazines() {
+			return m_magazines;
+		}
+	}
+
+	final class Depot {
+
+		private IUnit[] m_units = new IUnit[16];
+		private int m_size;
+
+		synchronized IUnit take() {
+			int size = m_size;
+			if (size < 1)
+				return null;
+
+			final IUnit[] units = m_units;
+			final IUnit unit = units[--size];
+			units[size] = null;
+			m_size = size;
+			m_pooled.addAndGet(-unit.capacity());
+			return unit;
+		}
+
+		synchronized void take(Magazine magazine, int n) {
+			int size = m_size;
+			if (n > size)
+				n = size;
+
+			final IUnit[] units = m_units;
+			long bytes = 0L;
+			while (n-- > 0) {
+				final IUnit unit = units[--size];
+				units[size] = null;
+				bytes += unit.capacity();
+				magazine.push(unit);
+			}
+			m_size = size;
+			m_pooled.addAndGet(-bytes);
+		}
+
+		void put(IUnit unit) {
+			if (!reserve(unit.capacity())) {
+				drop(unit);
+				return;
+			}
+
+			synchronized (this) {
+				push(unit);
+			}
+		}
+
+		synchronized void put(Magazine magazine, int n) {
+			while (n-- > 0) {
+				final IUnit unit = magazine.pop();
+				if (reserve(unit.capacity()))
+					push(unit);
+				else
+					drop(unit);
+			}
+		}
+
+		synchronized void clear() {
+			final IUnit[] units = m_units;
+			final int size = m_size;
+			for (int i = 0; i < size; ++i) {
+				final IUnit unit = units[i];
+				units[i] = null;
+				m_pooled.addAndGet(-unit.capacity());
+				drop(unit);
+			}
+			m_size = 0;
+		}
+
+		private void push(IUnit unit) {
+			final int size = m_size;
+			if (size == m_units.length)
+				m_units = Arrays.copyOf(m_units, size << 1);
+			m_units[size] = unit;
+			m_size = size + 1;
+		}
+	}
+
+	UnitArena(boolean direct, long capacity, int magazineSize) {
+		final Depot[] depots = new Depot[NUM_OF_CLASSES];
+		for (int i = 0; i < NUM_OF_CLASSES; ++i)
+			depots[i] = new Depot();
+		m_direct = direct;
+		m_depots = depots;
+		m_capacity = capacity;
+		m_magazineSize = magazineSize;
+		m_magazines = new ThreadLocal<Magazine[]>() {
+
+			@Override
+			protected Magazine[] initialValue() {
+				final Magazine[] magazines = new Magazine[NUM_OF_CLASSES];
+				reap();
+				m_racks.add(new Rack(Thread.currentThread(), magazines));
+				return magazines;
+			}
+		};
+	}
+
+	/**
+	 * Returns the capacity of the size class that units of the given capacity
+	 * belong to.
+	 */
+	static int classCapacity(int capacity) {
+		return 1 << (classIndex(capacity) + MIN_CLASS_SHIFT);
+	}
+
+	void configure(long capacity, int magazineSize) {
+		final int oldMagazineSize = m_magazineSize;
+		m_capacity = capacity;
+		m_magazineSize = magazineSize;
+		// smaller magazines would keep the extra units forever
+		if (magazineSize < oldMagazineSize) {
+			for (final Rack rack : m_racks)
+				drain(rack, false);
+		}
+	}
+
+	IUnit take(int capacity) {
+		final int index = classIndex(capacity);
+		if (index >= NUM_OF_CLASSES) {
+			m_inUse.addAndGet(capacity);
+			return allocate(capacity);
+		}
+
+		final IUnit unit;
+		final int magazineSize = m_magazineSize;
+		if (magazineSize > 0) {
+			final Magazine magazine = magazine(index, magazineSize);
+			if (magazine.size() < 1)
+				m_depots[index].take(magazine, (magazineSize + 1) >> 1);
+			unit = magazine.pop();
+		} else
+			unit = m_depots[index].take();
+
+		if (unit == null) {
+			m_inUse.addAndGet(capacity);
+			return allocate(capacity);
+		}
+
+		final int oldCapacity = unit.capacity();
+		if (oldCapacity < capacity) {
+			if (m_direct)
+				((DirectUnit) unit).setCapacity(capacity);
+			else
+				((HeapUnit) unit).setCapacity(capacity);
+			count(capacity - oldCapacity);
+		}
+
+		m_inUse.addAndGet(unit.capacity());
+		unit.clear();
+		return unit;
+	}
+
+	void put(IUnit unit) {
+		m_inUse.addAndGet(-unit.capacity());
+		final int index = classIndex(unit.capacity());
+		if (index >= NUM_OF_CLASSES) {
+			drop(unit);
+			return;
+		}
+
+		final Depot depot = m_depots[index];
+		final int magazineSize = m_magazineSize;
+		if (magazineSize > 0) {
+			final Magazine magazine = magazine(index, magazineSize);
+			final int size = magazine.size();
+			if (size >= magazineSize)
+				depot.put(magazine, size - (magazineSize >> 1));
+			magazine.push(unit);
+		} else
+			depot.put(unit);
+	}
+
+	/**
+	 * Drops all the units pooled in the magazines of the threads and in the
+	 * depots.
+	 */
+	void clear() {
+		final Iterator<Rack> iter = m_racks.iterator();
+		while (iter.hasNext()) {
+			final Rack rack = iter.next();
+			if (rack.isDead())
+				iter.remove();
+			drain(rack, true);
+		}
+
+		for (final Depot depot : m_depots)
+			depot.clear();
+	}
+
+	long footprint() {
+		return m_footprint.get();
+	}
+
+	long highWaterMark() {
+		return m_highWaterMark.get();
+	}
+
+	long inUse() {
+		return m_inUse.get();
+	}
+
+	private Magazine magazine(int index, int magazineSize) {
+		final Magazine[] magazines = m_magazines.get();
+		Magazine magazine = magazines[index];
+		if (magazine == null) {
+			magazine = new Magazine(magazineSize);
+			magazines[index] = magazine;
+		}
+		return magazine;
+	}
+
+	// Returns the units of the magazines of dead threads to the depots.
+	private void reap() {
+		final Iterator<Rack> iter = m_racks.iterator();
+		while (iter.hasNext()) {
+			final Rack rack = iter.next();
+			if (rack.isDead()) {
+				iter.remove();
+				drain(rack, false);
+			}
+		}
+	}
+
+	private void drain(Rack rack, boolean drop) {
+		for (final Magazine magazine : rack.magazines()) {
+			if (magazine == null)
+				continue;
+			final IUnit[] units = magazine.drain();
+			if (units == null)
+				continue;
+			for (final IUnit unit : units) {
+				if (drop)
+					drop(unit);
+				else
+					m_depots[classIndex(unit.capacity())].put(unit);
+			}
+		}
+	}
+
+	private IUnit allocate(int capacity) {
+		final IUnit unit = m_direct ? new DirectUnit(capacity) : new HeapUnit(capacity);
+		count(capacity);
+		return unit;
+	}
+
+	private void drop(IUnit unit) {
+		m_footprint.addAndGet(-unit.capacity());
+	}
+
+	private void count(int bytes) {
+		final long footprint = m_footprint.addAndGet(bytes);
+		final AtomicLong highWaterMark = m_highWaterMark;
+		long hwm;
+		while (footprint > (hwm = highWaterMark.get()) && !highWaterMark.compareAndSet(hwm, footprint))
+			;
+	}
+
+	private boolean reserve(int bytes) {
+		final AtomicLong pooled = m_pooled;
+		if (pooled.addAndGet(bytes) <= m_capacity)
+			return true;
+
+		pooled.addAndGet(-bytes);
+		return false;
+	}
+
+	private static int classIndex(int capacity) {
+		if (capacity <= (1 << MIN_CLASS_SHIFT))
+			return 0;
+
+		return Integer.SIZE - Integer.numberOfLeadingZeros(capacity - 1) - MIN_CLASS_SHIFT;
+	}
+}
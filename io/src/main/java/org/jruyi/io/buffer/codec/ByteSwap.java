@@ -0,0 +1,161 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer.codec;
+
+import static org.jruyi.io.buffer.Helper.SIZE_OF_INT;
+import static org.jruyi.io.buffer.Helper.SIZE_OF_LONG;
+import static org.jruyi.io.buffer.Helper.SIZE_OF_SHORT;
+
+import org.jruyi.io.IUnit;
+
+/**
+ * Copies primitive arrays into and out of units in the opposite of the native
+ * byte order. The elements are byte-swapped a chunk at a time in a scratch
+ * array of the current thread, which is then copied in bulk, so the swapping
+ * runs as a tight loop over arrays and the copying as a memory copy.
+ * <p>
+ * All the indexes are absolute indexes of the unit.
+ */
+public final class ByteSwap {
+
+	private static final int CHUNK = 512;
+
+	private static final ThreadLocal<ByteSwap> c_scratch = new ThreadLocal<ByteSwap>() {
+
+		@Override
+		protected ByteSwap initialValue() {
+			return new ByteSwap();
+		}
+	};
+
+	private short[] m_shorts;
+	private int[] m_ints;
+	private long[] m_longs;
+
+	private ByteSwap() {
+	}
+
+	public static void set(IUnit unit, int index, short[] src, int offset, int length) {
+		final short[] scratch = c_scratch.get().shorts();
+		while (length > 0) {
+			final int n = length < CHUNK ? length : CHUNK;
+			for (int i = 0; i < n; ++i)
+				scratch[i] = Short.reverseBytes(src[offset + i]);
+			unit.set(index, scratch, 0, n);
+			index += n * SIZE_OF_SHORT;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public static void set(IUnit unit, int index, int[] src, int offset, int length) {
+		final int[] scratch = c_scratch.get().ints();
+		while (length > 0) {
+			final int n = length < CHUNK ? length : CHUNK;
+			for (int i = 0; i < n; ++i)
+				scratch[i] = Integer.reverseBytes(src[offset + i]);
+			unit.set(index, scratch, 0, n);
+			index += n * SIZE_OF_INT;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public static void set(IUnit unit, int index, long[] src, int offset, int length) {
+		final long[] scratch = c_scratch.get().longs();
+		while (length > 0) {
+			final int n = length < CHUNK ? length : CHUNK;
+			for (int i = 0; i < n; ++i)
+				scratch[i] = Long.reverseBytes(src[offset + i]);
+			unit.set(index, scratch, 0, n);
+			index += n * SIZE_OF_LONG;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public static void set(IUnit unit, int index, float[] src, int offset, int length) {
+		final int[] scratch = c_scratch.get().ints();
+		while (length > 0) {
+			final int n = length < CHUNK ? length : CHUNK;
+			for (int i = 0; i < n; ++i)
+				scratch[i] = Integer.reverseBytes(Float.floatToRawIntBits(src[offset + i]));
+			unit.set(index, scratch, 0, n);
+			index += n * SIZE_OF_INT;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public static void set(IUnit unit, int index, double[] src, int offset, int length) {
+		final long[] scratch = c_scratch.get().longs();
+		while (length > 0) {
+			final int n = length < CHUNK ? length : CHUNK;
+			for (int i = 0; i < n; ++i)
+				scratch[i] = Long.reverseBytes(Double.doubleToRawLongBits(src[offset + i]));
+			unit.set(index, scratch, 0, n);
+			index += n * SIZE_OF_LONG;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public static void get(IUnit unit, int index, float[] dst, int offset, int length) {
+		final int[] scratch = c_scratch.get().ints();
+		while (length > 0) {
+			final int n = length < CHUNK ? length : CHUNK;
+			unit.get(index, n * SIZE_OF_INT, scratch, 0);
+			for (int i = 0; i < n; ++i)
+				dst[offset + i] = Float.intBitsToFloat(Integer.reverseBytes(scratch[i]));
+			index += n * SIZE_OF_INT;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public static void get(IUnit unit, int index, double[] dst, int offset, int length) {
+		final long[] scratch = c_scratch.get().longs();
+		while (length > 0) {
+			final int n = length < CHUNK ? length : CHUNK;
+			unit.get(index, n * SIZE_OF_LONG, scratch, 0);
+			for (int i = 0; i < n; ++i)
+				dst[offset + i] = Double.longBitsToDouble(Long.reverseBytes(scratch[i]));
+			index += n * SIZE_OF_LONG;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	private short[] shorts() {
+		short[] shorts = m_shorts;
+		if (shorts == null)
+			m_shorts = shorts = new short[CHUNK];
+		return shorts;
+	}
+
+	private int[] ints() {
+		int[] ints = m_ints;
+		if (ints == null)
+			m_ints = ints = new int[CHUNK];
+		return ints;
+	}
+
+	private long[] longs() {
+		long[] longs = m_longs;
+		if (longs == null)
+			m_longs = longs = new long[CHUNK];
+		return longs;
+	}
+}
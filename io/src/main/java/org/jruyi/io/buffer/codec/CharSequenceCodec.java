@@ -34,14 +34,20 @@ public final class CharSequenceCodec extends AbstractCodec<CharSequence> {
 	public static final ICodec<CharSequence> ISO_8859_1 = new CharSequenceCodec(CharsetCodec.ISO_8859_1);
 
 	private final String m_charsetName;
+	private final int m_kind;
+	private ICharsetCodec m_codec;
 
 	public CharSequenceCodec(String charsetName) {
 		m_charsetName = charsetName;
+		m_kind = Text.kind(charsetName);
 	}
 
 	@Override
 	public void write(CharSequence cs, IUnitChain unitChain) {
-		final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
+		// a char buffer is to be consumed, so it goes through the encoder
+		if (!(cs instanceof CharBuffer) && Text.write(m_kind, cs, 0, cs.length(), unitChain))
+			return;
+
 		final CharBuffer cb;
 		if (cs instanceof StringBuilder)
 			cb = ((StringBuilder) cs).getCharBuffer(0, cs.length());
@@ -49,23 +55,28 @@ public final class CharSequenceCodec extends AbstractCodec<CharSequence> {
 			cb = (CharBuffer) cs;
 		else
 			cb = CharBuffer.wrap(cs);
-		Helper.write(cc, cb, unitChain);
+		Helper.write(codec(), cb, unitChain);
 	}
 
 	@Override
 	public void write(CharSequence cs, int offset, int length, IUnitChain unitChain) {
-		final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
+		if (Text.write(m_kind, cs, offset, length, unitChain))
+			return;
+
 		final CharBuffer cb;
 		if (cs instanceof StringBuilder)
 			cb = ((StringBuilder) cs).getCharBuffer(offset, length);
 		else
 			cb = CharBuffer.wrap(cs, offset, offset + length);
-		Helper.write(cc, cb, unitChain);
+		Helper.write(codec(), cb, unitChain);
 	}
 
 	@Override
 	public void prepend(CharSequence cs, IUnitChain unitChain) {
-		final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
+		if (!(cs instanceof CharBuffer) && Text.prepend(m_kind, cs, 0, cs.length(), unitChain))
+			return;
+
+		final ICharsetCodec cc = codec();
 		if (cs instanceof StringBuilder) {
 			Helper.prepend(cc, (StringBuilder) cs, unitChain);
 			return;
@@ -77,7 +88,10 @@ public final class CharSequenceCodec extends AbstractCodec<CharSequence> {
 
 	@Override
 	public void prepend(CharSequence cs, int offset, int length, IUnitChain unitChain) {
-		final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
+		if (Text.prepend(m_kind, cs, offset, length, unitChain))
+			return;
+
+		final ICharsetCodec cc = codec();
 		if (cs instanceof StringBuilder) {
 			Helper.prepend(cc, (StringBuilder) cs, offset, length, unitChain);
 			return;
@@ -85,4 +99,13 @@ public final class CharSequenceCodec extends AbstractCodec<CharSequence> {
 
 		Helper.prepend(cc, CharBuffer.wrap(cs, offset, offset + length), unitChain);
 	}
+
+	private ICharsetCodec codec() {
+		ICharsetCodec codec = m_codec;
+		if (codec == null) {
+			codec = CharsetCodec.get(m_charsetName);
+			m_codec = codec;
+		}
+		return codec;
+	}
 }
@@ -35,24 +35,35 @@ public final class StringCodec extends AbstractCodec<String> {
 	public static final ICodec<String> ISO_8859_1 = new StringCodec(CharsetCodec.ISO_8859_1);
 
 	private final String m_charsetName;
+	private final int m_kind;
+	private ICharsetCodec m_codec;
 
 	public StringCodec(String charsetName) {
 		m_charsetName = charsetName;
+		m_kind = Text.kind(charsetName);
 	}
 
 	@Override
 	public String read(IUnitChain unitChain) {
+		IUnit unit = unitChain.currentUnit();
+		final int length = unit.remaining();
+		if (length == unitChain.remaining()) {
+			final String str = Text.decode(m_kind, unit, unit.start() + unit.position(), length);
+			if (str != null) {
+				unit.position(unit.size());
+				return str;
+			}
+		}
+
 		final ByteBufferArray bba = ByteBufferArray.get();
 		try {
-			IUnit unit = unitChain.currentUnit();
 			bba.add(unit.getByteBufferForRead(unit.position(), unit.remaining()));
 			unit.position(unit.size());
 			while ((unit = unitChain.nextUnit()) != null) {
 				bba.add(unit.getByteBufferForRead(unit.position(), unit.remaining()));
 				unit.position(unit.size());
 			}
-			final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
-			return cc.toString(bba.array(), 0, bba.size());
+			return codec().toString(bba.array(), 0, bba.size());
 		} finally {
 			bba.clear();
 		}
@@ -66,16 +77,24 @@ public final class StringCodec extends AbstractCodec<String> {
 		if (length == 0)
 			return "";
 
+		IUnit unit = unitChain.currentUnit();
+		if (length <= unit.remaining()) {
+			final int position = unit.position();
+			final String str = Text.decode(m_kind, unit, unit.start() + position, length);
+			if (str != null) {
+				unit.position(position + length);
+				return str;
+			}
+		}
+
 		final ByteBufferArray bba = ByteBufferArray.get();
 		try {
-			IUnit unit = unitChain.currentUnit();
 			bba.add(unit.getByteBufferForRead(unit.position(), length));
 			while ((length -= unit.skip(length)) > 0) {
 				unit = unitChain.nextUnit();
 				bba.add(unit.getByteBufferForRead(unit.position(), length));
 			}
-			final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
-			return cc.toString(bba.array(), 0, bba.size());
+			return codec().toString(bba.array(), 0, bba.size());
 		} finally {
 			bba.clear();
 		}
@@ -83,28 +102,35 @@ public final class StringCodec extends AbstractCodec<String> {
 
 	@Override
 	public void write(String str, IUnitChain unitChain) {
-		final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
-		Helper.write(cc, CharBuffer.wrap(str), unitChain);
+		if (!Text.write(m_kind, str, 0, str.length(), unitChain))
+			Helper.write(codec(), CharBuffer.wrap(str), unitChain);
 	}
 
 	@Override
 	public void write(String str, int offset, int length, IUnitChain unitChain) {
-		final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
-		Helper.write(cc, CharBuffer.wrap(str, offset, offset + length), unitChain);
+		if (!Text.write(m_kind, str, offset, length, unitChain))
+			Helper.write(codec(), CharBuffer.wrap(str, offset, offset + length), unitChain);
 	}
 
 	@Override
 	public String get(IUnitChain unitChain, int index) {
 		if (index < 0)
 			throw new IndexOutOfBoundsException();
+
+		IUnit unit = unitChain.currentUnit();
+		final int size = unit.size();
+		if (size == unitChain.remaining() + unit.position() && index <= size) {
+			final String str = Text.decode(m_kind, unit, unit.start() + index, size - index);
+			if (str != null)
+				return str;
+		}
+
 		final ByteBufferArray bba = ByteBufferArray.get();
 		try {
-			IUnit unit = unitChain.currentUnit();
-			bba.add(unit.getByteBufferForRead(index, unit.size() - index));
+			bba.add(unit.getByteBufferForRead(index, size - index));
 			while ((unit = unitChain.nextUnit()) != null)
 				bba.add(unit.getByteBufferForRead(0, unit.size()));
-			final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
-			return cc.toString(bba.array(), 0, bba.size());
+			return codec().toString(bba.array(), 0, bba.size());
 		} finally {
 			bba.clear();
 		}
@@ -116,9 +142,16 @@ public final class StringCodec extends AbstractCodec<String> {
 			throw new IndexOutOfBoundsException();
 		if (length == 0)
 			return "";
+
+		IUnit unit = unitChain.currentUnit();
+		if (index + length <= unit.size()) {
+			final String str = Text.decode(m_kind, unit, unit.start() + index, length);
+			if (str != null)
+				return str;
+		}
+
 		final ByteBufferArray bba = ByteBufferArray.get();
 		try {
-			IUnit unit = unitChain.currentUnit();
 			bba.add(unit.getByteBufferForRead(index, length));
 			length -= (unit.size() - index);
 			while (length > 0) {
@@ -126,8 +159,7 @@ public final class StringCodec extends AbstractCodec<String> {
 				bba.add(unit.getByteBufferForRead(0, length));
 				length -= unit.size();
 			}
-			final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
-			return cc.toString(bba.array(), 0, bba.size());
+			return codec().toString(bba.array(), 0, bba.size());
 		} finally {
 			bba.clear();
 		}
@@ -135,13 +167,22 @@ public final class StringCodec extends AbstractCodec<String> {
 
 	@Override
 	public void prepend(String str, IUnitChain unitChain) {
-		final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
-		Helper.prepend(cc, CharBuffer.wrap(str), unitChain);
+		if (!Text.prepend(m_kind, str, 0, str.length(), unitChain))
+			Helper.prepend(codec(), CharBuffer.wrap(str), unitChain);
 	}
 
 	@Override
 	public void prepend(String str, int offset, int length, IUnitChain unitChain) {
-		final ICharsetCodec cc = CharsetCodec.get(m_charsetName);
-		Helper.prepend(cc, CharBuffer.wrap(str, offset, offset + length), unitChain);
+		if (!Text.prepend(m_kind, str, offset, length, unitChain))
+			Helper.prepend(codec(), CharBuffer.wrap(str, offset, offset + length), unitChain);
+	}
+
+	private ICharsetCodec codec() {
+		ICharsetCodec codec = m_codec;
+		if (codec == null) {
+			codec = CharsetCodec.get(m_charsetName);
+			m_codec = codec;
+		}
+		return codec;
 	}
 }
@@ -0,0 +1,237 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer.codec;
+
+import java.nio.charset.Charset;
+
+import org.jruyi.io.IUnit;
+import org.jruyi.io.IUnitChain;
+import org.jruyi.io.buffer.Util;
+
+/**
+ * Encodes and decodes US-ASCII, ISO-8859-1 and UTF-8 text straight between
+ * chars and the bytes of a single unit, without charset encoders, decoders
+ * or NIO buffers. Each method gives up, returning {@code null} or
+ * {@code false}, when the text does not fit in one unit or needs the charset
+ * coders to deal with, such as malformed input, so that the caller falls back
+ * to them and the results stay the same.
+ */
+final class Text {
+
+	static final int OTHER = 0;
+	static final int US_ASCII = 1;
+	static final int ISO_8859_1 = 2;
+	static final int UTF_8 = 3;
+
+	private Text() {
+	}
+
+	static int kind(String charsetName) {
+		final String name;
+		try {
+			name = Charset.forName(charsetName).name();
+		} catch (IllegalArgumentException e) {
+			return OTHER;
+		}
+
+		switch (name) {
+		case "US-ASCII":
+			return US_ASCII;
+		case "ISO-8859-1":
+			return ISO_8859_1;
+		case "UTF-8":
+			return UTF_8;
+		default:
+			return OTHER;
+		}
+	}
+
+	/**
+	 * Decodes the {@code length} bytes of the given unit starting at the
+	 * absolute {@code index}.
+	 */
+	static String decode(int kind, IUnit unit, int index, int length) {
+		if (kind == OTHER)
+			return null;
+
+		final char[] chars = new char[length];
+		final int end = index + length;
+		int n = 0;
+		if (kind == ISO_8859_1) {
+			while (index < end)
+				chars[n++] = (char) (unit.byteAt(index++) & 0xFF);
+		} else if (kind == US_ASCII) {
+			while (index < end) {
+				final int b = unit.byteAt(index++);
+				if (b < 0)
+					return null;
+				chars[n++] = (char) b;
+			}
+		} else {
+			while (index < end) {
+				final int b = unit.byteAt(index++);
+				if (b >= 0) {
+					chars[n++] = (char) b;
+					continue;
+				}
+
+				final int cp;
+				if ((b & 0xE0) == 0xC0) {
+					if (index >= end)
+						return null;
+					final int b2 = unit.byteAt(index++);
+					if ((b2 & 0xC0) != 0x80)
+						return null;
+					cp = ((b & 0x1F) << 6) | (b2 & 0x3F);
+					if (cp < 0x80)
+						return null;
+				} else if ((b & 0xF0) == 0xE0) {
+					if (index + 1 >= end)
+						return null;
+					final int b2 = unit.byteAt(index++);
+					final int b3 = unit.byteAt(index++);
+					if ((((b2 & 0xC0) ^ 0x80) | ((b3 & 0xC0) ^ 0x80)) != 0)
+						return null;
+					cp = ((b & 0x0F) << 12) | ((b2 & 0x3F) << 6) | (b3 & 0x3F);
+					if (cp < 0x800 || Character.isSurrogate((char) cp))
+						return null;
+				} else if ((b & 0xF8) == 0xF0) {
+					if (index + 2 >= end)
+						return null;
+					final int b2 = unit.byteAt(index++);
+					final int b3 = unit.byteAt(index++);
+					final int b4 = unit.byteAt(index++);
+					if ((((b2 & 0xC0) ^ 0x80) | ((b3 & 0xC0) ^ 0x80) | ((b4 & 0xC0) ^ 0x80)) != 0)
+						return null;
+					final int c = ((b & 0x07) << 18) | ((b2 & 0x3F) << 12) | ((b3 & 0x3F) << 6) | (b4 & 0x3F);
+					if (c < 0x10000 || c > Character.MAX_CODE_POINT)
+						return null;
+					chars[n++] = Character.highSurrogate(c);
+					cp = Character.lowSurrogate(c);
+				} else
+					return null;
+				chars[n++] = (char) cp;
+			}
+		}
+		return new String(chars, 0, n);
+	}
+
+	/**
+	 * Appends the encoded chars to the last unit if they fit in it.
+	 */
+	static boolean write(int kind, CharSequence cs, int offset, int length, IUnitChain unitChain) {
+		if (kind == OTHER)
+			return false;
+
+		final IUnit unit = Util.lastUnit(unitChain);
+		final int available = unit.available();
+		if (length > available)
+			return false;
+
+		final int n = encodedLength(kind, cs, offset, length);
+		if (n < 0 || n > available)
+			return false;
+
+		final int size = unit.size();
+		encode(kind, cs, offset, length, unit, unit.start() + size);
+		unit.size(size + n);
+		return true;
+	}
+
+	/**
+	 * Prepends the encoded chars to the first unit if they fit in it.
+	 */
+	static boolean prepend(int kind, CharSequence cs, int offset, int length, IUnitChain unitChain) {
+		if (kind == OTHER)
+			return false;
+
+		final IUnit unit = Util.firstUnit(unitChain);
+		final int start = unit.start();
+		if (length > start)
+			return false;
+
+		final int n = encodedLength(kind, cs, offset, length);
+		if (n < 0 || n > start)
+			return false;
+
+		encode(kind, cs, offset, length, unit, start - n);
+		unit.start(start - n);
+		unit.size(unit.size() + n);
+		return true;
+	}
+
+	/**
+	 * Returns the number of bytes the given chars encode to, or -1 if the
+	 * chars are not mappable or a surrogate is unpaired.
+	 */
+	private static int encodedLength(int kind, CharSequence cs, int offset, int length) {
+		final int end = offset + length;
+		if (kind != UTF_8) {
+			final int max = kind == US_ASCII ? 0x7F : 0xFF;
+			for (int i = offset; i < end; ++i) {
+				if (cs.charAt(i) > max)
+					return -1;
+			}
+			return length;
+		}
+
+		int n = length;
+		for (int i = offset; i < end; ++i) {
+			final char c = cs.charAt(i);
+			if (c < 0x80)
+				continue;
+			if (c < 0x800)
+				++n;
+			else if (!Character.isSurrogate(c))
+				n += 2;
+			else if (Character.isHighSurrogate(c) && i + 1 < end && Character.isLowSurrogate(cs.charAt(i + 1))) {
+				// 4 bytes for the 2 chars
+				n += 2;
+				++i;
+			} else
+				return -1;
+		}
+		return n;
+	}
+
+	private static void encode(int kind, CharSequence cs, int offset, int length, IUnit unit, int index) {
+		final int end = offset + length;
+		if (kind != UTF_8) {
+			for (int i = offset; i < end; ++i)
+				unit.set(index++, (byte) cs.charAt(i));
+			return;
+		}
+
+		for (int i = offset; i < end; ++i) {
+			final char c = cs.charAt(i);
+			if (c < 0x80)
+				unit.set(index++, (byte) c);
+			else if (c < 0x800) {
+				unit.set(index++, (byte) (0xC0 | (c >> 6)));
+				unit.set(index++, (byte) (0x80 | (c & 0x3F)));
+			} else if (!Character.isSurrogate(c)) {
+				unit.set(index++, (byte) (0xE0 | (c >> 12)));
+				unit.set(index++, (byte) (0x80 | ((c >> 6) & 0x3F)));
+				unit.set(index++, (byte) (0x80 | (c & 0x3F)));
+			} else {
+				final int cp = Character.toCodePoint(c, cs.charAt(++i));
+				unit.set(index++, (byte) (0xF0 | (cp >> 18)));
+				unit.set(index++, (byte) (0x80 | ((cp >> 12) & 0x3F)));
+				unit.set(index++, (byte) (0x80 | ((cp >> 6) & 0x3F)));
+				unit.set(index++, (byte) (0x80 | (cp & 0x3F)));
+			}
+		}
+	}
+}
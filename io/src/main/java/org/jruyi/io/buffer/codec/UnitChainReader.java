@@ -0,0 +1,110 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer.codec;
+
+import org.jruyi.io.IUnit;
+import org.jruyi.io.IUnitChain;
+
+/**
+ * Gets bytes from a unit chain one after another, starting at the given index
+ * of the current unit. The positions of the units are left as they are.
+ */
+public final class UnitChainReader {
+
+	private final IUnitChain m_unitChain;
+	private IUnit m_unit;
+	private int m_index;
+	private int m_end;
+	private int m_remaining;
+
+	public UnitChainReader(IUnitChain unitChain, int index) {
+		if (index < 0)
+			throw new IndexOutOfBoundsException();
+
+		final IUnit unit = unitChain.currentUnit();
+		final int start = unit.start();
+		m_unitChain = unitChain;
+		m_unit = unit;
+		m_index = start + index;
+		m_end = start + unit.size();
+		// the bytes from the index to the end of the chain
+		m_remaining = unitChain.remaining() - unit.remaining() + unit.size() - index;
+	}
+
+	/**
+	 * Returns the number of bytes left to get.
+	 *
+	 * @return the number of remaining bytes
+	 */
+	public int remaining() {
+		return m_remaining;
+	}
+
+	public byte getByte() {
+		while (m_index >= m_end)
+			nextUnit();
+		--m_remaining;
+		return m_unit.byteAt(m_index++);
+	}
+
+	/**
+	 * Gets a base 128 varint, least significant group first.
+	 *
+	 * @return the varint
+	 */
+	public int getVarint() {
+		int i = 0;
+		for (int shift = 0;; shift += 7) {
+			final int b = getByte();
+			i |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				return i;
+		}
+	}
+
+	public void getBytes(byte[] dst, int offset, int length) {
+		while (length > 0) {
+			int n = m_end - m_index;
+			if (n < 1) {
+				nextUnit();
+				continue;
+			}
+			if (n > length)
+				n = length;
+			final int index = m_index;
+			m_unit.getBytes(index, index + n, dst, offset);
+			m_index = index + n;
+			m_remaining -= n;
+			offset += n;
+			length -= n;
+		}
+	}
+
+	public byte[] getBytes(int length) {
+		final byte[] dst = new byte[length];
+		getBytes(dst, 0, length);
+		return dst;
+	}
+
+	private void nextUnit() {
+		final IUnit unit = m_unitChain.nextUnit();
+		if (unit == null)
+			throw new IndexOutOfBoundsException();
+		final int start = unit.start();
+		m_unit = unit;
+		m_index = start;
+		m_end = start + unit.size();
+	}
+}
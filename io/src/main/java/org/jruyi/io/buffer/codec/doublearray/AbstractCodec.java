@@ -23,6 +23,7 @@ import org.jruyi.io.ICodec;
 import org.jruyi.io.IUnit;
 import org.jruyi.io.IUnitChain;
 import org.jruyi.io.buffer.Util;
+import org.jruyi.io.buffer.codec.ByteSwap;
 
 public abstract class AbstractCodec implements ICodec<double[]> {
 
@@ -185,10 +186,8 @@ public abstract class AbstractCodec implements ICodec<double[]> {
 						break;
 					offset += k;
 				} else {
-					int i = offset;
+					ByteSwap.get(unit, index, dst, offset, k);
 					offset += k;
-					for (; i < offset; ++i, index += SIZE_OF_LONG)
-						dst[i] = Double.longBitsToDouble(Long.reverseBytes(unit.getLong(index)));
 					if (length < 1)
 						break;
 				}
@@ -231,10 +230,9 @@ public abstract class AbstractCodec implements ICodec<double[]> {
 					offset += k;
 					index += n;
 				} else {
-					int i = offset;
+					ByteSwap.get(unit, index, dst, offset, k);
 					offset += k;
-					for (; i < offset; ++i, index += SIZE_OF_LONG)
-						dst[i] = Double.longBitsToDouble(Long.reverseBytes(unit.getLong(index)));
+					index += n;
 					if (length < 1)
 						break;
 				}
@@ -282,8 +280,8 @@ public abstract class AbstractCodec implements ICodec<double[]> {
 						break;
 					offset += k;
 				} else {
-					for (int n = offset + k; offset < n; ++offset, index += SIZE_OF_LONG)
-						unit.set(index, Long.reverseBytes(Double.doubleToRawLongBits(src[offset])));
+					ByteSwap.set(unit, index, src, offset, k);
+					offset += k;
 					if (length < 1)
 						break;
 				}
@@ -314,8 +312,9 @@ public abstract class AbstractCodec implements ICodec<double[]> {
 					offset += k;
 					index += k * SIZE_OF_LONG;
 				} else {
-					for (int n = offset + k; offset < n; ++offset, index += SIZE_OF_LONG)
-						unit.set(index, Long.reverseBytes(Double.doubleToRawLongBits(src[offset])));
+					ByteSwap.set(unit, index, src, offset, k);
+					offset += k;
+					index += k * SIZE_OF_LONG;
 					if (length < 1)
 						break;
 				}
@@ -361,8 +360,8 @@ public abstract class AbstractCodec implements ICodec<double[]> {
 						break;
 					offset += k;
 				} else {
-					for (int n = offset + k; offset < n; ++offset, index += SIZE_OF_LONG)
-						unit.set(index, Long.reverseBytes(Double.doubleToRawLongBits(src[offset])));
+					ByteSwap.set(unit, index, src, offset, k);
+					offset += k;
 					if (length < 1)
 						break;
 				}
@@ -23,6 +23,7 @@ import org.jruyi.io.ICodec;
 import org.jruyi.io.IUnit;
 import org.jruyi.io.IUnitChain;
 import org.jruyi.io.buffer.Util;
+import org.jruyi.io.buffer.codec.ByteSwap;
 
 public abstract class AbstractCodec implements ICodec<float[]> {
 
@@ -185,10 +186,8 @@ public abstract class AbstractCodec implements ICodec<float[]> {
 						break;
 					offset += k;
 				} else {
-					int i = offset;
+					ByteSwap.get(unit, index, dst, offset, k);
 					offset += k;
-					for (; i < offset; ++i, index += SIZE_OF_INT)
-						dst[i] = Float.intBitsToFloat(Integer.reverseBytes(unit.getInt(index)));
 					if (length < 1)
 						break;
 				}
@@ -231,10 +230,9 @@ public abstract class AbstractCodec implements ICodec<float[]> {
 					offset += k;
 					index += n;
 				} else {
-					int i = offset;
+					ByteSwap.get(unit, index, dst, offset, k);
 					offset += k;
-					for (; i < offset; ++i, index += SIZE_OF_INT)
-						dst[i] = Float.intBitsToFloat(Integer.reverseBytes(unit.getInt(index)));
+					index += n;
 					if (length < 1)
 						break;
 				}
@@ -282,8 +280,8 @@ public abstract class AbstractCodec implements ICodec<float[]> {
 						break;
 					offset += k;
 				} else {
-					for (int n = offset + k; offset < n; ++offset, index += SIZE_OF_INT)
-						unit.set(index, Integer.reverseBytes(Float.floatToRawIntBits(src[offset])));
+					ByteSwap.set(unit, index, src, offset, k);
+					offset += k;
 					if (length < 1)
 						break;
 				}
@@ -314,8 +312,9 @@ public abstract class AbstractCodec implements ICodec<float[]> {
 					offset += k;
 					index += k * SIZE_OF_INT;
 				} else {
-					for (int n = offset + k; offset < n; ++offset, index += SIZE_OF_INT)
-						unit.set(index, Integer.reverseBytes(Float.floatToRawIntBits(src[offset])));
+					ByteSwap.set(unit, index, src, offset, k);
+					offset += k;
+					index += k * SIZE_OF_INT;
 					if (length < 1)
 						break;
 				}
@@ -361,8 +360,8 @@ public abstract class AbstractCodec implements ICodec<float[]> {
 						break;
 					offset += k;
 				} else {
-					for (int n = offset + k; offset < n; ++offset, index += SIZE_OF_INT)
-						unit.set(index, Integer.reverseBytes(Float.floatToRawIntBits(src[offset])));
+					ByteSwap.set(unit, index, src, offset, k);
+					offset += k;
 					if (length < 1)
 						break;
 				}
@@ -0,0 +1,363 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer.codec.intarray;
+
+import java.nio.BufferUnderflowException;
+
+import org.jruyi.io.ICodec;
+import org.jruyi.io.IUnitChain;
+import org.jruyi.io.buffer.codec.ByteArrayCodec;
+import org.jruyi.io.buffer.codec.UnitChainReader;
+import org.jruyi.io.buffer.intcodec.Varint;
+
+/**
+ * Codec of int arrays in the StreamVByte layout: the number of the ints as a
+ * varint, then a control byte for every 4 ints, then the ints in 1 to 4 bytes
+ * each, little-endian. The 2-bit fields of a control byte, lowest first, give
+ * the byte lengths of the 4 ints minus 1. Unlike varints, the data bytes
+ * carry no continuation bits, so each value is decoded in one step.
+ * <p>
+ * Sorted arrays encode smaller with {@link #DELTA}, which encodes the
+ * differences between neighbouring ints, and arrays of small negative ints
+ * with {@link #ZIGZAG}. {@link #DELTA_ZIGZAG} suits unsorted series of close
+ * values.
+ * <p>
+ * {@code set} overwrites the encoded bytes at the given index, which must not
+ * run over the end of the buffer. The {@code read} and {@code get} methods
+ * taking a length expect exactly one encoded array of that many bytes. The
+ * {@code read} methods taking a destination array return the number of bytes
+ * read.
+ */
+public final class StreamVByte implements ICodec<int[]> {
+
+	public static final ICodec<int[]> INST = new StreamVByte(false, false);
+	public static final ICodec<int[]> DELTA = new StreamVByte(true, false);
+	public static final ICodec<int[]> ZIGZAG = new StreamVByte(false, true);
+	public static final ICodec<int[]> DELTA_ZIGZAG = new StreamVByte(true, true);
+
+	// the number of data bytes of the 4 ints of each control byte
+	private static final byte[] c_lengths;
+
+	private final boolean m_delta;
+	private final boolean m_zigzag;
+
+	static {
+		final byte[] lengths = new byte[256];
+		for (int i = 0; i < 256; ++i)
+			lengths[i] = (byte) ((i & 3) + ((i >> 2) & 3) + ((i >> 4) & 3) + (i >> 6) + 4);
+		c_lengths = lengths;
+	}
+
+	private StreamVByte(boolean delta, boolean zigzag) {
+		m_delta = delta;
+		m_zigzag = zigzag;
+	}
+
+	@Override
+	public int[] read(IUnitChain unitChain) {
+		final int count = Varint.INST.read(unitChain);
+		final int[] dst = new int[checkCount(count, unitChain.remaining())];
+		readBody(dst, 0, count, unitChain);
+		return dst;
+	}
+
+	@Override
+	public int[] read(IUnitChain unitChain, int length) {
+		if (length < 0)
+			throw new IllegalArgumentException();
+
+		return decode(ByteArrayCodec.INST.read(unitChain, length));
+	}
+
+	@Override
+	public int read(int[] dst, IUnitChain unitChain) {
+		return read(dst, 0, dst.length, unitChain);
+	}
+
+	@Override
+	public int read(int[] dst, int offset, int length, IUnitChain unitChain) {
+		final int n = offset + length;
+		if ((offset | length | n | (dst.length - n)) < 0)
+			throw new IndexOutOfBoundsException();
+
+		final int count = Varint.INST.read(unitChain);
+		if (checkCount(count, unitChain.remaining()) > length)
+			throw new IndexOutOfBoundsException();
+
+		return varintLength(count) + readBody(dst, offset, count, unitChain);
+	}
+
+	@Override
+	public void write(int[] src, IUnitChain unitChain) {
+		final byte[] bytes = new byte[maxEncodedLength(src.length)];
+		ByteArrayCodec.INST.write(bytes, 0, encode(src, 0, src.length, bytes), unitChain);
+	}
+
+	@Override
+	public void write(int[] src, int offset, int length, IUnitChain unitChain) {
+		final int n = offset + length;
+		if ((offset | length | n | (src.length - n)) < 0)
+			throw new IndexOutOfBoundsException();
+
+		final byte[] bytes = new byte[maxEncodedLength(length)];
+		ByteArrayCodec.INST.write(bytes, 0, encode(src, offset, length, bytes), unitChain);
+	}
+
+	@Override
+	public int[] get(IUnitChain unitChain, int index) {
+		final UnitChainReader reader = new UnitChainReader(unitChain, index);
+		final int count = reader.getVarint();
+		if (count < 0 || minEncodedLength(count) > reader.remaining())
+			throw new IndexOutOfBoundsException();
+
+		final int[] dst = new int[count];
+		getBody(dst, 0, count, reader);
+		return dst;
+	}
+
+	@Override
+	public int[] get(IUnitChain unitChain, int index, int length) {
+		if (index < 0 || length < 0)
+			throw new IndexOutOfBoundsException();
+
+		return decode(new UnitChainReader(unitChain, index).getBytes(length));
+	}
+
+	@Override
+	public void get(int[] dst, IUnitChain unitChain, int index) {
+		get(dst, 0, dst.length, unitChain, index);
+	}
+
+	@Override
+	public void get(int[] dst, int offset, int length, IUnitChain unitChain, int index) {
+		final int n = offset + length;
+		if ((offset | length | n | (dst.length - n)) < 0)
+			throw new IndexOutOfBoundsException();
+
+		final UnitChainReader reader = new UnitChainReader(unitChain, index);
+		final int count = reader.getVarint();
+		if (count < 0 || count > length || minEncodedLength(count) > reader.remaining())
+			throw new IndexOutOfBoundsException();
+
+		getBody(dst, offset, count, reader);
+	}
+
+	@Override
+	public void set(int[] src, IUnitChain unitChain, int index) {
+		final byte[] bytes = new byte[maxEncodedLength(src.length)];
+		ByteArrayCodec.INST.set(bytes, 0, encode(src, 0, src.length, bytes), unitChain, index);
+	}
+
+	@Override
+	public void set(int[] src, int offset, int length, IUnitChain unitChain, int index) {
+		final int n = offset + length;
+		if ((offset | length | n | (src.length - n)) < 0)
+			throw new IndexOutOfBoundsException();
+
+		final byte[] bytes = new byte[maxEncodedLength(length)];
+		ByteArrayCodec.INST.set(bytes, 0, encode(src, offset, length, bytes), unitChain, index);
+	}
+
+	@Override
+	public void prepend(int[] src, IUnitChain unitChain) {
+		final byte[] bytes = new byte[maxEncodedLength(src.length)];
+		ByteArrayCodec.INST.prepend(bytes, 0, encode(src, 0, src.length, bytes), unitChain);
+	}
+
+	@Override
+	public void prepend(int[] src, int offset, int length, IUnitChain unitChain) {
+		final int n = offset + length;
+		if ((offset | length | n | (src.length - n)) < 0)
+			throw new IndexOutOfBoundsException();
+
+		final byte[] bytes = new byte[maxEncodedLength(length)];
+		ByteArrayCodec.INST.prepend(bytes, 0, encode(src, offset, length, bytes), unitChain);
+	}
+
+	// Checks the count against the remaining bytes before allocating for it.
+	private static int checkCount(int count, int remaining) {
+		if (count < 0 || minEncodedLength(count) > remaining)
+			throw new BufferUnderflowException();
+		return count;
+	}
+
+	private static int controlLength(int count) {
+		return (count + 3) >>> 2;
+	}
+
+	// the control bytes and at least one data byte per int
+	private static long minEncodedLength(int count) {
+		return controlLength(count) + (long) count;
+	}
+
+	private static int maxEncodedLength(int count) {
+		return 5 + controlLength(count) + count * 4;
+	}
+
+	private static int varintLength(int i) {
+		int n = 1;
+		while ((i >>>= 7) != 0)
+			++n;
+		return n;
+	}
+
+	/**
+	 * Returns the number of data bytes given by the control bytes starting at
+	 * {@code c} for {@code count} ints.
+	 */
+	private static int dataLength(byte[] bytes, int c, int count) {
+		final byte[] lengths = c_lengths;
+		int n = 0;
+		final int end = c + (count >>> 2);
+		while (c < end)
+			n += lengths[bytes[c++] & 0xFF];
+
+		for (int i = 0, k = count & 3, ctrl = k > 0 ? bytes[c] : 0; i < k; ++i, ctrl >>>= 2)
+			n += (ctrl & 3) + 1;
+		return n;
+	}
+
+	private int readBody(int[] dst, int offset, int count, IUnitChain unitChain) {
+		final int c = controlLength(count);
+		final byte[] control = ByteArrayCodec.INST.read(unitChain, c);
+		final int d = dataLength(control, 0, count);
+		final byte[] bytes = new byte[c + d];
+		System.arraycopy(control, 0, bytes, 0, c);
+		ByteArrayCodec.INST.read(bytes, c, d, unitChain);
+		decode(bytes, 0, c, dst, offset, count);
+		return c + d;
+	}
+
+	private void getBody(int[] dst, int offset, int count, UnitChainReader reader) {
+		final int c = controlLength(count);
+		final byte[] control = reader.getBytes(c);
+		final int d = dataLength(control, 0, count);
+		final byte[] bytes = new byte[c + d];
+		System.arraycopy(control, 0, bytes, 0, c);
+		reader.getBytes(bytes, c, d);
+		decode(bytes, 0, c, dst, offset, count);
+	}
+
+	/**
+	 * Decodes an encoded array taking up all the given bytes.
+	 */
+	private int[] decode(byte[] bytes) {
+		int count = 0;
+		int h = 0;
+		for (int shift = 0;; shift += 7) {
+			if (h >= bytes.length)
+				throw new IllegalArgumentException();
+			final int b = bytes[h++];
+			count |= (b & 0x7F) << shift;
+			if ((b & 0x80) == 0)
+				break;
+		}
+
+		final int c = controlLength(count);
+		if (count < 0 || h + c > bytes.length || h + c + dataLength(bytes, h, count) != bytes.length)
+			throw new IllegalArgumentException();
+
+		final int[] dst = new int[count];
+		decode(bytes, h, h + c, dst, 0, count);
+		return dst;
+	}
+
+	private void decode(byte[] bytes, int c, int d, int[] dst, int offset, int count) {
+		final boolean delta = m_delta;
+		final boolean zigzag = m_zigzag;
+		int prev = 0;
+		for (final int end = offset + count; offset < end;) {
+			int ctrl = bytes[c++];
+			int k = end - offset;
+			if (k > 4)
+				k = 4;
+			for (; k > 0; --k, ctrl >>>= 2) {
+				int v;
+				switch (ctrl & 3) {
+				case 0:
+					v = bytes[d] & 0xFF;
+					d += 1;
+					break;
+				case 1:
+					v = (bytes[d] & 0xFF) | ((bytes[d + 1] & 0xFF) << 8);
+					d += 2;
+					break;
+				case 2:
+					v = (bytes[d] & 0xFF) | ((bytes[d + 1] & 0xFF) << 8) | ((bytes[d + 2] & 0xFF) << 16);
+					d += 3;
+					break;
+				default:
+					v = (bytes[d] & 0xFF) | ((bytes[d + 1] & 0xFF) << 8) | ((bytes[d + 2] & 0xFF) << 16)
+							| (bytes[d + 3] << 24);
+					d += 4;
+				}
+				if (zigzag)
+					v = (v >>> 1) ^ -(v & 1);
+				if (delta)
+					v = prev += v;
+				dst[offset++] = v;
+			}
+		}
+	}
+
+	/**
+	 * Encodes the given ints into {@code bytes} and returns the number of the
+	 * encoded bytes.
+	 */
+	private int encode(int[] src, int offset, int length, byte[] bytes) {
+		int d = 0;
+		int i = length;
+		while ((i & ~0x7F) != 0) {
+			bytes[d++] = (byte) ((i & 0x7F) | 0x80);
+			i >>>= 7;
+		}
+		bytes[d++] = (byte) i;
+
+		final boolean delta = m_delta;
+		final boolean zigzag = m_zigzag;
+		int c = d;
+		d += controlLength(length);
+		int prev = 0;
+		for (int end = offset + length; offset < end;) {
+			int ctrl = 0;
+			for (int shift = 0; shift < 8 && offset < end; shift += 2) {
+				int v = src[offset++];
+				if (delta) {
+					final int x = v;
+					v -= prev;
+					prev = x;
+				}
+				if (zigzag)
+					v = (v << 1) ^ (v >> 31);
+
+				bytes[d++] = (byte) v;
+				if ((v >>> 8) != 0) {
+					bytes[d++] = (byte) (v >>> 8);
+					if ((v >>> 16) != 0) {
+						bytes[d++] = (byte) (v >>> 16);
+						if ((v >>> 24) != 0) {
+							bytes[d++] = (byte) (v >>> 24);
+							ctrl |= 3 << shift;
+						} else
+							ctrl |= 2 << shift;
+					} else
+						ctrl |= 1 << shift;
+				}
+			}
+			bytes[c++] = (byte) ctrl;
+		}
+		return d;
+	}
+}
@@ -23,6 +23,7 @@ import org.jruyi.io.ICodec;
 import org.jruyi.io.IUnit;
 import org.jruyi.io.IUnitChain;
 import org.jruyi.io.buffer.Util;
+import org.jruyi.io.buffer.codec.ByteSwap;
 
 public abstract class AbstractCodec implements ICodec<long[]> {
 
@@ -282,8 +283,8 @@ public abstract class AbstractCodec implements ICodec<long[]> {
 						break;
 					offset += k;
 				} else {
-					for (int n = offset + k; offset < n; ++offset, index += SIZE_OF_LONG)
-						unit.set(index, Long.reverseBytes(src[offset]));
+					ByteSwap.set(unit, index, src, offset, k);
+					offset += k;
 					if (length < 1)
 						break;
 				}
@@ -314,8 +315,9 @@ public abstract class AbstractCodec implements ICodec<long[]> {
 					offset += k;
 					index += k * SIZE_OF_LONG;
 				} else {
-					for (int n = offset + k; offset < n; ++offset, index += SIZE_OF_LONG)
-						unit.set(index, Long.reverseBytes(src[offset]));
+					ByteSwap.set(unit, index, src, offset, k);
+					offset += k;
+					index += k * SIZE_OF_LONG;
 					if (length < 1)
 						break;
 				}
@@ -361,8 +363,8 @@ public abstract class AbstractCodec implements ICodec<long[]> {
 						break;
 					offset += k;
 				} else {
-					for (int n = offset + k; offset < n; ++offset, index += SIZE_OF_LONG)
-						unit.set(index, Long.reverseBytes(src[offset]));
+					ByteSwap.set(unit, index, src, offset, k);
+					offset += k;
 					if (length < 1)
 						break;
 				}
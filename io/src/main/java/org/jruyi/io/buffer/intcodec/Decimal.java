@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer.intcodec;
+
+import org.jruyi.io.IIntCodec;
+import org.jruyi.io.ILongCodec;
+import org.jruyi.io.IUnitChain;
+
+/**
+ * Codec of ints as decimal ASCII text, such as {@code -12345}. It parses the
+ * same way as {@link org.jruyi.io.buffer.longcodec.Decimal#INST}, and throws a
+ * {@link NumberFormatException} if the value does not fit in an int.
+ */
+public final class Decimal implements IIntCodec {
+
+	public static final IIntCodec INST = new Decimal();
+
+	private static final ILongCodec LONG = org.jruyi.io.buffer.longcodec.Decimal.INST;
+
+	private Decimal() {
+	}
+
+	@Override
+	public int read(IUnitChain unitChain) {
+		return toInt(LONG.read(unitChain));
+	}
+
+	@Override
+	public int get(IUnitChain unitChain, int index) {
+		return toInt(LONG.get(unitChain, index));
+	}
+
+	@Override
+	public void write(int i, IUnitChain unitChain) {
+		LONG.write(i, unitChain);
+	}
+
+	@Override
+	public void set(int i, IUnitChain unitChain, int index) {
+		LONG.set(i, unitChain, index);
+	}
+
+	@Override
+	public void prepend(int i, IUnitChain unitChain) {
+		LONG.prepend(i, unitChain);
+	}
+
+	private static int toInt(long l) {
+		final int i = (int) l;
+		if (i != l)
+			throw new NumberFormatException("Value out of range");
+		return i;
+	}
+}
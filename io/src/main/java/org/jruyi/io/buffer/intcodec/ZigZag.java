@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jruyi.io.buffer.intcodec;
+
+import org.jruyi.io.IIntCodec;
+import org.jruyi.io.IUnitChain;
+
+/**
+ * Encodes signed ints as ZigZag varints, as the sint32 type of Protocol
+ * Buffers does, so that values of small magnitude take few bytes regardless
+ * of the sign.
+ */
+public final class ZigZag implements IIntCodec {
+
+	public static final IIntCodec INST = new ZigZag();
+
+	private ZigZag() {
+	}
+
+	private static int encode(int v) {
+		return (v << 1) ^ (v >> 31);
+	}
+
+	private static int decode(int v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	@Override
+	public int read(IUnitChain unitChain) {
+		return decode(Varint.INST.read(unitChain));
+	}
+
+	@Override
+	public void write(int v, IUnitChain unitChain) {
+		Varint.INST.write(encode(v), unitChain);
+	}
+
+	@Override
+	public int get(IUnitChain unitChain, int index) {
+		return decode(Varint.INST.get(unitChain, index));
+	}
+
+	@Override
+	public void set(int v, IUnitChain unitChain, int index) {
+		Varint.INST.set(encode(v), unitChain, index);
+	}
+
+	@Override
+	public void prepend(int v, IUnitChain unitChain) {
+		Varint.INST.prepend(encode(v), unitChain);
+	}
+}
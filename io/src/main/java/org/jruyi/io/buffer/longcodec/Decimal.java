@@ -0,0 +1,309 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.buffer.longcodec;
+
+import java.nio.BufferUnderflowException;
+
+import org.jruyi.io.ILongCodec;
+import org.jruyi.io.IUnit;
+import org.jruyi.io.IUnitChain;
+import org.jruyi.io.buffer.Util;
+
+/**
+ * Codec of longs as decimal ASCII text, such as {@code -12345}. With a
+ * {@link #scale(int) scale}, a long is the unscaled value of a fixed-point
+ * decimal, so {@code -12345} of scale 2 is {@code -123.45}.
+ * <p>
+ * The digits are formatted straight into the units and parsed straight from
+ * them. Parsing takes an optional {@code '-'} followed by digits, and with a
+ * scale, an optional {@code '.'} followed by up to {@code scale} digits. It
+ * stops before the first byte that does not fit, or at the end of the buffer.
+ * A {@link BufferUnderflowException} is thrown if the buffer ends before any
+ * digit. A {@link NumberFormatException} is thrown if there is no digit, if there
+ * are more fraction digits than the scale, or if the value overflows.
+ * <p>
+ * {@code set} overwrites the bytes at the given index, which must not run
+ * over the end of the buffer.
+ */
+public final class Decimal implements ILongCodec {
+
+	public static final ILongCodec INST;
+
+	private static final int MAX_SCALE = 18;
+	private static final long[] POW10;
+	private static final Decimal[] c_codecs;
+
+	private final int m_scale;
+
+	static {
+		final long[] pow10 = new long[MAX_SCALE + 1];
+		pow10[0] = 1L;
+		for (int i = 1; i < pow10.length; ++i)
+			pow10[i] = pow10[i - 1] * 10L;
+		POW10 = pow10;
+
+		final Decimal[] codecs = new Decimal[MAX_SCALE + 1];
+		for (int i = 0; i < codecs.length; ++i)
+			codecs[i] = new Decimal(i);
+		c_codecs = codecs;
+		INST = codecs[0];
+	}
+
+	private Decimal(int scale) {
+		m_scale = scale;
+	}
+
+	/**
+	 * Returns the codec of fixed-point decimals with the given number of
+	 * fraction digits.
+	 *
+	 * @param scale
+	 *            the number of fraction digits, from 0 to 18
+	 * @return the codec
+	 */
+	public static ILongCodec scale(int scale) {
+		if (scale < 0 || scale > MAX_SCALE)
+			throw new IllegalArgumentException();
+		return c_codecs[scale];
+	}
+
+	@Override
+	public long read(IUnitChain unitChain) {
+		return parse(unitChain, 0, true);
+	}
+
+	@Override
+	public long get(IUnitChain unitChain, int index) {
+		if (index < 0)
+			throw new IndexOutOfBoundsException();
+		return parse(unitChain, index, false);
+	}
+
+	@Override
+	public void write(long l, IUnitChain unitChain) {
+		final long neg = l < 0L ? l : -l;
+		final int digits = digits(neg);
+		final int n = length(l, digits);
+		IUnit unit = Util.lastUnit(unitChain);
+		int size = unit.size();
+		if (unit.available() >= n) {
+			fill(neg, l < 0L, unit, unit.start() + size + n);
+			unit.size(size + n);
+			return;
+		}
+
+		for (int k = 0; k < n; ++k) {
+			if (unit.available() < 1) {
+				unit = Util.appendNewUnit(unitChain);
+				size = unit.size();
+			}
+			unit.set(unit.start() + size, byteAt(k, neg, l < 0L, digits));
+			unit.size(++size);
+		}
+	}
+
+	@Override
+	public void set(long l, IUnitChain unitChain, int index) {
+		if (index < 0)
+			throw new IndexOutOfBoundsException();
+
+		final long neg = l < 0L ? l : -l;
+		final int digits = digits(neg);
+		final int n = length(l, digits);
+		IUnit unit = unitChain.currentUnit();
+		int start = unit.start();
+		index += start;
+		int end = start + unit.size();
+		for (int k = 0; k < n;) {
+			if (index < end) {
+				unit.set(index++, byteAt(k++, neg, l < 0L, digits));
+			} else {
+				unit = unitChain.nextUnit();
+				if (unit == null)
+					throw new IndexOutOfBoundsException();
+				index = unit.start();
+				end = index + unit.size();
+			}
+		}
+	}
+
+	@Override
+	public void prepend(long l, IUnitChain unitChain) {
+		final long neg = l < 0L ? l : -l;
+		final int digits = digits(neg);
+		int n = length(l, digits);
+		IUnit unit = Util.firstUnit(unitChain);
+		int start = unit.start();
+		if (start >= n) {
+			fill(neg, l < 0L, unit, start);
+			unit.start(start - n);
+			unit.size(unit.size() + n);
+			return;
+		}
+
+		while (n > 0) {
+			if (start < 1) {
+				unit = Util.prependNewUnit(unitChain);
+				start = unit.start();
+			}
+			unit.set(--start, byteAt(--n, neg, l < 0L, digits));
+			unit.start(start);
+			unit.size(unit.size() + 1);
+		}
+	}
+
+	/**
+	 * Returns the number of digits to format the given non-positive value
+	 * with, at least {@code scale + 1}.
+	 */
+	private int digits(long neg) {
+		int n = 1;
+		while (n < POW10.length && neg <= -POW10[n])
+			++n;
+		return n > m_scale ? n : m_scale + 1;
+	}
+
+	private int length(long l, int digits) {
+		int n = digits;
+		if (l < 0L)
+			++n;
+		if (m_scale > 0)
+			++n;
+		return n;
+	}
+
+	/**
+	 * Formats the given non-positive value right to left, ending before the
+	 * given absolute index of the given unit.
+	 */
+	private void fill(long neg, boolean negative, IUnit unit, int index) {
+		final int scale = m_scale;
+		if (scale > 0) {
+			for (int k = 0; k < scale; ++k) {
+				unit.set(--index, (byte) ('0' - neg % 10L));
+				neg /= 10L;
+			}
+			unit.set(--index, (byte) '.');
+		}
+		do {
+			unit.set(--index, (byte) ('0' - neg % 10L));
+			neg /= 10L;
+		} while (neg != 0L);
+		if (negative)
+			unit.set(--index, (byte) '-');
+	}
+
+	/**
+	 * Returns the {@code k}-th byte, from the left, of the formatted value.
+	 */
+	private byte byteAt(int k, long neg, boolean negative, int digits) {
+		if (negative) {
+			if (k == 0)
+				return '-';
+			--k;
+		}
+
+		final int scale = m_scale;
+		if (scale > 0) {
+			final int intDigits = digits - scale;
+			if (k == intDigits)
+				return '.';
+			if (k > intDigits)
+				--k;
+		}
+
+		return (byte) ('0' - (neg / POW10[digits - 1 - k]) % 10L);
+	}
+
+	private long parse(IUnitChain unitChain, int index, boolean read) {
+		IUnit unit = unitChain.currentUnit();
+		int start = unit.start();
+		int i = start + (read ? unit.position() : index);
+		int end = start + unit.size();
+
+		final int scale = m_scale;
+		boolean negative = false;
+		long limit = -Long.MAX_VALUE;
+		long acc = 0L;
+		int digits = 0;
+		// the number of fraction digits, -1 before '.'
+		int fraction = -1;
+		boolean first = true;
+		boolean underflow = false;
+		for (;;) {
+			if (i >= end) {
+				final IUnit next = unitChain.nextUnit();
+				if (next == null) {
+					underflow = true;
+					break;
+				}
+				if (read)
+					unit.position(unit.size());
+				unit = next;
+				start = unit.start();
+				i = start + (read ? unit.position() : 0);
+				end = start + unit.size();
+				continue;
+			}
+
+			final int b = unit.byteAt(i);
+			if (b >= '0' && b <= '9') {
+				if (fraction >= 0) {
+					if (fraction == scale)
+						throw new NumberFormatException("Too many fraction digits");
+					++fraction;
+				}
+				acc = shift(acc, b - '0', limit);
+				++digits;
+			} else if (b == '-' && first) {
+				negative = true;
+				limit = Long.MIN_VALUE;
+			} else if (b == '.' && scale > 0 && fraction < 0 && digits > 0)
+				fraction = 0;
+			else
+				break;
+
+			first = false;
+			++i;
+		}
+
+		if (read)
+			unit.position(i - start);
+
+		if (digits < 1) {
+			if (underflow)
+				throw new BufferUnderflowException();
+			throw new NumberFormatException("No digit");
+		}
+
+		for (int k = fraction < 0 ? 0 : fraction; k < scale; ++k)
+			acc = shift(acc, 0, limit);
+
+		return negative ? acc : -acc;
+	}
+
+	/**
+	 * Returns {@code acc * 10 - digit} with {@code acc} and the result being
+	 * non-positive and not less than {@code limit}.
+	 */
+	private static long shift(long acc, int digit, long limit) {
+		if (acc < limit / 10L)
+			throw new NumberFormatException("Value out of range");
+		acc *= 10L;
+		if (acc < limit + digit)
+			throw new NumberFormatException("Value out of range");
+		return acc - digit;
+	}
+}
@@ -0,0 +1,65 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jruyi.io.buffer.longcodec;
+
+import org.jruyi.io.ILongCodec;
+import org.jruyi.io.IUnitChain;
+
+/**
+ * Encodes signed longs as ZigZag varints, as the sint64 type of Protocol
+ * Buffers does, so that values of small magnitude take few bytes regardless
+ * of the sign.
+ */
+public final class ZigZag implements ILongCodec {
+
+	public static final ILongCodec INST = new ZigZag();
+
+	private ZigZag() {
+	}
+
+	private static long encode(long v) {
+		return (v << 1) ^ (v >> 63);
+	}
+
+	private static long decode(long v) {
+		return (v >>> 1) ^ -(v & 1);
+	}
+
+	@Override
+	public long read(IUnitChain unitChain) {
+		return decode(Varint.INST.read(unitChain));
+	}
+
+	@Override
+	public void write(long v, IUnitChain unitChain) {
+		Varint.INST.write(encode(v), unitChain);
+	}
+
+	@Override
+	public long get(IUnitChain unitChain, int index) {
+		return decode(Varint.INST.get(unitChain, index));
+	}
+
+	@Override
+	public void set(long v, IUnitChain unitChain, int index) {
+		Varint.INST.set(encode(v), unitChain, index);
+	}
+
+	@Override
+	public void prepend(long v, IUnitChain unitChain) {
+		Varint.INST.prepend(encode(v), unitChain);
+	}
+}
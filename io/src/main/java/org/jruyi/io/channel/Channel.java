@@ -14,7 +14,11 @@
 
 package org.jruyi.io.channel;
 
+import java.io.EOFException;
+import java.nio.channels.CancelledKeyException;
+import java.nio.channels.ClosedChannelException;
 import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.ScatteringByteChannel;
 import java.nio.channels.SelectableChannel;
 import java.nio.channels.SelectionKey;
 import java.nio.channels.WritableByteChannel;
@@ -29,9 +33,16 @@ import org.jruyi.common.StrUtil;
 import org.jruyi.common.StringBuilder;
 import org.jruyi.common.ThreadLocalCache;
 import org.jruyi.io.IBuffer;
+import org.jruyi.io.IBufferFactory;
 import org.jruyi.io.IFilter;
 import org.jruyi.io.IFilterOutput;
+import org.jruyi.io.ISession;
+import org.jruyi.io.buffer.Buffer;
+import org.jruyi.io.buffer.BufferFactory;
+import org.jruyi.io.buffer.IBudgetListener;
 import org.jruyi.io.common.LinkedQueue;
+import org.jruyi.io.file.FileRegion;
+import org.jruyi.io.file.FileSink;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -50,6 +61,8 @@ public abstract class Channel implements IChannel, IDumpable {
 	private Timer m_timer;
 	private int m_connectTimeout;
 	private WriteThread m_writeThread;
+	private FileSink m_sink;
+	private ReadSizer.Predictor m_readSize;
 
 	static final class MsgArrayList implements ICloseable, IFilterOutput {
 
@@ -122,13 +135,7 @@ public abstract class Channel implements IChannel, IDumpable {
 			for (int i = 0; i < size; ++i) {
 				final Object msg = msgs[i];
 				if (msg != null) {
-					if (msg instanceof AutoCloseable) {
-						try {
-							((AutoCloseable) msg).close();
-						} catch (Throwable t) {
-							c_logger.error(StrUtil.join("Failed to close message: ", msg), t);
-						}
-					}
+					closeMsg(msg);
 					msgs[i] = null;
 				}
 			}
@@ -250,9 +257,11 @@ public abstract class Channel implements IChannel, IDumpable {
 		private final Channel m_channel;
 		private final LinkedQueue<OutMsg> m_queue;
 
-		private IBuffer m_data;
+		// IBuffer or FileRegion
+		private Object m_data;
 		private Object m_originalMsg;
 		private int m_indexOfMore = -1;
+		private boolean m_discarded;
 
 		WriteThread(Channel channel) {
 			m_channel = channel;
@@ -266,7 +275,11 @@ public abstract class Channel implements IChannel, IDumpable {
 				channel.onCloseInternal();
 				return;
 			}
-			IBuffer data = m_data;
+			if (m_discarded) {
+				discard(msg, filters);
+				return;
+			}
+			Object data = m_data;
 			if (data != null) {
 				if (msg != null)
 					m_queue.put(OutMsg.get(msg, filters, filterCount));
@@ -308,7 +321,7 @@ public abstract class Channel implements IChannel, IDumpable {
 
 		void writeBackward(Object msg, IFilter<?, ?>[] filters, int filterCount) {
 			final Channel channel = m_channel;
-			IBuffer data = m_data;
+			Object data = m_data;
 			if (data != null)
 				m_queue.put(OutMsg.get(msg, filters, filterCount));
 			else {
@@ -328,7 +341,7 @@ public abstract class Channel implements IChannel, IDumpable {
 			write(data, channel, false);
 		}
 
-		private void write(IBuffer data, Channel channel, boolean write_interested) {
+		private void write(Object data, Channel channel, boolean write_interested) {
 			final IChannelService<Object, Object> cs = channel.channelService();
 			final WritableByteChannel wbc = channel.writableByteChannel();
 			while (data != null) {
@@ -336,8 +349,7 @@ public abstract class Channel implements IChannel, IDumpable {
 				final IFilter<?, ?>[] filters;
 				final int filterCount;
 				try {
-					data.writeOut(wbc);
-					if (!data.isEmpty()) {
+					if (!writeOut(data, wbc)) {
 						m_data = data;
 						if (!write_interested)
 							channel.interestOps(channel.interestOps() | SelectionKey.OP_WRITE);
@@ -388,19 +400,55 @@ public abstract class Channel implements IChannel, IDumpable {
 				channel.interestOps(channel.interestOps() & ~SelectionKey.OP_WRITE);
 		}
 
-		private void clear(IBuffer data) {
+		// Returns true if all the data is written out
+		private static boolean writeOut(Object data, WritableByteChannel wbc) throws Exception {
+			if (data instanceof FileRegion) {
+				final FileRegion region = (FileRegion) data;
+				region.transferTo(wbc);
+				return region.isEmpty();
+			}
+
+			final IBuffer buffer = (IBuffer) data;
+			buffer.writeOut(wbc);
+			return buffer.isEmpty();
+		}
+
+		private void clear(Object data) {
 			m_data = null;
-			data.close();
+			((ICloseable) data).close();
+		}
+
+		// Closes the data partly written out and all the queued messages, so
+		// that neither buffers nor file channels are left behind on close.
+		private void discard() {
+			m_discarded = true;
+			m_originalMsg = null;
+			m_indexOfMore = -1;
+			final Object data = m_data;
+			if (data != null)
+				clear(data);
+
+			OutMsg outMsg;
+			while ((outMsg = m_queue.poll()) != null) {
+				discard(outMsg.msg(), outMsg.filters());
+				outMsg.close();
+			}
+		}
+
+		private static void discard(Object msg, IFilter<?, ?>[] filters) {
+			// msg encoded once is shared among sessions, only the data is owned
+			if (filters != null && filters.length == 1 && filters[0] instanceof EncodedData)
+				((EncodedData) filters[0]).discard();
+			else
+				closeMsg(msg);
 		}
 
-		private IBuffer filter(Object msg, IFilter<?, Object>[] filters, int index, Channel channel) {
+		private Object filter(Object msg, IFilter<?, Object>[] filters, int index, Channel channel) {
 			if (index < 1) {
-				try {
-					return (IBuffer) msg;
-				} catch (ClassCastException e) {
-					throw new RuntimeException(
-							StrUtil.join("Departure data has to be of type", IBuffer.class.getName()));
-				}
+				if (msg instanceof IBuffer || msg instanceof FileRegion)
+					return msg;
+				throw new RuntimeException(StrUtil.join("Departure data has to be of type ", IBuffer.class.getName(),
+						" or ", FileRegion.class.getName()));
 			}
 
 			int indexOfMore = m_indexOfMore;
@@ -440,19 +488,7 @@ public abstract class Channel implements IChannel, IDumpable {
 				if (n < 1)
 					return null;
 
-				try {
-					int i = 0;
-					final IBuffer data = (IBuffer) outMsgs.take(i);
-					while (++i < n) {
-						try (IBuffer buf = (IBuffer) outMsgs.take(i)) {
-							buf.drainTo(data);
-						}
-					}
-					return data;
-				} catch (ClassCastException e) {
-					throw new RuntimeException(StrUtil.join(filters[0], "has to produce departure data of type ",
-							IBuffer.class.getName()));
-				}
+				return merge(outMsgs, n, filters[0]);
 			} finally {
 				inMsgs.close();
 				outMsgs.close();
@@ -460,6 +496,49 @@ public abstract class Channel implements IChannel, IDumpable {
 		}
 	}
 
+	static final class EncodedData implements IFilter<Object, Object> {
+
+		private IBuffer m_data;
+
+		EncodedData(IBuffer data) {
+			m_data = data;
+		}
+
+		@Override
+		public int msgMinSize() {
+			return 0;
+		}
+
+		@Override
+		public int tellBoundary(ISession session, IBuffer in) {
+			return in.remaining();
+		}
+
+		@Override
+		public boolean onMsgArrive(ISession session, Object msg, IFilterOutput output) {
+			output.add(msg);
+			return true;
+		}
+
+		void discard() {
+			final IBuffer data = m_data;
+			if (data != null) {
+				m_data = null;
+				data.close();
+			}
+		}
+
+		// Ignores msg, which is shared among sessions, and outputs the data
+		// encoded from it.
+		@Override
+		public boolean onMsgDepart(ISession session, Object msg, IFilterOutput output) {
+			final IBuffer data = m_data;
+			m_data = null;
+			output.add(data);
+			return true;
+		}
+	}
+
 	static final class IdleTimeoutListener implements ITimerListener {
 
 		static final ITimerListener INST = new IdleTimeoutListener();
@@ -505,6 +584,84 @@ public abstract class Channel implements IChannel, IDumpable {
 		}
 	}
 
+	/**
+	 * Resumes reading on the I/O thread of the channel once the buffer factory
+	 * drops back under its memory budget. As the usage may also drop without
+	 * any unit being returned to the factory, for example when a leaked
+	 * buffer is collected, the budget is rechecked every second until reading
+	 * resumes.
+	 */
+	static final class ReadResumer implements IBudgetListener, IIoTask, ITimerListener {
+
+		// in seconds
+		private static final int RECHECK_INTERVAL = 1;
+
+		private final Channel m_channel;
+		private final BufferFactory m_bf;
+		private Timer m_timer;
+		private boolean m_resumed;
+
+		ReadResumer(Channel channel, BufferFactory bf) {
+			m_channel = channel;
+			m_bf = bf;
+		}
+
+		void await() {
+			final BufferFactory bf = m_bf;
+			bf.awaitBudget(this);
+			// no recheck if already resumed, or to be by the queued event
+			if (!m_resumed && bf.isOverBudget())
+				scheduleRecheck();
+		}
+
+		@Override
+		public void onBudgetAvailable() {
+			m_channel.m_selector.write(new IoEvent(this, null));
+		}
+
+		@Override
+		public void onTimeout(Object subject) {
+			m_timer = null;
+			if (m_resumed || m_channel.isClosed())
+				return;
+
+			if (m_bf.isOverBudget())
+				scheduleRecheck();
+			else
+				resume();
+		}
+
+		@Override
+		public void run(Object msg, IFilter<?, ?>[] filters, int filterCount) {
+			final Timer timer = m_timer;
+			if (timer != null) {
+				m_timer = null;
+				timer.cancel();
+			}
+			if (!m_resumed)
+				resume();
+		}
+
+		private void scheduleRecheck() {
+			final Timer timer = m_channel.m_selector.createTimer(m_channel);
+			timer.listener(this);
+			timer.schedule(RECHECK_INTERVAL);
+			m_timer = timer;
+		}
+
+		private void resume() {
+			m_resumed = true;
+			final Channel channel = m_channel;
+			if (channel.isClosed())
+				return;
+			try {
+				channel.interestOps(channel.interestOps() | SelectionKey.OP_READ);
+			} catch (CancelledKeyException e) {
+				// the channel is being closed
+			}
+		}
+	}
+
 	protected Channel(IChannelService<Object, Object> channelService) {
 		final Long id = channelService.generateId();
 		m_id = id;
@@ -579,17 +736,99 @@ public abstract class Channel implements IChannel, IDumpable {
 
 	@Override
 	public final void write(Object msg) {
-		try {
-			if (msg == null || isClosed())
-				return;
+		if (msg == null)
+			return;
 
+		if (isClosed()) {
+			closeMsg(msg);
+			return;
+		}
+
+		try {
 			final IFilter<?, ?>[] filters = channelService().getFilterChain().filters();
 			m_selector.write(new IoEvent(m_writeThread, msg, filters, filters.length));
 		} catch (Throwable t) {
+			closeMsg(msg);
+			onException(t);
+		}
+	}
+
+	@Override
+	public final void write(Object msg, IBuffer data) {
+		try {
+			if (msg == null || isClosed()) {
+				data.close();
+				return;
+			}
+
+			m_selector.write(new IoEvent(m_writeThread, msg, new IFilter<?, ?>[] { new EncodedData(data) }, 1));
+		} catch (Throwable t) {
+			data.close();
 			onException(t);
 		}
 	}
 
+	/**
+	 * Runs the given message through the departure path of the given filters
+	 * once and returns the encoded data, or {@code null} if the filters
+	 * swallowed the message. Only filters whose output does not depend on the
+	 * session can be used this way.
+	 *
+	 * @param session
+	 *            the session passed to the filters
+	 * @param msg
+	 *            the message to encode
+	 * @param filters
+	 *            the filter chain
+	 * @return the encoded data, or {@code null}
+	 */
+	public static IBuffer encode(ISession session, Object msg, IFilter<?, ?>[] filters) {
+		int index = filters.length;
+		if (index < 1) {
+			try {
+				return (IBuffer) msg;
+			} catch (ClassCastException e) {
+				throw new RuntimeException(StrUtil.join("Departure data has to be of type", IBuffer.class.getName()));
+			}
+		}
+
+		@SuppressWarnings("unchecked")
+		final IFilter<?, Object>[] filterChain = (IFilter<?, Object>[]) filters;
+		MsgArrayList inMsgs = MsgArrayList.get();
+		MsgArrayList outMsgs = MsgArrayList.get();
+		try {
+			outMsgs.add(msg);
+			int n = outMsgs.size();
+			do {
+				final MsgArrayList temp = inMsgs;
+				inMsgs = outMsgs;
+				outMsgs = temp;
+				final IFilter<?, Object> filter = filterChain[--index];
+				for (int i = 0; i < n; ++i) {
+					if (!filter.onMsgDepart(session, inMsgs.take(i), outMsgs))
+						return null;
+				}
+
+				inMsgs.size(0);
+				n = outMsgs.size();
+			} while (index > 0 && n > 0);
+
+			if (n < 1)
+				return null;
+
+			final Object data = merge(outMsgs, n, filters[0]);
+			if (data instanceof IBuffer)
+				return (IBuffer) data;
+
+			((ICloseable) data).close();
+			throw new RuntimeException(StrUtil.join(filters[0], "has to produce departure data of type ",
+					IBuffer.class.getName(), " to be encoded"));
+		} finally {
+			inMsgs.close();
+			outMsgs.close();
+		}
+	}
+
 	@Override
 	public final void close() {
 		if (!m_closed.compareAndSet(false, true))
@@ -808,18 +1047,51 @@ public abstract class Channel implements IChannel, IDumpable {
 		onConnectInternal(false);
 	}
 
+	@Override
+	public final void sink(FileSink sink) {
+		if (m_sink != null)
+			throw new IllegalStateException(StrUtil.join(this, " is already sinking to ", m_sink));
+		m_sink = sink;
+	}
+
 	@Override
 	public final void onRead() {
+		if (m_sink != null) {
+			sinkIn();
+			return;
+		}
+
 		final IChannelService<Object, Object> cs = channelService();
-		final IBuffer in = cs.getBufferFactory().create();
+		final IBufferFactory bf = cs.getBufferFactory();
+		if (bf instanceof BufferFactory && ((BufferFactory) bf).isOverBudget()) {
+			// stop reading until the memory in use drops to the low watermark
+			interestOps(interestOps() & ~SelectionKey.OP_READ);
+			new ReadResumer(this, (BufferFactory) bf).await();
+			return;
+		}
+
+		final ReadSizer readSizer = cs.readSizer();
+		final IBuffer in;
+		if (readSizer != null) {
+			ReadSizer.Predictor readSize = m_readSize;
+			if (readSize == null) {
+				readSize = ReadSizer.predictor();
+				m_readSize = readSize;
+			}
+			in = ReadSizer.create(bf, readSize);
+		} else
+			in = bf.create();
 		final ReadableByteChannel rbc = readableByteChannel();
 		final long throttle = cs.throttle();
+		// once a read fills up its unit, the following reads scatter
+		final boolean scatter = in instanceof Buffer && rbc instanceof ScatteringByteChannel;
 		long length = 0L;
-		int n;
+		long n;
 		try {
 			for (;;) {
-				n = in.readIn(rbc);
-				if (n > 0) {
+				n = scatter ? ((Buffer) in).readIn((ScatteringByteChannel) rbc, throttle - length)
+						: in.readIn(rbc);
+				if (n > 0L) {
 					length += n;
 					if (length > throttle)
 						break;
@@ -837,11 +1109,14 @@ public abstract class Channel implements IChannel, IDumpable {
 			return;
 		}
 
+		if (readSizer != null)
+			readSizer.record(m_readSize, length);
+
 		try {
-			if (n < 0) {
+			if (n < 0L) {
 				close();
 				onReadIn(in);
-			} else if (!onReadIn(in))
+			} else if (!onReadIn(in) || !drainToSink())
 				close();
 		} catch (Throwable t) {
 			onException(t);
@@ -870,7 +1145,7 @@ public abstract class Channel implements IChannel, IDumpable {
 	@Override
 	public final void receive(IBuffer in) {
 		try {
-			if (onReadIn(in)) {
+			if (onReadIn(in) && drainToSink()) {
 				selectableChannel().register(m_selector.selector(), SelectionKey.OP_READ);
 				return;
 			}
@@ -880,6 +1155,122 @@ public abstract class Channel implements IChannel, IDumpable {
 		}
 	}
 
+	private void sinkIn() {
+		final FileSink sink = m_sink;
+		final ReadableByteChannel rbc = readableByteChannel();
+		final long throttle = channelService().throttle();
+		long length = 0L;
+		try {
+			for (;;) {
+				long n = sink.transferFrom(rbc);
+				if (n < 1L) {
+					// transferFrom cannot tell EOF from no data, but read can
+					n = sink.readIn(rbc);
+					if (n < 0L) {
+						m_sink = null;
+						onSinkFailed(sink, new EOFException(StrUtil.join("EOF before ", sink, " completes")));
+						close();
+						return;
+					}
+					if (n < 1L)
+						return;
+				}
+				if (sink.isEmpty())
+					break;
+				length += n;
+				if (length > throttle)
+					return;
+			}
+		} catch (Throwable t) {
+			m_sink = null;
+			onSinkFailed(sink, t);
+			if (!isClosed())
+				onException(t);
+			return;
+		}
+
+		// The arrival bytes left in the socket, if any, will be read in when
+		// this channel is selected again.
+		m_sink = null;
+		try {
+			sink.listener().onSinkCompleted(this, sink);
+		} catch (Throwable t) {
+			onException(t);
+		}
+	}
+
+	private void onSinkFailed(FileSink sink, Throwable cause) {
+		try {
+			sink.listener().onSinkFailed(this, sink, cause);
+		} catch (Throwable t) {
+			c_logger.error(StrUtil.join(this, " failed to notify the failure of ", sink), t);
+		}
+	}
+
+	// Moves the bytes read in but not delimited by the first filter to the
+	// sink if any. If returns false, this channel need be closed.
+	private boolean drainToSink() throws Exception {
+		FileSink sink;
+		while ((sink = m_sink) != null) {
+			final IFilter<?, ?>[] filters = m_channelService.getFilterChain().filters();
+			if (filters.length < 1)
+				return true;
+
+			final IFilter<?, ?> filter = filters[0];
+			final FilterContext context = (FilterContext) withdraw(filter);
+			if (context == null)
+				return true;
+
+			final IBuffer data = context.data();
+			context.close();
+			if (data == null)
+				return true;
+
+			final IBuffer rest;
+			try {
+				rest = sink.write(data);
+			} catch (Throwable t) {
+				m_sink = null;
+				onSinkFailed(sink, t);
+				throw t;
+			}
+			if (!sink.isEmpty())
+				return true;
+
+			m_sink = null;
+			sink.listener().onSinkCompleted(this, sink);
+			if (rest != null && !onReadIn(rest))
+				return false;
+		}
+		return true;
+	}
+
+	// Returns the merged IBuffer, or the FileRegion if it is the only output
+	private static Object merge(MsgArrayList outMsgs, int n, IFilter<?, ?> firstFilter) {
+		int i = 0;
+		final Object first = outMsgs.take(i);
+		if (first instanceof FileRegion) {
+			if (n == 1)
+				return first;
+			((FileRegion) first).close();
+			throw new RuntimeException(StrUtil.join(firstFilter, "has to produce a ", FileRegion.class.getName(),
+					" as the only departure data"));
+		}
+
+		try {
+			final IBuffer data = (IBuffer) first;
+			while (++i < n) {
+				try (IBuffer buf = (IBuffer) outMsgs.take(i)) {
+					buf.drainTo(data);
+				}
+			}
+			return data;
+		} catch (ClassCastException e) {
+			throw new RuntimeException(StrUtil.join(firstFilter, "has to produce departure data of type ",
+					IBuffer.class.getName()));
+		}
+	}
+
 	protected abstract SelectableChannel selectableChannel();
 
 	protected abstract void onAccepted() throws Exception;
@@ -938,7 +1329,27 @@ public abstract class Channel implements IChannel, IDumpable {
 		return true;
 	}
 
+	static void closeMsg(Object msg) {
+		if (msg instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) msg).close();
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join("Failed to close message: ", msg), t);
+			}
+		}
+	}
+
 	private void onCloseInternal() {
+		final WriteThread writeThread = m_writeThread;
+		if (writeThread != null)
+			writeThread.discard();
+
+		final FileSink sink = m_sink;
+		if (sink != null) {
+			m_sink = null;
+			onSinkFailed(sink, new ClosedChannelException());
+		}
+
 		try {
 			onClose();
 		} catch (Throwable t) {
@@ -954,6 +1365,34 @@ public abstract class Channel implements IChannel, IDumpable {
 		} catch (Throwable t) {
 			c_logger.error("Unexpected Error", t);
 		}
+
+		releaseStorage();
+	}
+
+	// Closes the partial messages held for the filters and the session
+	// resources deposited by them, such as the deflate streams of the session.
+	// Any other deposited object is left alone, as it may be shared.
+	private void releaseStorage() {
+		final IdentityHashMap<Object, Object> storage = m_storage;
+		if (storage == null)
+			return;
+
+		for (Object value : storage.values()) {
+			if (value instanceof FilterContext) {
+				final FilterContext context = (FilterContext) value;
+				final IBuffer data = context.data();
+				if (data != null)
+					data.close();
+				context.close();
+			} else if (value instanceof ISessionResource) {
+				try {
+					((ISessionResource) value).close();
+				} catch (Throwable t) {
+					c_logger.error(StrUtil.join(this, " failed to close session resource: ", value), t);
+				}
+			}
+		}
+		storage.clear();
 	}
 
 	@SuppressWarnings("resource")
@@ -981,6 +1420,19 @@ public abstract class Channel implements IChannel, IDumpable {
 		final int n = inMsgs.size();
 		final int msgMinSize = filter.msgMinSize();
 		for (;;) {
+			// Once a sink is set, the rest goes to the sink instead of being
+			// delimited.
+			if (k == 0 && m_sink != null) {
+				while (i < n) {
+					final IBuffer data = (IBuffer) inMsgs.take(i);
+					++i;
+					data.drainTo(in);
+					data.close();
+				}
+				msgLen = 0;
+				break;
+			}
+
 			final int inLen = in.length();
 			if (msgLen == 0 && inLen >= msgMinSize) {
 				msgLen = filter.tellBoundary(this, in);
@@ -16,6 +16,7 @@ package org.jruyi.io.channel;
 
 import org.jruyi.io.IBuffer;
 import org.jruyi.io.ISession;
+import org.jruyi.io.file.FileSink;
 
 public interface IChannel extends ISession, ISelectableChannel {
 
@@ -27,6 +28,34 @@ public interface IChannel extends ISession, ISelectableChannel {
 
 	void write(Object data);
 
+	/**
+	 * Writes the given {@code data}, which is {@code msg} already encoded
+	 * through the filter chain, to this channel without running the filters.
+	 * The session listener is notified with {@code msg}. The {@code data} is
+	 * closed after being written.
+	 *
+	 * @param msg
+	 *            the message encoded into {@code data}
+	 * @param data
+	 *            the encoded data to write
+	 */
+	void write(Object msg, IBuffer data);
+
+	/**
+	 * Moves the next arrival bytes of this channel into the file of the given
+	 * {@code sink}, bypassing the filter chain. The bytes already read but not
+	 * delimited by the first filter go to the file first.
+	 * <p>
+	 * This method has to be called on the I/O thread of this channel, which
+	 * means from {@code onMsgArrive} of a filter or from the
+	 * {@code onMessageReceived} callback. In the latter case, the message
+	 * received has to be the last one delimited by the first filter so far.
+	 *
+	 * @param sink
+	 *            the file region to fill
+	 */
+	void sink(FileSink sink);
+
 	boolean scheduleIdleTimeout(int timeout);
 
 	boolean scheduleConnectTimeout(int timeout);
@@ -29,6 +29,9 @@ public interface IChannelService<I, O> {
 
 	long throttle();
 
+	// Returns null if arrival data is read into units of the fixed capacity
+	ReadSizer readSizer();
+
 	IFilterList getFilterChain();
 
 	void onChannelOpened(IChannel channel);
@@ -0,0 +1,137 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.channel;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+import org.jruyi.common.StringBuilder;
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.IBufferFactory;
+import org.jruyi.io.buffer.BufferFactory;
+
+/**
+ * Predicts the capacity of the unit to read arrival data into for each channel
+ * of a channel service, from the sizes of the recent reads of the channel.
+ * <p>
+ * The capacity is a power of two. It doubles as soon as a read fills it up,
+ * and halves after two reads in a row that would have fit in half of it. So
+ * chatty channels read into small units, and bulk channels read more per
+ * system call.
+ */
+public final class ReadSizer {
+
+	static final int MIN_SHIFT = 6;
+	static final int MAX_SHIFT = 16;
+	static final int INITIAL_SHIFT = 11;
+
+	// the number of reads per unit capacity
+	private final AtomicLongArray m_reads = new AtomicLongArray(MAX_SHIFT - MIN_SHIFT + 1);
+	private final AtomicLong m_bytes = new AtomicLong();
+
+	static final class Predictor {
+
+		private int m_shift = INITIAL_SHIFT;
+		private boolean m_shrink;
+
+		int capacity() {
+			return 1 << m_shift;
+		}
+
+		void record(long bytes) {
+			final int shift = m_shift;
+			if (bytes >= (1 << shift)) {
+				if (shift < MAX_SHIFT)
+					m_shift = shift + 1;
+				m_shrink = false;
+			} else if (bytes <= (1 << (shift - 1))) {
+				if (m_shrink && shift > MIN_SHIFT) {
+					m_shift = shift - 1;
+					m_shrink = false;
+				} else
+					m_shrink = true;
+			} else
+				m_shrink = false;
+		}
+	}
+
+	/**
+	 * Returns the number of reads so far.
+	 *
+	 * @return the number of reads
+	 */
+	public long reads() {
+		final AtomicLongArray reads = m_reads;
+		long n = 0L;
+		for (int i = 0, len = reads.length(); i < len; ++i)
+			n += reads.get(i);
+		return n;
+	}
+
+	/**
+	 * Returns the number of bytes read so far.
+	 *
+	 * @return the number of bytes read
+	 */
+	public long bytes() {
+		return m_bytes.get();
+	}
+
+	/**
+	 * Returns the number of reads into units of the given capacity so far.
+	 *
+	 * @param capacity
+	 *            a power of two between 64 and 65536
+	 * @return the number of reads
+	 */
+	public long reads(int capacity) {
+		final int i = Integer.numberOfTrailingZeros(capacity) - MIN_SHIFT;
+		if (capacity != Integer.lowestOneBit(capacity) || i < 0 || i >= m_reads.length())
+			throw new IllegalArgumentException();
+		return m_reads.get(i);
+	}
+
+	/**
+	 * Returns the statistics of the reads: the total number of reads and bytes,
+	 * and the number of reads per unit capacity.
+	 */
+	@Override
+	public String toString() {
+		try (StringBuilder builder = StringBuilder.get()) {
+			builder.append("reads=").append(reads()).append(", bytes=").append(m_bytes.get());
+			final AtomicLongArray reads = m_reads;
+			for (int i = 0, n = reads.length(); i < n; ++i) {
+				final long count = reads.get(i);
+				if (count > 0L)
+					builder.append(", ").append(1 << (i + MIN_SHIFT)).append('=').append(count);
+			}
+			return builder.toString();
+		}
+	}
+
+	static Predictor predictor() {
+		return new Predictor();
+	}
+
+	static IBuffer create(IBufferFactory bf, Predictor predictor) {
+		return bf instanceof BufferFactory ? ((BufferFactory) bf).allocate(predictor.capacity()) : bf.create();
+	}
+
+	void record(Predictor predictor, long bytes) {
+		m_reads.incrementAndGet(predictor.m_shift - MIN_SHIFT);
+		m_bytes.addAndGet(bytes);
+		predictor.record(bytes);
+	}
+}
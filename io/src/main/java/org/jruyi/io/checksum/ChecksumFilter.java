@@ -0,0 +1,140 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.checksum;
+
+import java.util.Map;
+import java.util.zip.CRC32;
+import java.util.zip.Checksum;
+
+import org.jruyi.common.StrUtil;
+import org.jruyi.io.Codec;
+import org.jruyi.io.Filter;
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.IFilter;
+import org.jruyi.io.IFilterOutput;
+import org.jruyi.io.ISession;
+import org.jruyi.io.IntCodec;
+import org.jruyi.io.IoConstants;
+import org.jruyi.io.LongCodec;
+import org.jruyi.io.buffer.Buffer;
+import org.jruyi.io.hash.Crc32c;
+import org.jruyi.io.hash.XxHash64;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Appends a checksum trailer to each departing message and verifies and
+ * strips it from each arriving message. The trailer is the big-endian
+ * checksum of all the preceding bytes of the message: 4 bytes for CRC32 and
+ * CRC32C, 8 bytes for XXHASH64.
+ * <p>
+ * The messages are delimited by the filter before this one. A message whose
+ * checksum does not match fails the session.
+ */
+@Component(name = "jruyi.io.checksum.filter", //
+service = { IFilter.class }, //
+property = { IoConstants.FILTER_ID + "=" + "jruyi.io.checksum.filter" }, //
+xmlns = "http://www.osgi.org/xmlns/scr/v1.1.0")
+public final class ChecksumFilter extends Filter<IBuffer, IBuffer> {
+
+	public static final String ALGORITHM = "algorithm";
+
+	public static final String CRC32 = "CRC32";
+	public static final String CRC32C = "CRC32C";
+	public static final String XXHASH64 = "XXHASH64";
+
+	private static final Logger c_logger = LoggerFactory.getLogger(ChecksumFilter.class);
+
+	private String m_algorithm;
+	private int m_trailerLength;
+
+	@Override
+	public boolean onMsgArrive(ISession session, IBuffer msg, IFilterOutput output) {
+		final int n = m_trailerLength;
+		final int length = msg.length() - n;
+		if (length < 0) {
+			c_logger.error(StrUtil.join(session, "(remoteAddr=", session.remoteAddress(),
+					") message shorter than checksum trailer"));
+			msg.close();
+			return false;
+		}
+
+		final long expected = n == 8 ? msg.get(length, LongCodec.bigEndian())
+				: msg.get(length, IntCodec.bigEndian()) & 0xFFFFFFFFL;
+		if (checksum(msg, length) != expected) {
+			c_logger.error(StrUtil.join(session, "(remoteAddr=", session.remoteAddress(), ") ", m_algorithm,
+					" mismatch"));
+			msg.close();
+			return false;
+		}
+
+		msg.setLength(length);
+		output.add(msg);
+		return true;
+	}
+
+	@Override
+	public boolean onMsgDepart(ISession session, IBuffer msg, IFilterOutput output) {
+		final long value = checksum(msg, msg.length());
+		if (m_trailerLength == 8)
+			msg.write(value, LongCodec.bigEndian());
+		else
+			msg.write((int) value, IntCodec.bigEndian());
+		output.add(msg);
+		return true;
+	}
+
+	public void activate(Map<String, ?> properties) {
+		String v = (String) properties.get(ALGORITHM);
+		if (v == null || (v = v.trim()).isEmpty())
+			v = CRC32C;
+		else
+			v = v.toUpperCase();
+
+		if (v.equals(XXHASH64))
+			m_trailerLength = 8;
+		else if (v.equals(CRC32) || v.equals(CRC32C))
+			m_trailerLength = 4;
+		else
+			throw new IllegalArgumentException(StrUtil.join("Illegal algorithm: ", v));
+
+		m_algorithm = v;
+	}
+
+	public void deactivate() {
+		m_algorithm = null;
+	}
+
+	private long checksum(IBuffer msg, int length) {
+		final Checksum checksum = newChecksum();
+		if (msg instanceof Buffer)
+			((Buffer) msg).checksum(0, length, checksum);
+		else
+			checksum.update(msg.get(0, length, Codec.byteArray()), 0, length);
+		return checksum.getValue();
+	}
+
+	private Checksum newChecksum() {
+		switch (m_algorithm) {
+		case CRC32:
+			return new CRC32();
+		case XXHASH64:
+			return new XxHash64();
+		default:
+			return new Crc32c();
+		}
+	}
+}
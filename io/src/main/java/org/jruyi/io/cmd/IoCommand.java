@@ -18,7 +18,11 @@ import java.util.Collection;
 
 import org.jruyi.common.IService;
 import org.jruyi.common.StrUtil;
+import org.jruyi.io.IBufferFactory;
 import org.jruyi.io.IoConstants;
+import org.jruyi.io.buffer.BufferFactory;
+import org.jruyi.io.channel.IChannelService;
+import org.jruyi.io.channel.ReadSizer;
 import org.osgi.framework.BundleContext;
 import org.osgi.framework.ServiceReference;
 
@@ -31,7 +35,7 @@ public final class IoCommand {
 	}
 
 	public static String[] commands() {
-		return new String[] { "list", "start", "stop" };
+		return new String[] { "leaks", "list", "reads", "start", "stop", "usage" };
 	}
 
 	public void start(String serviceId) throws Exception {
@@ -141,6 +145,97 @@ public final class IoCommand {
 		}
 	}
 
+	public void leaks() throws Exception {
+		leaks(null);
+	}
+
+	public void leaks(String bufferId) throws Exception {
+		final BundleContext context = m_context;
+		final String filter = bufferId == null ? null
+				: StrUtil.join("(" + BufferFactory.BUFFER_ID + "=", bufferId, ")");
+		final Collection<ServiceReference<IBufferFactory>> references = context
+				.getServiceReferences(IBufferFactory.class, filter);
+		if (references.isEmpty()) {
+			if (bufferId != null) {
+				System.err.print("Buffer Factory Not Found: ");
+				System.err.println(bufferId);
+			}
+			return;
+		}
+
+		for (ServiceReference<IBufferFactory> reference : references) {
+			final IBufferFactory bf = context.getService(reference);
+			try {
+				if (bf instanceof BufferFactory)
+					System.out.println(((BufferFactory) bf).leakDetector().report());
+			} finally {
+				context.ungetService(reference);
+			}
+		}
+	}
+
+	public void usage() throws Exception {
+		usage(null);
+	}
+
+	public void usage(String bufferId) throws Exception {
+		final BundleContext context = m_context;
+		final String filter = bufferId == null ? null
+				: StrUtil.join("(" + BufferFactory.BUFFER_ID + "=", bufferId, ")");
+		final Collection<ServiceReference<IBufferFactory>> references = context
+				.getServiceReferences(IBufferFactory.class, filter);
+		if (references.isEmpty()) {
+			if (bufferId != null) {
+				System.err.print("Buffer Factory Not Found: ");
+				System.err.println(bufferId);
+			}
+			return;
+		}
+
+		for (ServiceReference<IBufferFactory> reference : references) {
+			final IBufferFactory bf = context.getService(reference);
+			try {
+				if (!(bf instanceof BufferFactory))
+					continue;
+				final BufferFactory factory = (BufferFactory) bf;
+				System.out.print(reference.getProperty(BufferFactory.BUFFER_ID));
+				System.out.print(": usage=");
+				System.out.print(factory.usage());
+				System.out.print(", footprint=");
+				System.out.print(factory.footprint());
+				System.out.print(", highWaterMark=");
+				System.out.print(factory.highWaterMark());
+				System.out.print(", memoryBudget=");
+				System.out.print(factory.memoryBudget());
+				System.out.print(", memoryLowWatermark=");
+				System.out.print(factory.memoryLowWatermark());
+				System.out.print(", overBudget=");
+				System.out.println(factory.isOverBudget());
+			} finally {
+				context.ungetService(reference);
+			}
+		}
+	}
+
+	public void reads(String serviceId) throws Exception {
+		final IService service = getService(serviceId);
+		if (service == null) {
+			System.err.print("IO Service Not Found: ");
+			System.err.println(serviceId);
+			return;
+		}
+
+		final ReadSizer readSizer = service instanceof IChannelService ? ((IChannelService<?, ?>) service)
+				.readSizer() : null;
+		if (readSizer == null) {
+			System.err.print("Adaptive Read Not Enabled: ");
+			System.err.println(serviceId);
+			return;
+		}
+
+		System.out.println(readSizer);
+	}
+
 	private static String state(int state) {
 		switch (state) {
 		case IService.ACTIVE:
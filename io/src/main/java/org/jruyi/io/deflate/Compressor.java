@@ -0,0 +1,141 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.deflate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.Deflater;
+
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.channel.ISessionResource;
+
+/**
+ * The deflate stream of the departing messages of a session. The bytes are fed
+ * from the units of the messages and deflated into the units of the output
+ * buffers directly, as a channel the buffers write out to and read in from.
+ * Staging chunks are only used for direct units.
+ */
+final class Compressor implements ReadableByteChannel, WritableByteChannel, ISessionResource {
+
+	private final Deflater m_deflater;
+	private final int m_chunkSize;
+	// staging chunks for direct units
+	private byte[] m_inChunk;
+	private byte[] m_outChunk;
+	private IBuffer m_out;
+	private int m_level;
+	private int m_flush;
+	private boolean m_filled;
+
+	Compressor(int level, boolean nowrap, int chunkSize) {
+		m_deflater = new Deflater(level, nowrap);
+		m_level = level;
+		m_chunkSize = chunkSize;
+	}
+
+	/**
+	 * Deflates the remaining bytes of {@code in} into {@code out} and flushes
+	 * them with the given flush mode.
+	 */
+	void compress(IBuffer in, IBuffer out, int level, int flush) throws IOException {
+		final Deflater deflater = m_deflater;
+		if (level != m_level) {
+			deflater.setLevel(level);
+			m_level = level;
+		}
+
+		m_out = out;
+		try {
+			m_flush = Deflater.NO_FLUSH;
+			while (!in.isEmpty())
+				in.writeOut(this);
+
+			m_flush = flush;
+			do {
+				out.readIn(this);
+			} while (m_filled);
+		} finally {
+			m_out = null;
+		}
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		final Deflater deflater = m_deflater;
+		final int n = src.remaining();
+		if (src.hasArray()) {
+			deflater.setInput(src.array(), src.arrayOffset() + src.position(), n);
+			drain();
+			src.position(src.limit());
+			return n;
+		}
+
+		byte[] chunk = m_inChunk;
+		if (chunk == null)
+			m_inChunk = chunk = new byte[m_chunkSize];
+		while (src.hasRemaining()) {
+			final int k = Math.min(src.remaining(), chunk.length);
+			src.get(chunk, 0, k);
+			deflater.setInput(chunk, 0, k);
+			drain();
+		}
+		return n;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		final Deflater deflater = m_deflater;
+		final int n;
+		final int length;
+		if (dst.hasArray()) {
+			length = dst.remaining();
+			n = deflater.deflate(dst.array(), dst.arrayOffset() + dst.position(), length, m_flush);
+			dst.position(dst.position() + n);
+		} else {
+			final byte[] chunk = outChunk();
+			length = Math.min(dst.remaining(), chunk.length);
+			n = deflater.deflate(chunk, 0, length, m_flush);
+			dst.put(chunk, 0, n);
+		}
+		m_filled = n == length;
+		return n;
+	}
+
+	@Override
+	public boolean isOpen() {
+		return true;
+	}
+
+	// ends the deflater to free its native memory
+	@Override
+	public void close() {
+		m_deflater.end();
+	}
+
+	private void drain() throws IOException {
+		final IBuffer out = m_out;
+		while (!m_deflater.needsInput())
+			out.readIn(this);
+	}
+
+	private byte[] outChunk() {
+		byte[] chunk = m_outChunk;
+		if (chunk == null)
+			m_outChunk = chunk = new byte[m_chunkSize];
+		return chunk;
+	}
+}
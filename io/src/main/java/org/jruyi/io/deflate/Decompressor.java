@@ -0,0 +1,131 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.deflate;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.channel.ISessionResource;
+
+/**
+ * The inflate stream of the arrival data of a session, the counterpart of
+ * {@link Compressor}.
+ */
+final class Decompressor implements ReadableByteChannel, WritableByteChannel, ISessionResource {
+
+	private final Inflater m_inflater;
+	private final int m_chunkSize;
+	// staging chunks for direct units
+	private byte[] m_inChunk;
+	private byte[] m_outChunk;
+	private IBuffer m_out;
+
+	Decompressor(boolean nowrap, int chunkSize) {
+		m_inflater = new Inflater(nowrap);
+		m_chunkSize = chunkSize;
+	}
+
+	/**
+	 * Inflates the remaining bytes of {@code in} into {@code out}.
+	 */
+	void decompress(IBuffer in, IBuffer out) throws IOException {
+		m_out = out;
+		try {
+			while (!in.isEmpty())
+				in.writeOut(this);
+		} finally {
+			m_out = null;
+		}
+	}
+
+	@Override
+	public int write(ByteBuffer src) throws IOException {
+		final Inflater inflater = m_inflater;
+		final int n = src.remaining();
+		if (src.hasArray()) {
+			inflater.setInput(src.array(), src.arrayOffset() + src.position(), n);
+			drain();
+			src.position(src.limit());
+			return n;
+		}
+
+		byte[] chunk = m_inChunk;
+		if (chunk == null)
+			m_inChunk = chunk = new byte[m_chunkSize];
+		while (src.hasRemaining()) {
+			final int k = Math.min(src.remaining(), chunk.length);
+			src.get(chunk, 0, k);
+			inflater.setInput(chunk, 0, k);
+			drain();
+		}
+		return n;
+	}
+
+	@Override
+	public int read(ByteBuffer dst) throws IOException {
+		final Inflater inflater = m_inflater;
+		try {
+			final int n;
+			if (dst.hasArray()) {
+				n = inflater.inflate(dst.array(), dst.arrayOffset() + dst.position(), dst.remaining());
+				dst.position(dst.position() + n);
+			} else {
+				final byte[] chunk = outChunk();
+				n = inflater.inflate(chunk, 0, Math.min(dst.remaining(), chunk.length));
+				dst.put(chunk, 0, n);
+			}
+			return n;
+		} catch (DataFormatException e) {
+			throw new ZipException(e.getMessage());
+		}
+	}
+
+	@Override
+	public boolean isOpen() {
+		return true;
+	}
+
+	// ends the inflater to free its native memory
+	@Override
+	public void close() {
+		m_inflater.end();
+	}
+
+	private void drain() throws IOException {
+		final Inflater inflater = m_inflater;
+		final IBuffer out = m_out;
+		while (out.readIn(this) > 0)
+			;
+
+		if (!inflater.needsInput()) {
+			if (inflater.needsDictionary())
+				throw new ZipException("Preset dictionary not supported");
+			throw new ZipException("Data after the end of the deflate stream");
+		}
+	}
+
+	private byte[] outChunk() {
+		byte[] chunk = m_outChunk;
+		if (chunk == null)
+			m_outChunk = chunk = new byte[m_chunkSize];
+		return chunk;
+	}
+}
@@ -0,0 +1,160 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.deflate;
+
+import java.util.Map;
+import java.util.zip.Deflater;
+
+import org.jruyi.common.StrUtil;
+import org.jruyi.io.Filter;
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.IFilter;
+import org.jruyi.io.IFilterOutput;
+import org.jruyi.io.ISession;
+import org.jruyi.io.IoConstants;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Compresses the departing data and decompresses the arrival data of each
+ * session as a deflate stream. It is meant to be the filter closest to the
+ * network, with the filters delimiting the messages after it.
+ * <p>
+ * Each session has a deflate stream per direction, so the messages of a
+ * session are compressed against the history of the previous ones. Each
+ * departing message is flushed on its own, by {@code SYNC_FLUSH} by default,
+ * or by {@code FULL_FLUSH} if so configured or requested for the message by
+ * {@link #fullFlush(ISession)}, which lets the peer restart decompression from
+ * it. Messages smaller than {@code minSize} are stored rather than
+ * compressed. The deflate streams of a session are ended when it is closed.
+ */
+@Component(name = "jruyi.io.deflate.filter", //
+service = { IFilter.class }, //
+property = { IoConstants.FILTER_ID + "=" + "jruyi.io.deflate.filter" }, //
+xmlns = "http://www.osgi.org/xmlns/scr/v1.1.0")
+public final class DeflateFilter extends Filter<IBuffer, IBuffer> {
+
+	public static final String LEVEL = "level";
+	public static final String NOWRAP = "nowrap";
+	public static final String MIN_SIZE = "minSize";
+	public static final String FLUSH = "flush";
+
+	public static final String FLUSH_SYNC = "SYNC";
+	public static final String FLUSH_FULL = "FULL";
+
+	private static final Logger c_logger = LoggerFactory.getLogger(DeflateFilter.class);
+
+	private static final Object COMPRESSOR = new Object();
+	private static final Object DECOMPRESSOR = new Object();
+	private static final Object FULL_FLUSH = new Object();
+
+	private static final int CHUNK_SIZE = 8 * 1024;
+
+	private int m_level;
+	private boolean m_nowrap;
+	private int m_minSize;
+	private int m_flush;
+
+	/**
+	 * Requests the next departing message of the given session to be flushed
+	 * by {@code FULL_FLUSH}, so that the peer can start decompressing from the
+	 * message after it without the history before.
+	 *
+	 * @param session
+	 *            the session whose next departing message is to be fully
+	 *            flushed
+	 */
+	public static void fullFlush(ISession session) {
+		// session attributes, unlike the storage of the I/O thread, can be
+		// safely set from any thread
+		session.put(FULL_FLUSH, Boolean.TRUE);
+	}
+
+	@Override
+	public boolean onMsgArrive(ISession session, IBuffer netData, IFilterOutput output) {
+		Decompressor decompressor = (Decompressor) session.inquiry(DECOMPRESSOR);
+		if (decompressor == null) {
+			decompressor = new Decompressor(m_nowrap, CHUNK_SIZE);
+			session.deposit(DECOMPRESSOR, decompressor);
+		}
+
+		final IBuffer appBuf = netData.newBuffer();
+		try {
+			decompressor.decompress(netData, appBuf);
+		} catch (Throwable t) {
+			c_logger.error(StrUtil.join(session, "(remoteAddr=", session.remoteAddress(), ") failed to inflate"), t);
+			appBuf.close();
+			return false;
+		} finally {
+			netData.close();
+		}
+
+		if (appBuf.isEmpty())
+			appBuf.close();
+		else
+			output.add(appBuf);
+		return true;
+	}
+
+	@Override
+	public boolean onMsgDepart(ISession session, IBuffer appData, IFilterOutput output) {
+		Compressor compressor = (Compressor) session.inquiry(COMPRESSOR);
+		if (compressor == null) {
+			compressor = new Compressor(m_level, m_nowrap, CHUNK_SIZE);
+			session.deposit(COMPRESSOR, compressor);
+		}
+
+		final int level = appData.remaining() < m_minSize ? Deflater.NO_COMPRESSION : m_level;
+		final int flush = session.remove(FULL_FLUSH) != null ? Deflater.FULL_FLUSH : m_flush;
+		final IBuffer netBuf = appData.newBuffer();
+		try {
+			compressor.compress(appData, netBuf, level, flush);
+		} catch (Throwable t) {
+			c_logger.error(StrUtil.join(session, "(remoteAddr=", session.remoteAddress(), ") failed to deflate"), t);
+			netBuf.close();
+			return false;
+		} finally {
+			appData.close();
+		}
+
+		output.add(netBuf);
+		return true;
+	}
+
+	public void activate(Map<String, ?> properties) {
+		final Integer level = (Integer) properties.get(LEVEL);
+		if (level == null)
+			m_level = Deflater.DEFAULT_COMPRESSION;
+		else if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION)
+			throw new IllegalArgumentException(StrUtil.join("Illegal level: ", level));
+		else
+			m_level = level;
+
+		final Boolean nowrap = (Boolean) properties.get(NOWRAP);
+		m_nowrap = nowrap != null && nowrap;
+
+		final Integer minSize = (Integer) properties.get(MIN_SIZE);
+		m_minSize = minSize == null || minSize < 0 ? 0 : minSize;
+
+		String flush = (String) properties.get(FLUSH);
+		if (flush == null || (flush = flush.trim()).isEmpty() || flush.equalsIgnoreCase(FLUSH_SYNC))
+			m_flush = Deflater.SYNC_FLUSH;
+		else if (flush.equalsIgnoreCase(FLUSH_FULL))
+			m_flush = Deflater.FULL_FLUSH;
+		else
+			throw new IllegalArgumentException(StrUtil.join("Illegal flush: ", flush));
+	}
+}
@@ -0,0 +1,150 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.file;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.jruyi.common.ICloseable;
+import org.jruyi.common.StrUtil;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * A region of a file to be sent as departure data. It is transferred to the
+ * socket by {@link FileChannel#transferTo(long, long, WritableByteChannel)},
+ * which lets the OS send the file without copying it into user space.
+ * <p>
+ * A file region has to be the only departure data produced for its message
+ * by the filter chain. It is closed after being sent.
+ */
+public final class FileRegion implements ICloseable {
+
+	private static final Logger c_logger = LoggerFactory.getLogger(FileRegion.class);
+
+	private final FileChannel m_fileChannel;
+	private final boolean m_closeChannel;
+	private long m_position;
+	private long m_remaining;
+
+	/**
+	 * Creates a region of {@code count} bytes of the given file starting at
+	 * {@code position}. The file channel is closed when this region is closed.
+	 *
+	 * @param fileChannel
+	 *            the file to send
+	 * @param position
+	 *            the position within the file at which the region starts
+	 * @param count
+	 *            the number of bytes to send
+	 */
+	public FileRegion(FileChannel fileChannel, long position, long count) {
+		this(fileChannel, position, count, true);
+	}
+
+	/**
+	 * Creates a region of {@code count} bytes of the given file starting at
+	 * {@code position}.
+	 *
+	 * @param fileChannel
+	 *            the file to send
+	 * @param position
+	 *            the position within the file at which the region starts
+	 * @param count
+	 *            the number of bytes to send
+	 * @param closeChannel
+	 *            whether to close the file channel when this region is closed
+	 */
+	public FileRegion(FileChannel fileChannel, long position, long count, boolean closeChannel) {
+		if (fileChannel == null)
+			throw new NullPointerException();
+		if (position < 0L || count < 0L)
+			throw new IllegalArgumentException();
+
+		m_fileChannel = fileChannel;
+		m_closeChannel = closeChannel;
+		m_position = position;
+		m_remaining = count;
+	}
+
+	public FileChannel fileChannel() {
+		return m_fileChannel;
+	}
+
+	/**
+	 * Returns the position within the file of the next byte to be sent.
+	 *
+	 * @return the position of the next byte to be sent
+	 */
+	public long position() {
+		return m_position;
+	}
+
+	/**
+	 * Returns the number of bytes not sent yet.
+	 *
+	 * @return the number of remaining bytes
+	 */
+	public long remaining() {
+		return m_remaining;
+	}
+
+	public boolean isEmpty() {
+		return m_remaining < 1L;
+	}
+
+	/**
+	 * Transfers as many remaining bytes as the target accepts without
+	 * blocking.
+	 *
+	 * @param target
+	 *            the channel to transfer to
+	 * @return the number of bytes transferred
+	 * @throws IOException
+	 *             if an I/O error occurs, or the file ends before the region
+	 */
+	public long transferTo(WritableByteChannel target) throws IOException {
+		final FileChannel fileChannel = m_fileChannel;
+		final long position = m_position;
+		final long n = fileChannel.transferTo(position, m_remaining, target);
+		if (n > 0L) {
+			m_position = position + n;
+			m_remaining -= n;
+		} else if (position >= fileChannel.size())
+			throw new EOFException(StrUtil.join("File ends before the region: position=", position, ", remaining=",
+					m_remaining));
+
+		return n;
+	}
+
+	@Override
+	public void close() {
+		if (!m_closeChannel)
+			return;
+
+		try {
+			m_fileChannel.close();
+		} catch (Throwable t) {
+			c_logger.error(StrUtil.join("Failed to close file channel: ", this), t);
+		}
+	}
+
+	@Override
+	public String toString() {
+		return StrUtil.join("FileRegion(position=", m_position, ", remaining=", m_remaining, ")");
+	}
+}
@@ -0,0 +1,228 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.file;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+
+import org.jruyi.common.StrUtil;
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.ISession;
+import org.jruyi.io.channel.IChannel;
+
+/**
+ * A region of a file to be filled with the next arrival bytes of a session.
+ * The bytes are moved from the socket by
+ * {@link FileChannel#transferFrom(ReadableByteChannel, long, long)}, bypassing
+ * the filter chain and the buffers.
+ * <p>
+ * The file channel is not closed by the session. The listener is notified
+ * once all the bytes have been moved, or once the sink fails because of an
+ * error, or the session being closed or reaching EOF before.
+ *
+ * @see #attach(ISession)
+ */
+public final class FileSink {
+
+	private static final int PROBE_SIZE = 512;
+
+	private final FileChannel m_fileChannel;
+	private final ISinkListener m_listener;
+	private final Writer m_writer = new Writer();
+	private long m_position;
+	private long m_remaining;
+	// reused by readIn, allocated on the first probe
+	private ByteBuffer m_probe;
+
+	final class Writer implements WritableByteChannel {
+
+		@Override
+		public int write(ByteBuffer src) throws IOException {
+			final int n = m_fileChannel.write(src, m_position);
+			if (n > 0) {
+				m_position += n;
+				m_remaining -= n;
+			}
+			return n;
+		}
+
+		@Override
+		public boolean isOpen() {
+			return m_fileChannel.isOpen();
+		}
+
+		@Override
+		public void close() {
+		}
+	}
+
+	/**
+	 * Creates a sink moving the next {@code count} arrival bytes into the given
+	 * file starting at {@code position}.
+	 *
+	 * @param fileChannel
+	 *            the file to write to
+	 * @param position
+	 *            the position within the file to start writing at
+	 * @param count
+	 *            the number of bytes to move
+	 * @param listener
+	 *            the listener to be notified on completion
+	 */
+	public FileSink(FileChannel fileChannel, long position, long count, ISinkListener listener) {
+		if (fileChannel == null || listener == null)
+			throw new NullPointerException();
+		if (position < 0L || count < 0L)
+			throw new IllegalArgumentException();
+
+		m_fileChannel = fileChannel;
+		m_listener = listener;
+		m_position = position;
+		m_remaining = count;
+	}
+
+	public FileChannel fileChannel() {
+		return m_fileChannel;
+	}
+
+	/**
+	 * Returns the position within the file of the next byte to be written.
+	 *
+	 * @return the position of the next byte to be written
+	 */
+	public long position() {
+		return m_position;
+	}
+
+	/**
+	 * Returns the number of bytes not moved yet.
+	 *
+	 * @return the number of remaining bytes
+	 */
+	public long remaining() {
+		return m_remaining;
+	}
+
+	public boolean isEmpty() {
+		return m_remaining < 1L;
+	}
+
+	@Override
+	public String toString() {
+		return StrUtil.join("FileSink(position=", m_position, ", remaining=", m_remaining, ")");
+	}
+
+	/**
+	 * Starts moving the next arrival bytes of the given session into this
+	 * sink, bypassing the filter chain. It has to be called on the I/O thread
+	 * of the session.
+	 *
+	 * @param session
+	 *            the session to receive the bytes from
+	 * @see IChannel#sink(FileSink)
+	 */
+	public void attach(ISession session) {
+		((IChannel) session).sink(this);
+	}
+
+	public ISinkListener listener() {
+		return m_listener;
+	}
+
+	/**
+	 * Transfers as many remaining bytes as the given channel has without
+	 * blocking. As it returns 0 on EOF as well, {@link #readIn} has to be used
+	 * to tell them apart.
+	 *
+	 * @param src
+	 *            the channel to transfer from
+	 * @return the number of bytes transferred
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public long transferFrom(ReadableByteChannel src) throws IOException {
+		final long n = m_fileChannel.transferFrom(src, m_position, m_remaining);
+		if (n > 0L) {
+			m_position += n;
+			m_remaining -= n;
+		}
+		return n;
+	}
+
+	/**
+	 * Reads a few of the remaining bytes from the given channel and writes
+	 * them to the file.
+	 *
+	 * @param src
+	 *            the channel to read from
+	 * @return the number of bytes moved, or -1 if the channel has reached EOF
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public int readIn(ReadableByteChannel src) throws IOException {
+		ByteBuffer bb = m_probe;
+		if (bb == null) {
+			bb = ByteBuffer.allocate(PROBE_SIZE);
+			m_probe = bb;
+		}
+		bb.clear();
+		bb.limit((int) Math.min(m_remaining, PROBE_SIZE));
+		final int n = src.read(bb);
+		if (n > 0) {
+			bb.flip();
+			final Writer writer = m_writer;
+			while (bb.hasRemaining())
+				writer.write(bb);
+		}
+		return n;
+	}
+
+	/**
+	 * Writes the given data to the file up to the remaining bytes of this sink,
+	 * and returns the bytes beyond, or {@code null} if the given data is used
+	 * up. The given data is closed unless it is returned.
+	 *
+	 * @param data
+	 *            the data to write
+	 * @return the bytes beyond this sink, or {@code null}
+	 * @throws IOException
+	 *             if an I/O error occurs
+	 */
+	public IBuffer write(IBuffer data) throws IOException {
+		IBuffer rest = null;
+		if (data.length() > m_remaining) {
+			rest = data;
+			data = data.split((int) m_remaining);
+			rest.rewind();
+		}
+
+		try {
+			final Writer writer = m_writer;
+			while (!data.isEmpty())
+				data.writeOut(writer);
+		} catch (Throwable t) {
+			if (rest != null)
+				rest.close();
+			throw t;
+		} finally {
+			data.close();
+		}
+
+		return rest;
+	}
+}
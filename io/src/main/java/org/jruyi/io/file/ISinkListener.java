@@ -0,0 +1,50 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.file;
+
+import org.jruyi.io.ISession;
+
+/**
+ * Listens for the completion or failure of a {@link FileSink}.
+ */
+public interface ISinkListener {
+
+	/**
+	 * Called on the I/O thread of the given {@code session} when all the bytes
+	 * of the given {@code sink} have been moved to the file. The session
+	 * resumes passing arrival data through the filter chain afterwards.
+	 *
+	 * @param session
+	 *            the session the bytes were received from
+	 * @param sink
+	 *            the completed sink
+	 */
+	void onSinkCompleted(ISession session, FileSink sink);
+
+	/**
+	 * Called on the I/O thread of the given {@code session} when the given
+	 * {@code sink} fails before all its bytes are moved, because of an error,
+	 * or the session being closed or reaching EOF. The file channel is left to
+	 * the listener to close.
+	 *
+	 * @param session
+	 *            the session the bytes were received from
+	 * @param sink
+	 *            the failed sink
+	 * @param cause
+	 *            the cause of the failure
+	 */
+	void onSinkFailed(ISession session, FileSink sink, Throwable cause);
+}
@@ -0,0 +1,92 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.flyweight;
+
+import org.jruyi.io.IBuffer;
+
+/**
+ * A reusable view of a record of a {@link Schema} at an offset of a buffer.
+ * The fields of the record are accessed through the field handles of the
+ * schema. Repositioning a flyweight allocates nothing, so a single instance
+ * can be used for all the records a handler processes.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class Flyweight {
+
+	private final Schema m_schema;
+	private IBuffer m_buffer;
+	private int m_offset;
+
+	public Flyweight(Schema schema) {
+		if (schema == null)
+			throw new NullPointerException();
+		m_schema = schema;
+	}
+
+	/**
+	 * Positions this flyweight at the record starting at the given index of
+	 * the given buffer.
+	 *
+	 * @param buffer
+	 *            the buffer holding the record
+	 * @param offset
+	 *            the index of the buffer the record starts at
+	 * @return this flyweight
+	 */
+	public Flyweight wrap(IBuffer buffer, int offset) {
+		if (offset < 0)
+			throw new IndexOutOfBoundsException();
+		m_buffer = buffer;
+		m_offset = offset;
+		return this;
+	}
+
+	/**
+	 * Appends a zeroed block of fields of the schema to the given buffer and
+	 * positions this flyweight at it. The groups, if any, are to be appended
+	 * by {@link Schema.Group#append(Flyweight, int)}.
+	 *
+	 * @param buffer
+	 *            the buffer to append the record to
+	 * @return this flyweight
+	 */
+	public Flyweight append(IBuffer buffer) {
+		final int offset = buffer.size();
+		buffer.writeFill((byte) 0, m_schema.blockLength());
+		return wrap(buffer, offset);
+	}
+
+	public Schema schema() {
+		return m_schema;
+	}
+
+	public IBuffer buffer() {
+		return m_buffer;
+	}
+
+	public int offset() {
+		return m_offset;
+	}
+
+	/**
+	 * Returns the length of the record, including its groups.
+	 *
+	 * @return the length of the record
+	 */
+	public int length() {
+		return m_schema.length(this);
+	}
+}
@@ -0,0 +1,428 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.flyweight;
+
+import org.jruyi.io.Codec;
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.IDoubleCodec;
+import org.jruyi.io.IFloatCodec;
+import org.jruyi.io.IIntCodec;
+import org.jruyi.io.ILongCodec;
+import org.jruyi.io.IShortCodec;
+
+/**
+ * The layout of a fixed-layout binary record: a block of fields at fixed
+ * offsets, optionally followed by repeating groups of fixed-layout elements.
+ * <p>
+ * Each field is laid out right after the previous one when it is defined, and
+ * the returned field handle reads and writes the field in place through a
+ * {@link Flyweight} positioned at a record. The values are decoded and encoded
+ * by the given codecs straight from and to the units of the buffer, even if a
+ * field crosses a unit boundary, so no object is allocated per record.
+ * <p>
+ * A schema is defined by a {@link Builder}, all the fields before the groups.
+ * The built schema and its field handles are immutable, and can be shared
+ * among threads.
+ */
+public final class Schema {
+
+	private static final int COUNT_LENGTH = 2;
+
+	private final int m_blockLength;
+	private final Group m_lastGroup;
+
+	/**
+	 * Lays out the fields and the groups of a {@link Schema}. A builder is not
+	 * thread-safe.
+	 */
+	public static final class Builder {
+
+		private int m_blockLength;
+		private Group m_lastGroup;
+
+		Builder() {
+		}
+
+		public ByteField byteField() {
+			return new ByteField(reserve(1));
+		}
+
+		public ShortField shortField(IShortCodec codec) {
+			return new ShortField(reserve(2), codec);
+		}
+
+		public IntField intField(IIntCodec codec) {
+			return new IntField(reserve(4), codec);
+		}
+
+		public LongField longField(ILongCodec codec) {
+			return new LongField(reserve(8), codec);
+		}
+
+		public FloatField floatField(IFloatCodec codec) {
+			return new FloatField(reserve(4), codec);
+		}
+
+		public DoubleField doubleField(IDoubleCodec codec) {
+			return new DoubleField(reserve(8), codec);
+		}
+
+		public BytesField bytesField(int length) {
+			if (length < 0)
+				throw new IllegalArgumentException();
+			return new BytesField(reserve(length), length);
+		}
+
+		/**
+		 * Skips {@code length} bytes of padding.
+		 *
+		 * @param length
+		 *            the number of bytes to skip
+		 * @return this builder
+		 */
+		public Builder skip(int length) {
+			if (length < 0)
+				throw new IllegalArgumentException();
+			reserve(length);
+			return this;
+		}
+
+		/**
+		 * Defines a repeating group of elements of the given schema, which must
+		 * have no groups itself. The count is an unsigned short coded by the
+		 * given codec.
+		 *
+		 * @param countCodec
+		 *            the codec of the count, a fixed 2-byte one
+		 * @param element
+		 *            the schema of the elements
+		 * @return the group
+		 */
+		public Group group(IShortCodec countCodec, Schema element) {
+			if (!element.isFixed())
+				throw new IllegalArgumentException("Elements must be of fixed layout");
+
+			final Group group = new Group(m_blockLength, m_lastGroup, countCodec, element);
+			m_lastGroup = group;
+			return group;
+		}
+
+		public Schema build() {
+			return new Schema(m_blockLength, m_lastGroup);
+		}
+
+		private int reserve(int length) {
+			if (m_lastGroup != null)
+				throw new IllegalStateException("Fields must be defined before groups");
+
+			final int offset = m_blockLength;
+			m_blockLength = offset + length;
+			return offset;
+		}
+	}
+
+	public static final class ByteField {
+
+		private final int m_offset;
+
+		ByteField(int offset) {
+			m_offset = offset;
+		}
+
+		public int offset() {
+			return m_offset;
+		}
+
+		public byte get(Flyweight flyweight) {
+			return flyweight.buffer().byteAt(flyweight.offset() + m_offset);
+		}
+
+		public void set(Flyweight flyweight, byte b) {
+			flyweight.buffer().set(flyweight.offset() + m_offset, b);
+		}
+	}
+
+	public static final class ShortField {
+
+		private final int m_offset;
+		private final IShortCodec m_codec;
+
+		ShortField(int offset, IShortCodec codec) {
+			m_offset = offset;
+			m_codec = codec;
+		}
+
+		public int offset() {
+			return m_offset;
+		}
+
+		public short get(Flyweight flyweight) {
+			return flyweight.buffer().get(flyweight.offset() + m_offset, m_codec);
+		}
+
+		public void set(Flyweight flyweight, short s) {
+			flyweight.buffer().set(flyweight.offset() + m_offset, s, m_codec);
+		}
+	}
+
+	public static final class IntField {
+
+		private final int m_offset;
+		private final IIntCodec m_codec;
+
+		IntField(int offset, IIntCodec codec) {
+			m_offset = offset;
+			m_codec = codec;
+		}
+
+		public int offset() {
+			return m_offset;
+		}
+
+		public int get(Flyweight flyweight) {
+			return flyweight.buffer().get(flyweight.offset() + m_offset, m_codec);
+		}
+
+		public void set(Flyweight flyweight, int i) {
+			flyweight.buffer().set(flyweight.offset() + m_offset, i, m_codec);
+		}
+	}
+
+	public static final class LongField {
+
+		private final int m_offset;
+		private final ILongCodec m_codec;
+
+		LongField(int offset, ILongCodec codec) {
+			m_offset = offset;
+			m_codec = codec;
+		}
+
+		public int offset() {
+			return m_offset;
+		}
+
+		public long get(Flyweight flyweight) {
+			return flyweight.buffer().get(flyweight.offset() + m_offset, m_codec);
+		}
+
+		public void set(Flyweight flyweight, long l) {
+			flyweight.buffer().set(flyweight.offset() + m_offset, l, m_codec);
+		}
+	}
+
+	public static final class FloatField {
+
+		private final int m_offset;
+		private final IFloatCodec m_codec;
+
+		FloatField(int offset, IFloatCodec codec) {
+			m_offset = offset;
+			m_codec = codec;
+		}
+
+		public int offset() {
+			return m_offset;
+		}
+
+		public float get(Flyweight flyweight) {
+			return flyweight.buffer().get(flyweight.offset() + m_offset, m_codec);
+		}
+
+		public void set(Flyweight flyweight, float f) {
+			flyweight.buffer().set(flyweight.offset() + m_offset, f, m_codec);
+		}
+	}
+
+	public static final class DoubleField {
+
+		private final int m_offset;
+		private final IDoubleCodec m_codec;
+
+		DoubleField(int offset, IDoubleCodec codec) {
+			m_offset = offset;
+			m_codec = codec;
+		}
+
+		public int offset() {
+			return m_offset;
+		}
+
+		public double get(Flyweight flyweight) {
+			return flyweight.buffer().get(flyweight.offset() + m_offset, m_codec);
+		}
+
+		public void set(Flyweight flyweight, double d) {
+			flyweight.buffer().set(flyweight.offset() + m_offset, d, m_codec);
+		}
+	}
+
+	/**
+	 * A field of a fixed number of raw bytes.
+	 */
+	public static final class BytesField {
+
+		private final int m_offset;
+		private final int m_length;
+
+		BytesField(int offset, int length) {
+			m_offset = offset;
+			m_length = length;
+		}
+
+		public int offset() {
+			return m_offset;
+		}
+
+		public int length() {
+			return m_length;
+		}
+
+		/**
+		 * Copies the bytes of this field into {@code dst} starting at
+		 * {@code offset}.
+		 */
+		public void get(Flyweight flyweight, byte[] dst, int offset) {
+			flyweight.buffer().get(flyweight.offset() + m_offset, dst, offset, m_length, Codec.byteArray());
+		}
+
+		/**
+		 * Copies {@code length()} bytes of {@code src} starting at
+		 * {@code offset} into this field.
+		 */
+		public void set(Flyweight flyweight, byte[] src, int offset) {
+			flyweight.buffer().set(flyweight.offset() + m_offset, src, offset, m_length, Codec.byteArray());
+		}
+	}
+
+	/**
+	 * A repeating group: an unsigned short count followed by that many
+	 * elements of a fixed-layout schema.
+	 */
+	public static final class Group {
+
+		// the block length of the schema this group belongs to
+		private final int m_blockLength;
+		private final Group m_prev;
+		private final IShortCodec m_countCodec;
+		private final Schema m_element;
+
+		Group(int blockLength, Group prev, IShortCodec countCodec, Schema element) {
+			m_blockLength = blockLength;
+			m_prev = prev;
+			m_countCodec = countCodec;
+			m_element = element;
+		}
+
+		public Schema element() {
+			return m_element;
+		}
+
+		/**
+		 * Returns the number of elements of this group in the record the given
+		 * flyweight is positioned at.
+		 */
+		public int count(Flyweight flyweight) {
+			return flyweight.buffer().getUnsignedShort(start(flyweight), m_countCodec);
+		}
+
+		/**
+		 * Positions the given element flyweight at the {@code i}-th element of
+		 * this group in the record the given flyweight is positioned at.
+		 *
+		 * @return the given element flyweight
+		 */
+		public Flyweight element(Flyweight flyweight, int i, Flyweight element) {
+			if (element.schema() != m_element)
+				throw new IllegalArgumentException();
+
+			final int start = start(flyweight);
+			final int count = flyweight.buffer().getUnsignedShort(start, m_countCodec);
+			if (i < 0 || i >= count)
+				throw new IndexOutOfBoundsException();
+
+			return element.wrap(flyweight.buffer(), start + COUNT_LENGTH + i * m_element.m_blockLength);
+		}
+
+		/**
+		 * Appends this group with {@code count} zeroed elements to the end of
+		 * the buffer of the given flyweight. The record must end at the end of
+		 * the buffer, and the groups must be appended in order.
+		 */
+		public void append(Flyweight flyweight, int count) {
+			if (count < 0 || count > 0xFFFF)
+				throw new IllegalArgumentException();
+
+			final IBuffer buffer = flyweight.buffer();
+			if (buffer.size() != start(flyweight))
+				throw new IllegalStateException("Groups must be appended in order at the end of the record");
+
+			buffer.write((short) count, m_countCodec);
+			buffer.writeFill((byte) 0, count * m_element.m_blockLength);
+		}
+
+		int start(Flyweight flyweight) {
+			final Group prev = m_prev;
+			return prev == null ? flyweight.offset() + m_blockLength : prev.end(flyweight);
+		}
+
+		int end(Flyweight flyweight) {
+			final int start = start(flyweight);
+			final int count = flyweight.buffer().getUnsignedShort(start, m_countCodec);
+			return start + COUNT_LENGTH + count * m_element.m_blockLength;
+		}
+	}
+
+	private Schema(int blockLength, Group lastGroup) {
+		m_blockLength = blockLength;
+		m_lastGroup = lastGroup;
+	}
+
+	public static Builder builder() {
+		return new Builder();
+	}
+
+	/**
+	 * Returns the length of the block of fields.
+	 *
+	 * @return the block length
+	 */
+	public int blockLength() {
+		return m_blockLength;
+	}
+
+	/**
+	 * Tests whether this schema has no groups, so that all its records are of
+	 * {@link #blockLength()}.
+	 *
+	 * @return true if there are no groups, otherwise false
+	 */
+	public boolean isFixed() {
+		return m_lastGroup == null;
+	}
+
+	/**
+	 * Returns the length of the record the given flyweight is positioned at,
+	 * including its groups.
+	 *
+	 * @param flyweight
+	 *            a flyweight of this schema
+	 * @return the length of the record
+	 */
+	public int length(Flyweight flyweight) {
+		final Group last = m_lastGroup;
+		return last == null ? m_blockLength : last.end(flyweight) - flyweight.offset();
+	}
+}
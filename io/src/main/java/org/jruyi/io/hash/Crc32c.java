@@ -0,0 +1,123 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * CRC-32C (Castagnoli), as used by iSCSI, SCTP and many storage formats. It is
+ * computed eight bytes at a time by the slicing-by-8 algorithm.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class Crc32c implements IByteBufferChecksum {
+
+	private static final int[][] c_tables;
+
+	private int m_crc = -1;
+
+	static {
+		final int[][] tables = new int[8][256];
+		final int[] t0 = tables[0];
+		for (int i = 0; i < 256; ++i) {
+			int crc = i;
+			for (int k = 0; k < 8; ++k)
+				crc = (crc >>> 1) ^ (0x82F63B78 & -(crc & 1));
+			t0[i] = crc;
+		}
+		for (int k = 1; k < 8; ++k) {
+			final int[] prev = tables[k - 1];
+			final int[] t = tables[k];
+			for (int i = 0; i < 256; ++i)
+				t[i] = (prev[i] >>> 8) ^ t0[prev[i] & 0xFF];
+		}
+		c_tables = tables;
+	}
+
+	@Override
+	public void update(int b) {
+		m_crc = (m_crc >>> 8) ^ c_tables[0][(m_crc ^ b) & 0xFF];
+	}
+
+	public void update(byte[] b) {
+		update(b, 0, b.length);
+	}
+
+	@Override
+	public void update(byte[] b, int off, int len) {
+		if (off < 0 || len < 0 || off > b.length - len)
+			throw new ArrayIndexOutOfBoundsException();
+
+		int crc = m_crc;
+		for (; len >= 8; len -= 8, off += 8) {
+			final int lo = (b[off] & 0xFF) | (b[off + 1] & 0xFF) << 8 | (b[off + 2] & 0xFF) << 16
+					| b[off + 3] << 24;
+			final int hi = (b[off + 4] & 0xFF) | (b[off + 5] & 0xFF) << 8 | (b[off + 6] & 0xFF) << 16
+					| b[off + 7] << 24;
+			crc = slice8(crc ^ lo, hi);
+		}
+
+		final int[] t0 = c_tables[0];
+		while (--len >= 0)
+			crc = (crc >>> 8) ^ t0[(crc ^ b[off++]) & 0xFF];
+
+		m_crc = crc;
+	}
+
+	@Override
+	public void update(ByteBuffer bb) {
+		if (bb.hasArray()) {
+			final int position = bb.position();
+			update(bb.array(), bb.arrayOffset() + position, bb.limit() - position);
+			bb.position(bb.limit());
+			return;
+		}
+
+		int crc = m_crc;
+		int i = bb.position();
+		final int limit = bb.limit();
+		final boolean reverse = bb.order() != ByteOrder.LITTLE_ENDIAN;
+		for (final int last = limit - 8; i <= last; i += 8) {
+			long w = bb.getLong(i);
+			if (reverse)
+				w = Long.reverseBytes(w);
+			crc = slice8(crc ^ (int) w, (int) (w >>> 32));
+		}
+
+		final int[] t0 = c_tables[0];
+		for (; i < limit; ++i)
+			crc = (crc >>> 8) ^ t0[(crc ^ bb.get(i)) & 0xFF];
+
+		bb.position(limit);
+		m_crc = crc;
+	}
+
+	@Override
+	public long getValue() {
+		return ~m_crc & 0xFFFFFFFFL;
+	}
+
+	@Override
+	public void reset() {
+		m_crc = -1;
+	}
+
+	private static int slice8(int lo, int hi) {
+		final int[][] t = c_tables;
+		return t[7][lo & 0xFF] ^ t[6][(lo >>> 8) & 0xFF] ^ t[5][(lo >>> 16) & 0xFF] ^ t[4][lo >>> 24]
+				^ t[3][hi & 0xFF] ^ t[2][(hi >>> 8) & 0xFF] ^ t[1][(hi >>> 16) & 0xFF] ^ t[0][hi >>> 24];
+	}
+}
@@ -0,0 +1,34 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.hash;
+
+import java.nio.ByteBuffer;
+import java.util.zip.Checksum;
+
+/**
+ * A checksum that can be updated straight from a {@code ByteBuffer}, such as
+ * the direct buffer of a unit, without copying the bytes out first.
+ */
+public interface IByteBufferChecksum extends Checksum {
+
+	/**
+	 * Updates this checksum with the remaining bytes of the given buffer. The
+	 * position of the buffer is advanced to its limit.
+	 *
+	 * @param bb
+	 *            the bytes to update this checksum with
+	 */
+	void update(ByteBuffer bb);
+}
@@ -0,0 +1,218 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.hash;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * The 64-bit xxHash, a fast non-cryptographic hash, computed incrementally.
+ * {@link #getValue()} returns the hash of the bytes updated so far without
+ * ending the computation.
+ * <p>
+ * This class is not thread-safe.
+ */
+public final class XxHash64 implements IByteBufferChecksum {
+
+	private static final long P1 = 0x9E3779B185EBCA87L;
+	private static final long P2 = 0xC2B2AE3D27D4EB4FL;
+	private static final long P3 = 0x165667B19E3779F9L;
+	private static final long P4 = 0x85EBCA77C2B2AE63L;
+	private static final long P5 = 0x27D4EB2F165667C5L;
+
+	private final long m_seed;
+	// bytes not making a 32-byte stripe yet
+	private final byte[] m_stripe = new byte[32];
+	private int m_stripeSize;
+	private long m_total;
+	private long m_v1;
+	private long m_v2;
+	private long m_v3;
+	private long m_v4;
+
+	public XxHash64() {
+		this(0L);
+	}
+
+	public XxHash64(long seed) {
+		m_seed = seed;
+		reset();
+	}
+
+	@Override
+	public void update(int b) {
+		m_stripe[m_stripeSize++] = (byte) b;
+		++m_total;
+		if (m_stripeSize == 32) {
+			stripe(m_stripe, 0);
+			m_stripeSize = 0;
+		}
+	}
+
+	public void update(byte[] b) {
+		update(b, 0, b.length);
+	}
+
+	@Override
+	public void update(byte[] b, int off, int len) {
+		if (off < 0 || len < 0 || off > b.length - len)
+			throw new ArrayIndexOutOfBoundsException();
+
+		m_total += len;
+		final byte[] stripe = m_stripe;
+		int n = m_stripeSize;
+		if (n > 0) {
+			final int k = Math.min(32 - n, len);
+			System.arraycopy(b, off, stripe, n, k);
+			off += k;
+			len -= k;
+			n += k;
+			if (n < 32) {
+				m_stripeSize = n;
+				return;
+			}
+			stripe(stripe, 0);
+		}
+
+		for (; len >= 32; len -= 32, off += 32)
+			stripe(b, off);
+
+		System.arraycopy(b, off, stripe, 0, len);
+		m_stripeSize = len;
+	}
+
+	@Override
+	public void update(ByteBuffer bb) {
+		if (bb.hasArray()) {
+			final int position = bb.position();
+			update(bb.array(), bb.arrayOffset() + position, bb.limit() - position);
+			bb.position(bb.limit());
+			return;
+		}
+
+		int i = bb.position();
+		final int limit = bb.limit();
+		m_total += limit - i;
+		final byte[] stripe = m_stripe;
+		int n = m_stripeSize;
+		if (n > 0) {
+			final int k = Math.min(32 - n, limit - i);
+			bb.get(stripe, n, k);
+			i += k;
+			n += k;
+			if (n < 32) {
+				m_stripeSize = n;
+				return;
+			}
+			stripe(stripe, 0);
+		}
+
+		final boolean reverse = bb.order() != ByteOrder.LITTLE_ENDIAN;
+		long v1 = m_v1, v2 = m_v2, v3 = m_v3, v4 = m_v4;
+		for (final int last = limit - 32; i <= last; i += 32) {
+			v1 = round(v1, lane(bb, i, reverse));
+			v2 = round(v2, lane(bb, i + 8, reverse));
+			v3 = round(v3, lane(bb, i + 16, reverse));
+			v4 = round(v4, lane(bb, i + 24, reverse));
+		}
+		m_v1 = v1;
+		m_v2 = v2;
+		m_v3 = v3;
+		m_v4 = v4;
+
+		bb.position(i);
+		m_stripeSize = limit - i;
+		bb.get(stripe, 0, limit - i);
+	}
+
+	@Override
+	public long getValue() {
+		long h;
+		if (m_total >= 32) {
+			final long v1 = m_v1, v2 = m_v2, v3 = m_v3, v4 = m_v4;
+			h = Long.rotateLeft(v1, 1) + Long.rotateLeft(v2, 7) + Long.rotateLeft(v3, 12) + Long.rotateLeft(v4, 18);
+			h = merge(h, v1);
+			h = merge(h, v2);
+			h = merge(h, v3);
+			h = merge(h, v4);
+		} else
+			h = m_seed + P5;
+
+		h += m_total;
+
+		final byte[] stripe = m_stripe;
+		final int n = m_stripeSize;
+		int i = 0;
+		for (; i + 8 <= n; i += 8) {
+			h ^= round(0L, getLong(stripe, i));
+			h = Long.rotateLeft(h, 27) * P1 + P4;
+		}
+		if (i + 4 <= n) {
+			h ^= (getInt(stripe, i) & 0xFFFFFFFFL) * P1;
+			h = Long.rotateLeft(h, 23) * P2 + P3;
+			i += 4;
+		}
+		for (; i < n; ++i) {
+			h ^= (stripe[i] & 0xFF) * P5;
+			h = Long.rotateLeft(h, 11) * P1;
+		}
+
+		h ^= h >>> 33;
+		h *= P2;
+		h ^= h >>> 29;
+		h *= P3;
+		h ^= h >>> 32;
+		return h;
+	}
+
+	@Override
+	public void reset() {
+		final long seed = m_seed;
+		m_v1 = seed + P1 + P2;
+		m_v2 = seed + P2;
+		m_v3 = seed;
+		m_v4 = seed - P1;
+		m_total = 0L;
+		m_stripeSize = 0;
+	}
+
+	private void stripe(byte[] b, int off) {
+		m_v1 = round(m_v1, getLong(b, off));
+		m_v2 = round(m_v2, getLong(b, off + 8));
+		m_v3 = round(m_v3, getLong(b, off + 16));
+		m_v4 = round(m_v4, getLong(b, off + 24));
+	}
+
+	private static long round(long acc, long input) {
+		return Long.rotateLeft(acc + input * P2, 31) * P1;
+	}
+
+	private static long merge(long h, long v) {
+		return (h ^ round(0L, v)) * P1 + P4;
+	}
+
+	private static long lane(ByteBuffer bb, int i, boolean reverse) {
+		final long w = bb.getLong(i);
+		return reverse ? Long.reverseBytes(w) : w;
+	}
+
+	private static long getLong(byte[] b, int i) {
+		return (getInt(b, i) & 0xFFFFFFFFL) | (long) getInt(b, i + 4) << 32;
+	}
+
+	private static int getInt(byte[] b, int i) {
+		return (b[i] & 0xFF) | (b[i + 1] & 0xFF) << 8 | (b[i + 2] & 0xFF) << 16 | b[i + 3] << 24;
+	}
+}
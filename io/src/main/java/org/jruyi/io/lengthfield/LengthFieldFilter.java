@@ -0,0 +1,290 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.lengthfield;
+
+import java.util.Map;
+
+import org.jruyi.common.StrUtil;
+import org.jruyi.io.Codec;
+import org.jruyi.io.Filter;
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.IFilter;
+import org.jruyi.io.IFilterOutput;
+import org.jruyi.io.IIntCodec;
+import org.jruyi.io.ILongCodec;
+import org.jruyi.io.IShortCodec;
+import org.jruyi.io.ISession;
+import org.jruyi.io.IntCodec;
+import org.jruyi.io.IoConstants;
+import org.jruyi.io.LongCodec;
+import org.jruyi.io.ShortCodec;
+import org.osgi.service.component.annotations.Component;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+/**
+ * Delimits arriving messages by a length field in their header, and fills in
+ * the length field of departing messages.
+ * <p>
+ * The length field starts at {@code lengthFieldOffset} and is 1, 2, 4 or 8
+ * bytes wide, or a varint if {@code lengthFieldLength} is 0. Its value is the
+ * number of bytes following it, plus {@code lengthAdjustment}. A frame whose
+ * length exceeds {@code maxFrameSize} fails the session as soon as its header
+ * arrives.
+ * <p>
+ * If {@code stripHeader} is true, the header, which is the length field and
+ * all the bytes before it, is stripped from each arriving message, and only
+ * the length field is prepended to each departing message, leaving the bytes
+ * before it to the filters ahead of this one. Otherwise the header
+ * is kept and a departing message is expected to carry it: the length field
+ * is set in place, or inserted at {@code lengthFieldOffset} if a varint.
+ */
+@Component(name = "jruyi.io.lengthfield.filter", //
+service = { IFilter.class }, //
+property = { IoConstants.FILTER_ID + "=" + "jruyi.io.lengthfield.filter" }, //
+xmlns = "http://www.osgi.org/xmlns/scr/v1.1.0")
+public final class LengthFieldFilter extends Filter<IBuffer, IBuffer> {
+
+	public static final String LENGTH_FIELD_OFFSET = "lengthFieldOffset";
+	public static final String LENGTH_FIELD_LENGTH = "lengthFieldLength";
+	public static final String BYTE_ORDER = "byteOrder";
+	public static final String LENGTH_ADJUSTMENT = "lengthAdjustment";
+	public static final String STRIP_HEADER = "stripHeader";
+	public static final String MAX_FRAME_SIZE = "maxFrameSize";
+
+	public static final String BIG_ENDIAN = "BIG_ENDIAN";
+	public static final String LITTLE_ENDIAN = "LITTLE_ENDIAN";
+
+	// lengthFieldLength of a varint length field
+	public static final int VARINT = 0;
+
+	private static final int MAX_VARINT_LENGTH = 5;
+	private static final int DEFAULT_MAX_FRAME_SIZE = 8 * 1024 * 1024;
+
+	private static final Logger c_logger = LoggerFactory.getLogger(LengthFieldFilter.class);
+
+	private int m_lengthFieldOffset;
+	private int m_lengthFieldLength;
+	private int m_lengthAdjustment;
+	private boolean m_stripHeader;
+	private int m_maxFrameSize;
+	private IShortCodec m_shortCodec;
+	private IIntCodec m_intCodec;
+	private ILongCodec m_longCodec;
+
+	@Override
+	public int msgMinSize() {
+		final int n = m_lengthFieldLength;
+		return m_lengthFieldOffset + (n == VARINT ? 1 : n);
+	}
+
+	@Override
+	public int tellBoundary(ISession session, IBuffer in) {
+		final int headerLength = headerLength(in);
+		if (headerLength == 0)
+			return E_UNDERFLOW;
+
+		if (headerLength < 0) {
+			c_logger.error(StrUtil.join(session, "(remoteAddr=", session.remoteAddress(),
+					") malformed varint length field"));
+			return E_ERROR;
+		}
+
+		final long frameLength = headerLength + getLength(in) + m_lengthAdjustment;
+		if (frameLength < headerLength || frameLength > m_maxFrameSize) {
+			c_logger.error(StrUtil.join(session, "(remoteAddr=", session.remoteAddress(), ") illegal frame length: ",
+					frameLength, ", maxFrameSize=", m_maxFrameSize));
+			return E_ERROR;
+		}
+
+		return (int) frameLength;
+	}
+
+	@Override
+	public boolean onMsgArrive(ISession session, IBuffer msg, IFilterOutput output) {
+		if (m_stripHeader) {
+			msg.skip(headerLength(msg));
+			msg.compact();
+		}
+		output.add(msg);
+		return true;
+	}
+
+	@Override
+	public boolean onMsgDepart(ISession session, IBuffer msg, IFilterOutput output) {
+		final int n = m_lengthFieldLength;
+		final int offset = m_lengthFieldOffset;
+		final int length = msg.length();
+		final long value;
+		if (m_stripHeader)
+			value = (long) length - m_lengthAdjustment;
+		else if (n == VARINT)
+			value = (long) length - offset - m_lengthAdjustment;
+		else
+			value = (long) length - offset - n - m_lengthAdjustment;
+
+		if (value < 0L || (n != 8 && (value >>> (n == VARINT ? 31 : n << 3)) != 0L)
+				|| (!m_stripHeader && length < offset + n)) {
+			c_logger.error(StrUtil.join(session, "(remoteAddr=", session.remoteAddress(),
+					") length field cannot hold the departing message of ", length, " bytes"));
+			msg.close();
+			return false;
+		}
+
+		if (m_stripHeader)
+			prependLength(msg, value);
+		else if (n != VARINT)
+			setLength(msg, offset, value);
+		else if (offset > 0) {
+			final byte[] head = msg.get(0, offset, Codec.byteArray());
+			msg.skip(offset);
+			msg.compact();
+			msg.prepend((int) value, IntCodec.varint());
+			msg.prepend(head, Codec.byteArray());
+		} else
+			msg.prepend((int) value, IntCodec.varint());
+
+		output.add(msg);
+		return true;
+	}
+
+	public void activate(Map<String, ?> properties) {
+		final int offset = intValue(properties, LENGTH_FIELD_OFFSET, 0);
+		if (offset < 0)
+			throw new IllegalArgumentException(StrUtil.join("Illegal lengthFieldOffset: ", offset));
+
+		final int n = intValue(properties, LENGTH_FIELD_LENGTH, 4);
+		if (n != VARINT && n != 1 && n != 2 && n != 4 && n != 8)
+			throw new IllegalArgumentException(StrUtil.join("Illegal lengthFieldLength: ", n));
+
+		String byteOrder = (String) properties.get(BYTE_ORDER);
+		if (byteOrder == null || (byteOrder = byteOrder.trim()).isEmpty())
+			byteOrder = BIG_ENDIAN;
+		else
+			byteOrder = byteOrder.toUpperCase();
+
+		if (byteOrder.equals(BIG_ENDIAN)) {
+			m_shortCodec = ShortCodec.bigEndian();
+			m_intCodec = IntCodec.bigEndian();
+			m_longCodec = LongCodec.bigEndian();
+		} else if (byteOrder.equals(LITTLE_ENDIAN)) {
+			m_shortCodec = ShortCodec.littleEndian();
+			m_intCodec = IntCodec.littleEndian();
+			m_longCodec = LongCodec.littleEndian();
+		} else
+			throw new IllegalArgumentException(StrUtil.join("Illegal byteOrder: ", byteOrder));
+
+		final int maxFrameSize = intValue(properties, MAX_FRAME_SIZE, DEFAULT_MAX_FRAME_SIZE);
+		if (maxFrameSize < 1)
+			throw new IllegalArgumentException(StrUtil.join("Illegal maxFrameSize: ", maxFrameSize));
+
+		final Boolean stripHeader = (Boolean) properties.get(STRIP_HEADER);
+
+		m_lengthFieldOffset = offset;
+		m_lengthFieldLength = n;
+		m_lengthAdjustment = intValue(properties, LENGTH_ADJUSTMENT, 0);
+		m_stripHeader = stripHeader != null && stripHeader;
+		m_maxFrameSize = maxFrameSize;
+	}
+
+	public void deactivate() {
+		m_shortCodec = null;
+		m_intCodec = null;
+		m_longCodec = null;
+	}
+
+	/**
+	 * Returns the length of the header of the given frame, 0 if the length
+	 * field has not fully arrived, or -1 if the varint length field is
+	 * malformed.
+	 */
+	private int headerLength(IBuffer in) {
+		final int offset = m_lengthFieldOffset;
+		if (m_lengthFieldLength != VARINT) {
+			final int n = offset + m_lengthFieldLength;
+			return in.length() < n ? 0 : n;
+		}
+
+		final int end = Math.min(in.length(), offset + MAX_VARINT_LENGTH);
+		for (int i = offset; i < end; ++i) {
+			if (in.byteAt(i) >= 0)
+				return i + 1;
+		}
+
+		return end - offset < MAX_VARINT_LENGTH ? 0 : -1;
+	}
+
+	private long getLength(IBuffer in) {
+		final int offset = m_lengthFieldOffset;
+		switch (m_lengthFieldLength) {
+		case VARINT:
+			long value = 0L;
+			for (int i = offset, shift = 0;; ++i, shift += 7) {
+				final byte b = in.byteAt(i);
+				value |= (b & 0x7FL) << shift;
+				if (b >= 0)
+					return value;
+			}
+		case 1:
+			return in.byteAt(offset) & 0xFFL;
+		case 2:
+			return in.get(offset, m_shortCodec) & 0xFFFFL;
+		case 4:
+			return in.get(offset, m_intCodec) & 0xFFFFFFFFL;
+		default:
+			return in.get(offset, m_longCodec);
+		}
+	}
+
+	private void setLength(IBuffer msg, int offset, long value) {
+		switch (m_lengthFieldLength) {
+		case 1:
+			msg.set(offset, (byte) value);
+			break;
+		case 2:
+			msg.set(offset, (short) value, m_shortCodec);
+			break;
+		case 4:
+			msg.set(offset, (int) value, m_intCodec);
+			break;
+		default:
+			msg.set(offset, value, m_longCodec);
+		}
+	}
+
+	private void prependLength(IBuffer msg, long value) {
+		switch (m_lengthFieldLength) {
+		case VARINT:
+			msg.prepend((int) value, IntCodec.varint());
+			break;
+		case 1:
+			msg.prepend((byte) value);
+			break;
+		case 2:
+			msg.prepend((short) value, m_shortCodec);
+			break;
+		case 4:
+			msg.prepend((int) value, m_intCodec);
+			break;
+		default:
+			msg.prepend(value, m_longCodec);
+		}
+	}
+
+	private static int intValue(Map<String, ?> properties, String name, int defaultValue) {
+		final Integer value = (Integer) properties.get(name);
+		return value == null ? defaultValue : value;
+	}
+}
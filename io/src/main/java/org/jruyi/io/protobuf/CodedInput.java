@@ -0,0 +1,239 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jruyi.io.protobuf;
+
+import static org.jruyi.io.protobuf.WireFormat.*;
+
+import java.nio.BufferUnderflowException;
+import java.nio.charset.StandardCharsets;
+
+import org.jruyi.common.StrUtil;
+import org.jruyi.io.Codec;
+import org.jruyi.io.DoubleCodec;
+import org.jruyi.io.FloatCodec;
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.IntCodec;
+import org.jruyi.io.LongCodec;
+
+/**
+ * Reads Protocol Buffers wire primitives straight from the units of a buffer,
+ * starting at its position.
+ * <p>
+ * A nested message is read by pushing a limit of its length, reading fields
+ * until {@link #readTag()} returns 0, and popping the limit. No read crosses
+ * the current limit: a primitive that does not fit throws
+ * {@code BufferUnderflowException}.
+ */
+public final class CodedInput {
+
+	private final IBuffer m_buffer;
+	// the remaining bytes of the buffer at which the current limit is hit
+	private int m_limit;
+
+	public CodedInput(IBuffer buffer) {
+		m_buffer = buffer;
+	}
+
+	public IBuffer buffer() {
+		return m_buffer;
+	}
+
+	/**
+	 * Tests whether the end of the buffer or the current limit is reached.
+	 *
+	 * @return true if no more field to read, otherwise false
+	 */
+	public boolean isAtEnd() {
+		return m_buffer.remaining() <= m_limit;
+	}
+
+	/**
+	 * Reads a tag, or returns 0 if {@link #isAtEnd()}.
+	 *
+	 * @return the tag read, or 0 at the end
+	 */
+	public int readTag() {
+		if (isAtEnd())
+			return 0;
+
+		final int tag = readUInt32();
+		if (getTagFieldNumber(tag) == 0)
+			throw new IllegalArgumentException(StrUtil.join("Invalid tag: ", tag));
+		return tag;
+	}
+
+	public int readInt32() {
+		return (int) readUInt64();
+	}
+
+	public long readInt64() {
+		return readUInt64();
+	}
+
+	public int readUInt32() {
+		return (int) readUInt64();
+	}
+
+	public long readUInt64() {
+		ensure(1);
+		final long value = m_buffer.read(LongCodec.varint());
+		checkLimit();
+		return value;
+	}
+
+	public int readSInt32() {
+		return decodeZigZag32(readUInt32());
+	}
+
+	public long readSInt64() {
+		return decodeZigZag64(readUInt64());
+	}
+
+	public boolean readBool() {
+		return readUInt64() != 0L;
+	}
+
+	public int readEnum() {
+		return readInt32();
+	}
+
+	public int readFixed32() {
+		ensure(4);
+		return m_buffer.read(IntCodec.littleEndian());
+	}
+
+	public long readFixed64() {
+		ensure(8);
+		return m_buffer.read(LongCodec.littleEndian());
+	}
+
+	public int readSFixed32() {
+		return readFixed32();
+	}
+
+	public long readSFixed64() {
+		return readFixed64();
+	}
+
+	public float readFloat() {
+		ensure(4);
+		return m_buffer.read(FloatCodec.littleEndian());
+	}
+
+	public double readDouble() {
+		ensure(8);
+		return m_buffer.read(DoubleCodec.littleEndian());
+	}
+
+	public String readString() {
+		return new String(readBytes(), StandardCharsets.UTF_8);
+	}
+
+	public byte[] readBytes() {
+		return m_buffer.read(readLength(), Codec.byteArray());
+	}
+
+	/**
+	 * Reads the length of a length-delimited field and limits the reading to
+	 * it, for a nested message to be read.
+	 *
+	 * @return the old limit to be passed to {@link #popLimit(int)}
+	 */
+	public int pushLimit() {
+		final int length = readLength();
+		final int oldLimit = m_limit;
+		m_limit = m_buffer.remaining() - length;
+		return oldLimit;
+	}
+
+	/**
+	 * Restores the limit replaced by the {@link #pushLimit()} that returned the
+	 * given old limit. The unread bytes of the nested message, if any, are
+	 * skipped.
+	 *
+	 * @param oldLimit
+	 *            the old limit returned by {@code pushLimit}
+	 */
+	public void popLimit(int oldLimit) {
+		final IBuffer buffer = m_buffer;
+		final int n = buffer.remaining() - m_limit;
+		if (n > 0)
+			buffer.skip(n);
+		m_limit = oldLimit;
+	}
+
+	/**
+	 * Skips the field of the given tag.
+	 *
+	 * @param tag
+	 *            the tag of the field to skip
+	 * @return false if the tag is an end-group tag, otherwise true
+	 */
+	public boolean skipField(int tag) {
+		switch (getTagWireType(tag)) {
+		case WIRETYPE_VARINT:
+			readUInt64();
+			return true;
+		case WIRETYPE_FIXED64:
+			skip(8);
+			return true;
+		case WIRETYPE_LENGTH_DELIMITED:
+			skip(readLength());
+			return true;
+		case WIRETYPE_START_GROUP:
+			final int endTag = makeTag(getTagFieldNumber(tag), WIRETYPE_END_GROUP);
+			int t;
+			while ((t = readTag()) != 0 && skipField(t))
+				;
+			if (t != endTag)
+				throw new IllegalArgumentException(StrUtil.join("Unmatched end-group tag: ", t));
+			return true;
+		case WIRETYPE_END_GROUP:
+			return false;
+		case WIRETYPE_FIXED32:
+			skip(4);
+			return true;
+		default:
+			throw new IllegalArgumentException(StrUtil.join("Invalid wire type: ", tag));
+		}
+	}
+
+	private int readLength() {
+		final int length = readUInt32();
+		if (length < 0 || length > m_buffer.remaining() - m_limit)
+			throw new BufferUnderflowException();
+		return length;
+	}
+
+	private void skip(int n) {
+		ensure(n);
+		m_buffer.skip(n);
+	}
+
+	// throws BufferUnderflowException if less than n bytes are left before
+	// the current limit
+	private void ensure(int n) {
+		if (m_buffer.remaining() - m_limit < n)
+			throw new BufferUnderflowException();
+	}
+
+	// throws BufferUnderflowException if a varint just read crossed the
+	// current limit
+	private void checkLimit() {
+		if (m_buffer.remaining() < m_limit)
+			throw new BufferUnderflowException();
+	}
+}
@@ -0,0 +1,195 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jruyi.io.protobuf;
+
+import static org.jruyi.io.protobuf.WireFormat.*;
+
+import java.nio.charset.StandardCharsets;
+
+import org.jruyi.common.StrUtil;
+import org.jruyi.io.Codec;
+import org.jruyi.io.DoubleCodec;
+import org.jruyi.io.FloatCodec;
+import org.jruyi.io.IBuffer;
+import org.jruyi.io.IntCodec;
+import org.jruyi.io.LongCodec;
+
+/**
+ * Writes Protocol Buffers wire primitives straight into the units of a
+ * buffer.
+ * <p>
+ * A nested message is written between {@link #beginMessage(int)} and
+ * {@link #endMessage(int)}. Its length is not known in advance, so
+ * {@code beginMessage} reserves a length field of 5 bytes that
+ * {@code endMessage} back-patches as a padded varint. Parsers accept such
+ * redundant varint bytes, and no byte of the nested message has to be
+ * computed twice or moved.
+ * <p>
+ * Code generated against {@code CodedOutputStream} can serialize into pooled
+ * units as well through
+ * {@code CodedOutputStream.newInstance(buffer.getOutputStream())}.
+ */
+public final class CodedOutput {
+
+	// the length of the reserved length field of a nested message
+	static final int RESERVED_LENGTH = 5;
+
+	private final IBuffer m_buffer;
+
+	public CodedOutput(IBuffer buffer) {
+		m_buffer = buffer;
+	}
+
+	public IBuffer buffer() {
+		return m_buffer;
+	}
+
+	public void writeTag(int fieldNumber, int wireType) {
+		writeUInt32NoTag(makeTag(fieldNumber, wireType));
+	}
+
+	public void writeInt32(int fieldNumber, int value) {
+		writeTag(fieldNumber, WIRETYPE_VARINT);
+		writeInt32NoTag(value);
+	}
+
+	public void writeInt64(int fieldNumber, long value) {
+		writeTag(fieldNumber, WIRETYPE_VARINT);
+		writeUInt64NoTag(value);
+	}
+
+	public void writeUInt32(int fieldNumber, int value) {
+		writeTag(fieldNumber, WIRETYPE_VARINT);
+		writeUInt32NoTag(value);
+	}
+
+	public void writeUInt64(int fieldNumber, long value) {
+		writeTag(fieldNumber, WIRETYPE_VARINT);
+		writeUInt64NoTag(value);
+	}
+
+	public void writeSInt32(int fieldNumber, int value) {
+		writeTag(fieldNumber, WIRETYPE_VARINT);
+		writeUInt32NoTag(encodeZigZag32(value));
+	}
+
+	public void writeSInt64(int fieldNumber, long value) {
+		writeTag(fieldNumber, WIRETYPE_VARINT);
+		writeUInt64NoTag(encodeZigZag64(value));
+	}
+
+	public void writeBool(int fieldNumber, boolean value) {
+		writeTag(fieldNumber, WIRETYPE_VARINT);
+		m_buffer.write(value ? (byte) 1 : (byte) 0);
+	}
+
+	public void writeEnum(int fieldNumber, int value) {
+		writeInt32(fieldNumber, value);
+	}
+
+	public void writeFixed32(int fieldNumber, int value) {
+		writeTag(fieldNumber, WIRETYPE_FIXED32);
+		m_buffer.write(value, IntCodec.littleEndian());
+	}
+
+	public void writeFixed64(int fieldNumber, long value) {
+		writeTag(fieldNumber, WIRETYPE_FIXED64);
+		m_buffer.write(value, LongCodec.littleEndian());
+	}
+
+	public void writeSFixed32(int fieldNumber, int value) {
+		writeFixed32(fieldNumber, value);
+	}
+
+	public void writeSFixed64(int fieldNumber, long value) {
+		writeFixed64(fieldNumber, value);
+	}
+
+	public void writeFloat(int fieldNumber, float value) {
+		writeTag(fieldNumber, WIRETYPE_FIXED32);
+		m_buffer.write(value, FloatCodec.littleEndian());
+	}
+
+	public void writeDouble(int fieldNumber, double value) {
+		writeTag(fieldNumber, WIRETYPE_FIXED64);
+		m_buffer.write(value, DoubleCodec.littleEndian());
+	}
+
+	public void writeString(int fieldNumber, String value) {
+		writeBytes(fieldNumber, value.getBytes(StandardCharsets.UTF_8));
+	}
+
+	public void writeBytes(int fieldNumber, byte[] value) {
+		writeBytes(fieldNumber, value, 0, value.length);
+	}
+
+	public void writeBytes(int fieldNumber, byte[] value, int offset, int length) {
+		writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+		writeUInt32NoTag(length);
+		m_buffer.write(value, offset, length, Codec.byteArray());
+	}
+
+	/**
+	 * Writes the tag of the given nested message field and reserves its
+	 * length field.
+	 *
+	 * @param fieldNumber
+	 *            the field number of the nested message
+	 * @return the mark to be passed to {@link #endMessage(int)}
+	 */
+	public int beginMessage(int fieldNumber) {
+		writeTag(fieldNumber, WIRETYPE_LENGTH_DELIMITED);
+		final IBuffer buffer = m_buffer;
+		final int mark = buffer.size();
+		buffer.writeFill((byte) 0, RESERVED_LENGTH);
+		return mark;
+	}
+
+	/**
+	 * Back-patches the length field reserved by the {@link #beginMessage(int)}
+	 * that returned the given mark with the number of bytes written since.
+	 *
+	 * @param mark
+	 *            the mark returned by {@code beginMessage}
+	 */
+	public void endMessage(int mark) {
+		final IBuffer buffer = m_buffer;
+		final int length = buffer.size() - mark - RESERVED_LENGTH;
+		if (length < 0)
+			throw new IllegalArgumentException(StrUtil.join("Illegal mark: ", mark));
+
+		// the low 4 groups of 7 bits with continuation bits, then the rest
+		final int low = (length & 0x7F | 0x80) | ((length >>> 7 & 0x7F | 0x80) << 8)
+				| ((length >>> 14 & 0x7F | 0x80) << 16) | ((length >>> 21 & 0x7F | 0x80) << 24);
+		buffer.set(mark, low, IntCodec.littleEndian());
+		buffer.set(mark + 4, (byte) (length >>> 28));
+	}
+
+	public void writeInt32NoTag(int value) {
+		if (value < 0)
+			writeUInt64NoTag(value);
+		else
+			writeUInt32NoTag(value);
+	}
+
+	public void writeUInt32NoTag(int value) {
+		m_buffer.write(value, IntCodec.varint());
+	}
+
+	public void writeUInt64NoTag(long value) {
+		m_buffer.write(value, LongCodec.varint());
+	}
+}
@@ -0,0 +1,297 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.search;
+
+import java.util.Arrays;
+
+import org.jruyi.common.IByteSequence;
+import org.jruyi.common.StrUtil;
+
+/**
+ * A compiled set of byte patterns, any of which can be found in one pass using
+ * the Aho-Corasick algorithm.
+ * <p>
+ * The patterns are compiled into a deterministic automaton, so each byte of
+ * the text is looked at exactly once. The match reported is the one that ends
+ * first; if several patterns end there, the longest one.
+ * <p>
+ * The progress of a search is kept in a {@link State}. Feeding the bytes of a
+ * text piece by piece with the same state finds the same matches as feeding
+ * the whole text at once, which lets a framer resume a search when more data
+ * arrives instead of rescanning the bytes already seen.
+ * <p>
+ * This class is immutable and can be shared among threads. States cannot.
+ */
+public final class ByteAhoCorasick {
+
+	private final byte[][] m_patterns;
+	// The transitions: m_delta[(node << 8) | b]
+	private final int[] m_delta;
+	// The id of the longest pattern ending at each node, or -1
+	private final int[] m_outputs;
+
+	/**
+	 * The progress of a search.
+	 */
+	public static final class State {
+
+		private int m_node;
+		private int m_pattern = -1;
+
+		/**
+		 * Returns the id of the pattern matched by the last search, or -1 if
+		 * nothing was matched.
+		 *
+		 * @return the id of the pattern matched
+		 */
+		public int pattern() {
+			return m_pattern;
+		}
+
+		/**
+		 * Resets this state to search a new text.
+		 */
+		public void reset() {
+			m_node = 0;
+			m_pattern = -1;
+		}
+	}
+
+	/**
+	 * Compiles the given patterns. The id of each pattern is its index in the
+	 * given array.
+	 *
+	 * @param patterns
+	 *            the patterns to find
+	 * @throws IllegalArgumentException
+	 *             if no pattern is given or any pattern is empty
+	 */
+	public ByteAhoCorasick(byte[]... patterns) {
+		final int count = patterns.length;
+		if (count < 1)
+			throw new IllegalArgumentException("No pattern");
+
+		int maxNodes = 1;
+		final byte[][] copies = new byte[count][];
+		for (int i = 0; i < count; ++i) {
+			final byte[] pattern = patterns[i];
+			if (pattern.length < 1)
+				throw new IllegalArgumentException(StrUtil.join("Empty pattern: ", i));
+			copies[i] = pattern.clone();
+			maxNodes += pattern.length;
+		}
+
+		int[] delta = new int[maxNodes << 8];
+		Arrays.fill(delta, -1);
+		int[] outputs = new int[maxNodes];
+		Arrays.fill(outputs, -1);
+
+		// build the trie
+		int nodes = 1;
+		for (int i = 0; i < count; ++i) {
+			int node = 0;
+			for (byte b : copies[i]) {
+				final int t = (node << 8) | (b & 0xFF);
+				int next = delta[t];
+				if (next < 0) {
+					next = nodes++;
+					delta[t] = next;
+				}
+				node = next;
+			}
+			// the first one wins if duplicated
+			if (outputs[node] < 0)
+				outputs[node] = i;
+		}
+
+		if (nodes < maxNodes) {
+			delta = Arrays.copyOf(delta, nodes << 8);
+			outputs = Arrays.copyOf(outputs, nodes);
+		}
+
+		// turn the trie into an automaton, breadth first
+		final int[] fail = new int[nodes];
+		final int[] queue = new int[nodes];
+		int head = 0;
+		int tail = 0;
+		queue[tail++] = 0;
+		while (head < tail) {
+			final int node = queue[head++];
+			final int base = node << 8;
+			final int failBase = fail[node] << 8;
+			for (int b = 0; b < 256; ++b) {
+				final int next = delta[base | b];
+				if (next < 0) {
+					delta[base | b] = node == 0 ? 0 : delta[failBase | b];
+					continue;
+				}
+
+				final int f = node == 0 ? 0 : delta[failBase | b];
+				fail[next] = f;
+				if (outputs[next] < 0)
+					outputs[next] = outputs[f];
+				queue[tail++] = next;
+			}
+		}
+
+		m_patterns = copies;
+		m_delta = delta;
+		m_outputs = outputs;
+	}
+
+	/**
+	 * Returns the number of patterns.
+	 *
+	 * @return the number of patterns
+	 */
+	public int patternCount() {
+		return m_patterns.length;
+	}
+
+	/**
+	 * Returns the length of the pattern of the given id.
+	 *
+	 * @param id
+	 *            the id of the pattern
+	 * @return the length of the pattern
+	 */
+	public int length(int id) {
+		return m_patterns[id].length;
+	}
+
+	/**
+	 * Returns a copy of the pattern of the given id.
+	 *
+	 * @param id
+	 *            the id of the pattern
+	 * @return the pattern
+	 */
+	public byte[] pattern(int id) {
+		return m_patterns[id].clone();
+	}
+
+	/**
+	 * Searches the given range of {@code bytes} for any of the patterns, and
+	 * returns the index of the first byte of the match, or -1 if not found.
+	 *
+	 * @param bytes
+	 *            the text to search
+	 * @param offset
+	 *            the index to start searching at
+	 * @param length
+	 *            the number of bytes to search
+	 * @return the index of the match, or -1
+	 */
+	public int findIn(byte[] bytes, int offset, int length) {
+		final State state = new State();
+		final int end = findIn(state, bytes, offset, length);
+		return end < 0 ? -1 : end - m_patterns[state.m_pattern].length;
+	}
+
+	/**
+	 * Searches the given range of {@code sequence} for any of the patterns,
+	 * and returns the index of the first byte of the match, or -1 if not
+	 * found.
+	 *
+	 * @param sequence
+	 *            the text to search
+	 * @param offset
+	 *            the index to start searching at
+	 * @param length
+	 *            the number of bytes to search
+	 * @return the index of the match, or -1
+	 */
+	public int findIn(IByteSequence sequence, int offset, int length) {
+		final State state = new State();
+		final int end = findIn(state, sequence, offset, length);
+		return end < 0 ? -1 : end - m_patterns[state.m_pattern].length;
+	}
+
+	/**
+	 * Feeds the given range of {@code bytes} into the given search, and returns
+	 * the index right after the last byte of the match, or -1 if not found. The
+	 * id of the matched pattern is kept in {@code state}. The match may start
+	 * in a previous range fed into the same state.
+	 * <p>
+	 * To go on searching for the next match, feed the bytes from the returned
+	 * index with the same state.
+	 *
+	 * @param state
+	 *            the progress of the search
+	 * @param bytes
+	 *            the text to search
+	 * @param offset
+	 *            the index to start searching at
+	 * @param length
+	 *            the number of bytes to search
+	 * @return the index right after the match, or -1
+	 */
+	public int findIn(State state, byte[] bytes, int offset, int length) {
+		final int[] delta = m_delta;
+		final int[] outputs = m_outputs;
+		int node = state.m_node;
+		for (final int end = offset + length; offset < end;) {
+			node = delta[(node << 8) | (bytes[offset++] & 0xFF)];
+			final int pattern = outputs[node];
+			if (pattern >= 0) {
+				state.m_node = node;
+				state.m_pattern = pattern;
+				return offset;
+			}
+		}
+
+		state.m_node = node;
+		state.m_pattern = -1;
+		return -1;
+	}
+
+	/**
+	 * Feeds the given range of {@code sequence} into the given search, and
+	 * returns the index right after the last byte of the match, or -1 if not
+	 * found. The id of the matched pattern is kept in {@code state}. The match
+	 * may start in a previous range fed into the same state.
+	 * <p>
+	 * To go on searching for the next match, feed the bytes from the returned
+	 * index with the same state.
+	 *
+	 * @param state
+	 *            the progress of the search
+	 * @param sequence
+	 *            the text to search
+	 * @param offset
+	 *            the index to start searching at
+	 * @param length
+	 *            the number of bytes to search
+	 * @return the index right after the match, or -1
+	 */
+	public int findIn(State state, IByteSequence sequence, int offset, int length) {
+		final int[] delta = m_delta;
+		final int[] outputs = m_outputs;
+		int node = state.m_node;
+		for (final int end = offset + length; offset < end;) {
+			node = delta[(node << 8) | (sequence.byteAt(offset++) & 0xFF)];
+			final int pattern = outputs[node];
+			if (pattern >= 0) {
+				state.m_node = node;
+				state.m_pattern = pattern;
+				return offset;
+			}
+		}
+
+		state.m_node = node;
+		state.m_pattern = -1;
+		return -1;
+	}
+}
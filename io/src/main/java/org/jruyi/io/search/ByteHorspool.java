@@ -0,0 +1,127 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.search;
+
+import java.util.Arrays;
+
+import org.jruyi.common.IByteSequence;
+
+/**
+ * A byte pattern compiled for the Boyer-Moore-Horspool algorithm.
+ * <p>
+ * The longer the pattern, the more bytes of the text are skipped without being
+ * looked at, so it beats {@link org.jruyi.common.ByteKmp} on long patterns such as multipart
+ * boundaries.
+ * <p>
+ * A search that fails over a text of {@code n} bytes can be resumed at index
+ * {@code n - length() + 1} when more bytes are appended, without missing a
+ * match or rescanning the rest.
+ * <p>
+ * This class is immutable and can be shared among threads.
+ */
+public final class ByteHorspool {
+
+	private final byte[] m_pattern;
+	private final int[] m_shifts;
+
+	public ByteHorspool(byte[] pattern) {
+		this(pattern, 0, pattern.length);
+	}
+
+	public ByteHorspool(byte[] pattern, int offset, int length) {
+		final byte[] copy = Arrays.copyOfRange(pattern, offset, offset + length);
+		final int[] shifts = new int[256];
+		Arrays.fill(shifts, length);
+		for (int i = 0, last = length - 1; i < last; ++i)
+			shifts[copy[i] & 0xFF] = last - i;
+
+		m_pattern = copy;
+		m_shifts = shifts;
+	}
+
+	public int length() {
+		return m_pattern.length;
+	}
+
+	/**
+	 * Returns the index of the first occurrence of this pattern in the given
+	 * range of {@code bytes}, or -1 if not found.
+	 *
+	 * @param bytes
+	 *            the text to search
+	 * @param offset
+	 *            the index to start searching at
+	 * @param length
+	 *            the number of bytes to search
+	 * @return the index of the match, or -1
+	 */
+	public int findIn(byte[] bytes, int offset, int length) {
+		final byte[] pattern = m_pattern;
+		final int last = pattern.length - 1;
+		if (last < 0)
+			return offset;
+
+		final int[] shifts = m_shifts;
+		final byte lastByte = pattern[last];
+		for (int end = offset + length - last; offset < end;) {
+			final byte b = bytes[offset + last];
+			if (b == lastByte) {
+				int i = last;
+				while (--i >= 0 && bytes[offset + i] == pattern[i])
+					;
+				if (i < 0)
+					return offset;
+			}
+			offset += shifts[b & 0xFF];
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Returns the index of the first occurrence of this pattern in the given
+	 * range of {@code sequence}, or -1 if not found.
+	 *
+	 * @param sequence
+	 *            the text to search
+	 * @param offset
+	 *            the index to start searching at
+	 * @param length
+	 *            the number of bytes to search
+	 * @return the index of the match, or -1
+	 */
+	public int findIn(IByteSequence sequence, int offset, int length) {
+		final byte[] pattern = m_pattern;
+		final int last = pattern.length - 1;
+		if (last < 0)
+			return offset;
+
+		final int[] shifts = m_shifts;
+		final byte lastByte = pattern[last];
+		for (int end = offset + length - last; offset < end;) {
+			final byte b = sequence.byteAt(offset + last);
+			if (b == lastByte) {
+				int i = last;
+				while (--i >= 0 && sequence.byteAt(offset + i) == pattern[i])
+					;
+				if (i < 0)
+					return offset;
+			}
+			offset += shifts[b & 0xFF];
+		}
+
+		return -1;
+	}
+}
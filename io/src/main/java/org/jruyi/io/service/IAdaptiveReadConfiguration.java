@@ -0,0 +1,35 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.service;
+
+/**
+ * The read sizing configuration of a TCP service. The configurations of the
+ * TCP servers and clients created by {@code RuyiCore} may be cast to it.
+ * Changes take effect on {@code apply()}.
+ */
+public interface IAdaptiveReadConfiguration {
+
+	/**
+	 * Sets whether the size of the buffer to read into adapts to the sizes of
+	 * the recent reads of each session, instead of being the unit capacity.
+	 *
+	 * @param adaptiveRead
+	 *            true to adapt the read size, otherwise false
+	 * @return this configuration
+	 */
+	IAdaptiveReadConfiguration adaptiveRead(boolean adaptiveRead);
+
+	boolean adaptiveRead();
+}
@@ -0,0 +1,44 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.service;
+
+/**
+ * The broadcast configuration of a TCP server. The configuration of a TCP
+ * server created by {@code RuyiCore} may be cast to it. Changes take effect on
+ * {@code apply()}.
+ */
+public interface IBroadcastConfiguration {
+
+	/**
+	 * Sets whether the filters of the server keep no per-session state in
+	 * encoding a message, so that a broadcast message is encoded only once.
+	 * <p>
+	 * The message is then encoded on the thread calling
+	 * {@link IBroadcastService#broadcast(java.util.Collection, Object)
+	 * broadcast}, against the first of the target sessions, while the I/O
+	 * thread of that session may be using it. The filters must not touch the
+	 * storage of the session confined to its I/O thread ({@code deposit},
+	 * {@code withdraw} and {@code inquiry}) when encoding. Only the
+	 * thread-safe attributes ({@code get}, {@code put} and {@code remove})
+	 * may be used.
+	 *
+	 * @param statelessFilters
+	 *            true if the filters are stateless, otherwise false
+	 * @return this configuration
+	 */
+	IBroadcastConfiguration statelessFilters(boolean statelessFilters);
+
+	boolean statelessFilters();
+}
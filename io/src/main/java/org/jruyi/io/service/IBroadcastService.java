@@ -0,0 +1,58 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.service;
+
+import java.util.Collection;
+
+import org.jruyi.io.ISession;
+
+/**
+ * A session service writing a message to many sessions at once. It is
+ * implemented by the TCP servers of JRuyi, which may be cast to it.
+ *
+ * @param <O>
+ *            the type of the outgoing messages
+ * @see IBroadcastConfiguration
+ */
+public interface IBroadcastService<O> {
+
+	/**
+	 * Writes the given message to all the open sessions.
+	 *
+	 * @param msg
+	 *            the message to broadcast
+	 * @see #broadcast(Collection, Object)
+	 */
+	void broadcast(O msg);
+
+	/**
+	 * Writes the given message to each of the given sessions.
+	 * <p>
+	 * If the filter chain is configured stateless
+	 * ({@link IBroadcastConfiguration#statelessFilters()}), the message is
+	 * encoded through the filters only once and the encoded buffer is shared
+	 * by all the sessions. Otherwise, the message goes through the filters of
+	 * each session. In this case, a buffer message is retained for each
+	 * session instead of being copied, and any other message must be
+	 * immutable. The retained buffers are read-only, so a filter prepending or
+	 * appending to one of them writes to new units of its own.
+	 *
+	 * @param sessions
+	 *            the sessions to write to
+	 * @param msg
+	 *            the message to broadcast
+	 */
+	void broadcast(Collection<? extends ISession> sessions, O msg);
+}
@@ -23,6 +23,7 @@ public class TcpChannelConf {
 	private String m_ip;
 	private Integer m_port;
 	private long m_throttle;
+	private boolean m_adaptiveRead;
 	private String[] m_filters;
 	private boolean m_reuseAddr;
 	private Boolean m_keepAlive;
@@ -37,6 +38,7 @@ public class TcpChannelConf {
 	public void initialize(Map<String, ?> properties) {
 		port((Integer) properties.get("port"));
 		throttle((Long) properties.get("throttle"));
+		adaptiveRead((Boolean) properties.get("adaptiveRead"));
 		filters((String[]) properties.get("filters"));
 		reuseAddr((Boolean) properties.get("reuseAddr"));
 		keepAlive((Boolean) properties.get("keepAlive"));
@@ -76,6 +78,14 @@ public class TcpChannelConf {
 		m_throttle = v;
 	}
 
+	public final boolean adaptiveRead() {
+		return m_adaptiveRead;
+	}
+
+	public final void adaptiveRead(Boolean adaptiveRead) {
+		m_adaptiveRead = adaptiveRead == null ? true : adaptiveRead;
+	}
+
 	public final String[] filters() {
 		return m_filters;
 	}
@@ -30,6 +30,7 @@ import org.jruyi.io.ISessionService;
 import org.jruyi.io.channel.IChannel;
 import org.jruyi.io.channel.IChannelAdmin;
 import org.jruyi.io.channel.IChannelService;
+import org.jruyi.io.channel.ReadSizer;
 import org.jruyi.io.common.Util;
 import org.jruyi.io.filter.IFilterList;
 import org.jruyi.io.filter.IFilterManager;
@@ -43,6 +44,7 @@ public abstract class AbstractTcpClient<I, O> extends Service implements IChanne
 	private static final Logger c_logger = LoggerFactory.getLogger(AbstractTcpClient.class);
 
 	private final AtomicLong m_sequence = new AtomicLong(0L);
+	private final ReadSizer m_readSizer = new ReadSizer();
 
 	private IChannelAdmin m_ca;
 	private IFilterManager m_fm;
@@ -126,6 +128,11 @@ public abstract class AbstractTcpClient<I, O> extends Service implements IChanne
 		return configuration().throttle();
 	}
 
+	@Override
+	public ReadSizer readSizer() {
+		return configuration().adaptiveRead() ? m_readSizer : null;
+	}
+
 	@Override
 	public final IFilterList getFilterChain() {
 		return m_filters;
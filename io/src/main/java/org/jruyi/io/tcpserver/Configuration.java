@@ -28,6 +28,7 @@ public final class Configuration extends TcpChannelConf {
 	private Integer m_sessionIdleTimeoutInSeconds;
 	private Integer m_initCapacityOfChannelMap;
 	private Integer m_numberOfIoThreads;
+	private boolean m_statelessFilters;
 
 	static {
 		c_mProps = new Method[M_PROPS.length];
@@ -52,6 +53,7 @@ public final class Configuration extends TcpChannelConf {
 		backlog((Integer) properties.get("backlog"));
 		sessionIdleTimeoutInSeconds((Integer) properties.get("sessionIdleTimeoutInSeconds"));
 		initCapacityOfChannelMap((Integer) properties.get("initCapacityOfChannelMap"));
+		statelessFilters((Boolean) properties.get("statelessFilters"));
 	}
 
 	public Integer backlog() {
@@ -86,6 +88,14 @@ public final class Configuration extends TcpChannelConf {
 		m_initCapacityOfChannelMap = initCapacityOfChannelMap == null ? 2048 : initCapacityOfChannelMap;
 	}
 
+	public boolean statelessFilters() {
+		return m_statelessFilters;
+	}
+
+	public void statelessFilters(Boolean statelessFilters) {
+		m_statelessFilters = statelessFilters == null ? false : statelessFilters;
+	}
+
 	public final Integer numberOfIoThreads() {
 		return m_numberOfIoThreads;
 	}
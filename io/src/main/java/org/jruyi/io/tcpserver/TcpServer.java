@@ -31,17 +31,23 @@ import org.jruyi.common.IService;
 import org.jruyi.common.ITimerAdmin;
 import org.jruyi.common.Service;
 import org.jruyi.common.StrUtil;
+import org.jruyi.io.Codec;
+import org.jruyi.io.IBuffer;
 import org.jruyi.io.IBufferFactory;
 import org.jruyi.io.ISession;
 import org.jruyi.io.ISessionListener;
 import org.jruyi.io.ISessionService;
 import org.jruyi.io.IoConstants;
+import org.jruyi.io.buffer.Buffer;
+import org.jruyi.io.channel.Channel;
 import org.jruyi.io.channel.IChannel;
 import org.jruyi.io.channel.IChannelAdmin;
 import org.jruyi.io.channel.IChannelService;
+import org.jruyi.io.channel.ReadSizer;
 import org.jruyi.io.common.Util;
 import org.jruyi.io.filter.IFilterList;
 import org.jruyi.io.filter.IFilterManager;
+import org.jruyi.io.service.IBroadcastService;
 import org.osgi.service.component.annotations.Component;
 import org.osgi.service.component.annotations.Reference;
 import org.osgi.service.component.annotations.ReferencePolicy;
@@ -52,11 +58,13 @@ import org.slf4j.LoggerFactory;
 		factory = "tcpserver", //
 		service = { IService.class }, //
 		xmlns = "http://www.osgi.org/xmlns/scr/v1.1.0")
-public final class TcpServer<I, O> extends Service implements IChannelService<I, O>, ISessionService<I, O> {
+public final class TcpServer<I, O> extends Service implements IChannelService<I, O>, ISessionService<I, O>,
+		IBroadcastService<O> {
 
 	private static final Logger c_logger = LoggerFactory.getLogger(TcpServer.class);
 
 	private final AtomicLong m_sequence = new AtomicLong(0L);
+	private final ReadSizer m_readSizer = new ReadSizer();
 
 	private IBufferFactory m_bf;
 	private ITimerAdmin m_ta;
@@ -103,6 +111,11 @@ public final class TcpServer<I, O> extends Service implements IChannelService<I,
 		return m_conf.throttle();
 	}
 
+	@Override
+	public ReadSizer readSizer() {
+		return m_conf.adaptiveRead() ? m_readSizer : null;
+	}
+
 	@Override
 	public IFilterList getFilterChain() {
 		return m_filters;
@@ -249,6 +262,79 @@ public final class TcpServer<I, O> extends Service implements IChannelService<I,
 		}
 	}
 
+	@Override
+	public void broadcast(O msg) {
+		final ConcurrentHashMap<Long, IChannel> channels = m_channels;
+		if (channels == null) {
+			closeMsg(msg);
+			return;
+		}
+
+		broadcast(channels.values(), msg);
+	}
+
+	@Override
+	public void broadcast(Collection<? extends ISession> sessions, O msg) {
+		final ConcurrentHashMap<Long, IChannel> channels = m_channels;
+		if (channels == null || msg == null) {
+			closeMsg(msg);
+			return;
+		}
+
+		final int n = sessions.size();
+		final IChannel[] targets = new IChannel[n];
+		int count = 0;
+		for (ISession session : sessions) {
+			final IChannel channel = channels.get(session.id());
+			if (channel != null && count < n)
+				targets[count++] = channel;
+		}
+
+		if (count < 1) {
+			closeMsg(msg);
+			return;
+		}
+
+		if (m_conf.statelessFilters()) {
+			// encoded on the calling thread, see statelessFilters
+			final IBuffer data;
+			try {
+				data = Channel.encode(targets[0], msg, m_filters.filters());
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join(this, " failed to encode message for broadcast: ",
+						StrUtil.getLineSeparator(), msg), t);
+				closeMsg(msg);
+				return;
+			}
+			if (data == null) {
+				closeMsg(msg);
+				return;
+			}
+
+			try {
+				for (int i = 0; i < count; ++i)
+					targets[i].write(msg, retain(data));
+			} finally {
+				data.close();
+			}
+			return;
+		}
+
+		if (msg instanceof Buffer) {
+			final Buffer buf = (Buffer) msg;
+			try {
+				for (int i = 0; i < count; ++i)
+					targets[i].write(buf.retain());
+			} finally {
+				buf.close();
+			}
+			return;
+		}
+
+		for (int i = 0; i < count; ++i)
+			targets[i].write(msg);
+	}
+
 	@Override
 	protected void startInternal() throws Exception {
 		c_logger.info(StrUtil.join("Starting ", this, "..."));
@@ -409,6 +495,25 @@ public final class TcpServer<I, O> extends Service implements IChannelService<I,
 		return m_ssc;
 	}
 
+	private static IBuffer retain(IBuffer data) {
+		if (data instanceof Buffer)
+			return ((Buffer) data).retain();
+
+		final IBuffer copy = data.newBuffer();
+		copy.write(data, Codec.byteSequence());
+		return copy;
+	}
+
+	private void closeMsg(Object msg) {
+		if (msg instanceof AutoCloseable) {
+			try {
+				((AutoCloseable) msg).close();
+			} catch (Throwable t) {
+				c_logger.error(StrUtil.join(this, " failed to close message: ", StrUtil.getLineSeparator(), msg), t);
+			}
+		}
+	}
+
 	private boolean scheduleIdleTimeout(IChannel channel) {
 		final int timeout = m_conf.sessionIdleTimeoutInSeconds();
 		if (timeout > 0)
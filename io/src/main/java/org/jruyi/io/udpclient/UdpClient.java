@@ -30,6 +30,7 @@ import org.jruyi.io.IoConstants;
 import org.jruyi.io.channel.IChannel;
 import org.jruyi.io.channel.IChannelAdmin;
 import org.jruyi.io.channel.IChannelService;
+import org.jruyi.io.channel.ReadSizer;
 import org.jruyi.io.common.Util;
 import org.jruyi.io.filter.IFilterList;
 import org.jruyi.io.filter.IFilterManager;
@@ -87,6 +88,12 @@ public final class UdpClient<I, O> extends Service implements IChannelService<I,
 		return 0L;
 	}
 
+	@Override
+	public ReadSizer readSizer() {
+		// a datagram is truncated if read into a unit too small
+		return null;
+	}
+
 	@Override
 	public IFilterList getFilterChain() {
 		return m_filters;
@@ -38,6 +38,7 @@ import org.jruyi.io.channel.IChannel;
 import org.jruyi.io.channel.IChannelAdmin;
 import org.jruyi.io.channel.IChannelService;
 import org.jruyi.io.channel.ISelector;
+import org.jruyi.io.channel.ReadSizer;
 import org.jruyi.io.common.Util;
 import org.jruyi.io.filter.IFilterList;
 import org.jruyi.io.filter.IFilterManager;
@@ -95,6 +96,12 @@ public final class UdpServer<I, O> extends Service implements IChannelService<I,
 		return 0L;
 	}
 
+	@Override
+	public ReadSizer readSizer() {
+		// a datagram is truncated if read into a unit too small
+		return null;
+	}
+
 	@Override
 	public IFilterList getFilterChain() {
 		return m_filters;
@@ -16,10 +16,27 @@ package org.jruyi.io.buffer
 
 import org.jruyi.common.StringBuilder
 import org.jruyi.io.*
+import org.jruyi.io.flyweight.Flyweight
+import org.jruyi.io.flyweight.Schema
+import org.jruyi.io.hash.Crc32c
+import org.jruyi.io.hash.XxHash64
+import org.jruyi.io.search.ByteAhoCorasick
+import org.jruyi.io.search.ByteHorspool
+import org.jruyi.io.buffer.codec.StringCodec
+import org.jruyi.io.buffer.codec.intarray.StreamVByte as IntStreamVByte
+import org.jruyi.io.buffer.intcodec.Decimal as IntDecimal
+import org.jruyi.io.buffer.longcodec.Decimal as LongDecimal
+import org.jruyi.io.buffer.codec.longarray.StreamVByte as LongStreamVByte
 import spock.lang.Specification
 
+import java.nio.BufferUnderflowException
 import java.nio.ByteBuffer
 import java.nio.ByteOrder
+import java.nio.ReadOnlyBufferException
+import java.nio.channels.Channels
+import java.nio.channels.FileChannel
+import java.nio.channels.Pipe
+import java.nio.file.StandardOpenOption
 
 class BufferSpec extends Specification {
 
@@ -484,6 +501,947 @@ class BufferSpec extends Specification {
 		result != 0
 	}
 
+	def "direct units should hold the same data as heap units"() {
+		given: "a heap buffer and a direct buffer, both with unitCapacity = 9"
+		def heapBf = new BufferFactory()
+		heapBf.activate([unitCapacity: 9])
+		def heapBuf = heapBf.create()
+
+		def directBf = new BufferFactory()
+		directBf.activate([unitCapacity: 9, unitType: "direct"])
+		def directBuf = directBf.create()
+
+		def bytes = createBytes(40)
+		def longs = [0x0123456789abcdefL, 0xfedcba9876543210L] as long[]
+
+		when: "write the same data into both buffers"
+		heapBuf.write(bytes, Codec.byteArray()).write(0x12345678, IntCodec.bigEndian()).write(longs, LongArrayCodec.littleEndian())
+		directBuf.write(bytes, Codec.byteArray()).write(0x12345678, IntCodec.bigEndian()).write(longs, LongArrayCodec.littleEndian())
+		then: "both buffers are equal"
+		directBf.getUnit() instanceof DirectUnit
+		directBuf.compareTo(heapBuf) == 0
+		directBuf.get(0, 40, Codec.byteArray()) == bytes
+		directBuf.get(40, IntCodec.bigEndian()) == 0x12345678
+		directBuf.get(44, LongArrayCodec.littleEndian()) == longs
+
+		when: "compact, prepend and read back from the direct buffer"
+		directBuf.read(40, Codec.byteArray())
+		directBuf.compact()
+		directBuf.prepend(bytes, Codec.byteArray())
+		then:
+		directBuf.read(40, Codec.byteArray()) == bytes
+		directBuf.read(IntCodec.bigEndian()) == 0x12345678
+		directBuf.read(LongArrayCodec.littleEndian()) == longs
+	}
+
+	def "units released on another thread should go back to their home size class"() {
+		given: "a buffer factory with magazineSize = 2"
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 1024, magazineSize: 2])
+		def units = (1..8).collect { bf.getUnit() }
+		def tinyUnit = bf.getUnitForSize(100)
+
+		when: "release the units on another thread and take them back on this thread"
+		def t = Thread.start {
+			units.each { bf.putUnit(it) }
+			bf.putUnit(tinyUnit)
+		}
+		t.join()
+		def reused = (1..6).collect { bf.getUnit() }
+		then: "the spilled units are reused and no more memory is allocated"
+		tinyUnit.capacity() == 128
+		reused.every { units.contains(it) }
+		bf.footprint() == 8 * 1024 + 128
+		bf.highWaterMark() == 8 * 1024 + 128
+
+		when: "create a buffer for a small message"
+		def buf = bf.create(20)
+		buf.write(createBytes(20), Codec.byteArray())
+		then: "it is backed by a tiny unit"
+		buf.unitChain().firstUnit().capacity() == 64
+		buf.get(0, 20, Codec.byteArray()) == createBytes(20)
+	}
+
+	def "units in the magazines of dead threads should be reclaimed, and dropped on deactivation"() {
+		given: "a buffer factory with magazineSize = 4"
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 1024, magazineSize: 4])
+		def units = (1..2).collect { bf.getUnit() }
+
+		when: "release the units into the magazine of a thread that dies"
+		def t = Thread.start { units.each { bf.putUnit(it) } }
+		t.join()
+		def taken = []
+		t = Thread.start { 2.times { taken.add(bf.getUnit()) } }
+		t.join()
+		then: "they are reused by a new thread"
+		taken.every { units.contains(it) }
+		bf.footprint() == 2 * 1024
+
+		when: "release them into the magazine of this thread and deactivate"
+		taken.each { bf.putUnit(it) }
+		bf.deactivate()
+		then: "the footprint drops to 0"
+		bf.footprint() == 0L
+	}
+
+	def "buffer factory should go over budget at the budget and back under at the low watermark"() {
+		given: "a buffer factory with a budget of 4 units and a low watermark of 2 units"
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 1024, memoryBudget: 4096L, memoryLowWatermark: 2048L])
+		def notified = 0
+		def units = (1..3).collect { bf.getUnit() }
+		expect:
+		bf.usage() == 3 * 1024
+		!bf.isOverBudget()
+
+		when: "take one more unit"
+		units << bf.getUnit()
+		bf.awaitBudget({ notified++ } as IBudgetListener)
+		then: "it is over budget and the listener waits"
+		bf.isOverBudget()
+		notified == 0
+
+		when: "release one unit"
+		bf.putUnit(units.pop())
+		then: "it stays over budget above the low watermark"
+		bf.usage() == 3 * 1024
+		bf.isOverBudget()
+		notified == 0
+
+		when: "release down to the low watermark"
+		bf.putUnit(units.pop())
+		then: "the listener is notified once"
+		bf.usage() == 2 * 1024
+		!bf.isOverBudget()
+		notified == 1
+
+		when: "wait for the budget while under it"
+		bf.awaitBudget({ notified++ } as IBudgetListener)
+		then: "the listener is notified right away"
+		notified == 2
+	}
+
+	def "readIn should scatter into new units once the last unit is full"() {
+		given: "a pipe holding 20000 bytes and a buffer of 1024-byte units"
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 1024])
+		def bytes = createBytes(20000)
+		def pipe = Pipe.open()
+		pipe.sink().write(ByteBuffer.wrap(bytes))
+		pipe.source().configureBlocking(false)
+		def buf = bf.create()
+
+		when: "read in twice"
+		def n1 = buf.readIn(pipe.source(), 20000L)
+		def n2 = buf.readIn(pipe.source(), 20000L - n1)
+		then: "the first read fills the unit and the second one scatters into 16 units"
+		n1 == 1024
+		n2 == 16 * 1024
+		buf.unitChain().length() == 17
+
+		when: "read in the rest and then nothing"
+		def n3 = 0L
+		while (buf.length() < bytes.length)
+			n3 += buf.readIn(pipe.source(), 20000L - buf.length())
+		def units = buf.unitChain().length()
+		def n4 = buf.readIn(pipe.source(), Long.MAX_VALUE)
+		then: "the units left empty are released"
+		n3 == 20000 - n1 - n2
+		n4 == 0L
+		buf.unitChain().length() == units
+		buf.read(Codec.byteArray()) == bytes
+
+		cleanup:
+		pipe.sink().close()
+		pipe.source().close()
+	}
+
+	def "indexed access should locate units of a long unit chain"() {
+		given: "a buffer of 8-byte units holding 200 bytes"
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 8])
+		def bytes = createBytes(200)
+		def buf = bf.create()
+		buf.write(bytes, Codec.byteArray())
+		def expected = bytes as List
+
+		expect:
+		buf.unitChain().size() == 25
+		matches(buf, expected)
+
+		when: "prepend bytes and overwrite an int across units"
+		buf.prepend([-1, -2, -3] as byte[], Codec.byteArray())
+		expected = [-1, -2, -3] + expected
+		buf.set(101, 0x01020304, IntCodec.bigEndian())
+		expected[101..104] = [1, 2, 3, 4]
+		then:
+		matches(buf, expected)
+		buf.get(101, IntCodec.bigEndian()) == 0x01020304
+
+		when: "split off the head and cut the tail"
+		def head = buf.split(50)
+		buf.setLength(120)
+		then:
+		matches(head, expected[0..<50])
+		matches(buf, expected[50..<170])
+
+		when: "consume and compact"
+		buf.read(60, Codec.byteArray())
+		buf.compact()
+		then:
+		matches(buf, expected[110..<170])
+
+		when: "index out of the bounds"
+		buf.byteAt(60)
+		then:
+		thrown(IndexOutOfBoundsException)
+
+		cleanup:
+		head?.close()
+		buf?.close()
+	}
+
+	private static boolean matches(IBuffer buf, List expected) {
+		if (buf.length() != expected.size())
+			return false
+		for (int i = 0; i < expected.size(); ++i) {
+			if (buf.byteAt(i) != (byte) expected[i])
+				return false
+		}
+		for (int i = 0; i + 4 <= expected.size(); i += 3) {
+			def v = ((expected[i] & 0xFF) << 24) | ((expected[i + 1] & 0xFF) << 16) | ((expected[i + 2] & 0xFF) << 8) | (expected[i + 3] & 0xFF)
+			if (buf.get(i, IntCodec.bigEndian()) != v)
+				return false
+		}
+		return true
+	}
+
+	def "stream vbyte codecs should round-trip int and long arrays"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 16])
+		def random = new Random(7)
+		def ints = new int[1001]
+		def longs = new long[1001]
+		def ids = new int[1001]
+		for (int i = 0; i < 1001; ++i) {
+			ints[i] = random.nextInt() >> random.nextInt(32)
+			longs[i] = random.nextLong() >> random.nextInt(64)
+			ids[i] = 1000000 + i * 3
+		}
+
+		when:
+		def buf = bf.create()
+		buf.write(ints, intCodec).write(longs, longCodec)
+		buf.prepend(ints[0..<5] as int[], intCodec)
+		def head = buf.get(0, intCodec)
+		then:
+		head == ints[0..<5] as int[]
+		buf.read(intCodec) == head
+		buf.get(buf.position(), intCodec) == ints
+		buf.read(intCodec) == ints
+		buf.read(longCodec) == longs
+		buf.isEmpty()
+
+		when: "sorted ids with deltas"
+		buf.write(ids, IntStreamVByte.DELTA)
+		def length = buf.remaining()
+		then: "they take 1 control byte and 1 data byte per 4 ids after the first one"
+		length < ids.length * 2
+		buf.get(buf.position(), length, IntStreamVByte.DELTA) == ids
+		buf.read(length, IntStreamVByte.DELTA) == ids
+
+		cleanup:
+		buf?.close()
+
+		where:
+		intCodec                     | longCodec
+		IntStreamVByte.INST          | LongStreamVByte.INST
+		IntStreamVByte.ZIGZAG        | LongStreamVByte.ZIGZAG
+		IntStreamVByte.DELTA         | LongStreamVByte.DELTA
+		IntStreamVByte.DELTA_ZIGZAG  | LongStreamVByte.DELTA_ZIGZAG
+	}
+
+	def "stream vbyte codecs should reject a count the remaining bytes cannot hold"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 16])
+		def buf = bf.create()
+		// a count of Integer.MAX_VALUE followed by a few bytes only
+		buf.write([0xFF, 0xFF, 0xFF, 0xFF, 0x07, 0, 1, 2] as byte[], Codec.byteArray())
+
+		when:
+		buf.get(0, codec)
+		then:
+		thrown(IndexOutOfBoundsException)
+
+		when:
+		buf.read(codec)
+		then:
+		thrown(BufferUnderflowException)
+
+		cleanup:
+		buf.close()
+
+		where:
+		codec << [IntStreamVByte.INST, LongStreamVByte.INST]
+	}
+
+	def "string codecs should encode and decode text within a unit directly"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 256])
+		def buf = bf.create()
+		buf.reserveHead(64)
+		def bytes = text.getBytes(charset)
+
+		when:
+		buf.write(text, codec)
+		buf.prepend(text.substring(0, 2), codec)
+		def headLength = text.substring(0, 2).getBytes(charset).length
+		then:
+		buf.length() == headLength + bytes.length
+		buf.get(headLength, bytes.length, Codec.byteArray()) == bytes
+		buf.get(headLength, codec) == text
+		buf.get(0, headLength, codec) == text.substring(0, 2)
+		buf.read(headLength, codec) == text.substring(0, 2)
+		buf.read(codec) == text
+		buf.isEmpty()
+
+		cleanup:
+		buf?.close()
+
+		where:
+		charset      | codec                 | text
+		"US-ASCII"   | StringCodec.US_ASCII  | "GET /index.html HTTP/1.1"
+		"ISO-8859-1" | StringCodec.ISO_8859_1 | "caf\u00e9 cr\u00e8me \u00ff"
+		"UTF-8"      | StringCodec.UTF_8     | "h\u00e9llo \u4e16\u754c \ud83d\ude00!"
+	}
+
+	def "decimal codecs should format and parse numbers across units"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def buf = bf.create()
+
+		when:
+		buf.write(0, IntDecimal.INST)
+		buf.write((byte) 32)
+		buf.write(Integer.MIN_VALUE, IntDecimal.INST)
+		buf.write((byte) 32)
+		buf.write(Long.MIN_VALUE, LongDecimal.INST)
+		buf.write((byte) 32)
+		buf.write(Long.MAX_VALUE, LongDecimal.INST)
+		buf.write((byte) 32)
+		buf.write(-12345L, LongDecimal.scale(2))
+		buf.write((byte) 32)
+		buf.write(5L, LongDecimal.scale(3))
+		buf.prepend(-42, IntDecimal.INST)
+		def text = "-420 -2147483648 -9223372036854775808 9223372036854775807 -123.45 0.005"
+		then:
+		new String(buf.get(0, buf.length(), Codec.byteArray()), "US-ASCII") == text
+		buf.get(5, IntDecimal.INST) == Integer.MIN_VALUE
+		buf.read(IntDecimal.INST) == -420
+		buf.read() == (byte) 32
+		buf.read(LongDecimal.INST) == Integer.MIN_VALUE
+		buf.read() == (byte) 32
+		buf.read(LongDecimal.INST) == Long.MIN_VALUE
+		buf.read() == (byte) 32
+		buf.read(LongDecimal.INST) == Long.MAX_VALUE
+		buf.read() == (byte) 32
+		buf.read(LongDecimal.scale(2)) == -12345L
+		buf.read() == (byte) 32
+		buf.read(LongDecimal.scale(3)) == 5L
+		buf.isEmpty()
+
+		when:
+		buf.set(0, -987, IntDecimal.INST)
+		then:
+		new String(buf.get(0, buf.length(), Codec.byteArray()), "US-ASCII") == "-987 -2147483648 -9223372036854775808 9223372036854775807 -123.45 0.005"
+
+		cleanup:
+		buf?.close()
+	}
+
+	def "decimal codecs should reject malformed and out-of-range numbers"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def buf = bf.create()
+		buf.write(text.bytes, Codec.byteArray())
+
+		when:
+		buf.read(codec)
+		then:
+		thrown(exception)
+
+		cleanup:
+		buf?.close()
+
+		where:
+		text                   | codec                 | exception
+		"2147483648"           | IntDecimal.INST       | NumberFormatException
+		"9223372036854775808"  | LongDecimal.INST      | NumberFormatException
+		"-9223372036854775809" | LongDecimal.INST      | NumberFormatException
+		"-x"                   | LongDecimal.INST      | NumberFormatException
+		"1.234"                | LongDecimal.scale(2)  | NumberFormatException
+		"92233720368547758.08" | LongDecimal.scale(2)  | NumberFormatException
+		"-"                    | LongDecimal.INST      | java.nio.BufferUnderflowException
+	}
+
+	def "decimal codecs should stop before the first byte that is not part of the number"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def buf = bf.create()
+		buf.write("12.5;-7.\r\n".bytes, Codec.byteArray())
+
+		expect:
+		buf.get(0, LongDecimal.INST) == 12L
+		buf.read(LongDecimal.scale(3)) == 12500L
+		buf.read() == (byte) 59
+		buf.read(LongDecimal.scale(1)) == -70L
+		buf.read() == (byte) 13
+
+		cleanup:
+		buf?.close()
+	}
+
+	def "flyweights should access fields and groups in place across units"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def orderBuilder = Schema.builder()
+		def id = orderBuilder.longField(LongCodec.bigEndian())
+		def side = orderBuilder.byteField()
+		def symbol = orderBuilder.bytesField(6)
+		def price = orderBuilder.doubleField(DoubleCodec.littleEndian())
+		def legBuilder = Schema.builder()
+		def qty = legBuilder.intField(IntCodec.littleEndian())
+		def ratio = legBuilder.shortField(ShortCodec.bigEndian())
+		def leg = legBuilder.build()
+		def legs = orderBuilder.group(ShortCodec.bigEndian(), leg)
+		def order = orderBuilder.build()
+		def buf = bf.create()
+		def msg = new Flyweight(order)
+		def elem = new Flyweight(leg)
+
+		when:
+		buf.write((byte) 0x7F)
+		msg.append(buf)
+		id.set(msg, 0x0102030405060708L)
+		side.set(msg, (byte) 1)
+		symbol.set(msg, "JRUYI!".bytes, 0)
+		price.set(msg, 12.5d)
+		legs.append(msg, 2)
+		for (int i = 0; i < 2; ++i) {
+			legs.element(msg, i, elem)
+			qty.set(elem, 100 * (i + 1))
+			ratio.set(elem, (short) -(i + 1))
+		}
+		def bytes = new byte[6]
+
+		then:
+		order.blockLength() == 23
+		!order.isFixed()
+		msg.offset() == 1
+		msg.length() == 23 + 2 + 2 * 6
+		buf.size() == 1 + msg.length()
+		buf.get(1, LongCodec.bigEndian()) == 0x0102030405060708L
+
+		when:
+		def view = new Flyweight(order).wrap(buf, 1)
+		symbol.get(view, bytes, 0)
+		then:
+		id.get(view) == 0x0102030405060708L
+		side.get(view) == (byte) 1
+		new String(bytes) == "JRUYI!"
+		price.get(view) == 12.5d
+		legs.count(view) == 2
+		qty.get(legs.element(view, 1, elem)) == 200
+		ratio.get(elem) == (short) -2
+		qty.get(legs.element(view, 0, elem)) == 100
+
+		when:
+		legs.element(view, 2, elem)
+		then:
+		thrown(IndexOutOfBoundsException)
+
+		when:
+		orderBuilder.intField(IntCodec.bigEndian())
+		then:
+		thrown(IllegalStateException)
+
+		cleanup:
+		buf?.close()
+	}
+
+	def "buffer streams should be interchangeable with the JDK data streams"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def buf = bf.create()
+		def out = buf.getOutputStream() as DataOutput
+		def bytes = new ByteArrayOutputStream()
+		def jdk = new DataOutputStream(bytes)
+		def write = { DataOutput o ->
+			o.writeBoolean(true)
+			o.writeByte(-2)
+			o.writeShort(0xFEDC)
+			o.writeChar(0x4E16)
+			o.writeInt(0x01020304)
+			o.writeLong(Long.MIN_VALUE + 5)
+			o.writeFloat(1.5f)
+			o.writeDouble(-0.25d)
+			o.writeBytes("ab")
+			o.writeChars("cd")
+			o.writeUTF("h\u00e9\u0000\u4e16\ud83d\ude00")
+			o.writeBytes("line1\r\nline2\rline3")
+		}
+
+		when:
+		write(out)
+		write(jdk)
+		then:
+		buf.get(0, buf.length(), Codec.byteArray()) == bytes.toByteArray()
+
+		when:
+		def inp = buf.getInputStream() as DataInput
+		then:
+		inp.readBoolean()
+		inp.readByte() == (byte) -2
+		inp.readUnsignedShort() == 0xFEDC
+		inp.readChar() == '\u4e16' as char
+		inp.readInt() == 0x01020304
+		inp.readLong() == Long.MIN_VALUE + 5
+		inp.readFloat() == 1.5f
+		inp.readDouble() == -0.25d
+		inp.readUnsignedByte() == 0x61
+		inp.skipBytes(1) == 1
+		inp.readChar() == 'c' as char
+		inp.readChar() == 'd' as char
+		inp.readUTF() == "h\u00e9\u0000\u4e16\ud83d\ude00"
+		inp.readLine() == "line1"
+		inp.readLine() == "line2"
+		inp.readLine() == "line3"
+		inp.readLine() == null
+
+		when:
+		inp.readInt()
+		then:
+		thrown(EOFException)
+
+		cleanup:
+		buf?.close()
+	}
+
+	def "byte buffer views should cover a range across units without copying"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def buf = bf.create()
+		def bytes = createBytes(40)
+		buf.write(bytes, Codec.byteArray())
+		def bba = new ByteBufferArray()
+
+		when:
+		def n = buf.getByteBuffers(5, 20, bba)
+		def views = bba.array()
+		def digest = java.security.MessageDigest.getInstance("SHA-256")
+		for (int i = 0; i < n; ++i)
+			digest.update(views[i])
+		def expected = java.security.MessageDigest.getInstance("SHA-256")
+		expected.update(bytes, 5, 20)
+		then:
+		n == 3
+		bba.size() == 3
+		views[0].isReadOnly()
+		digest.digest() == expected.digest()
+
+		when:
+		bba.clear()
+		n = buf.getByteBuffers(9, 9, bba)
+		then:
+		n == 1
+		bba.array()[0].remaining() == 9
+		bba.array()[0].get() == (byte) 9
+
+		when:
+		buf.getByteBuffers(35, 6, bba)
+		then:
+		thrown(IndexOutOfBoundsException)
+
+		cleanup:
+		buf?.close()
+	}
+
+	def "checksums over a range should equal those over a copy of the bytes"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 13, unitType: unitType])
+		def bytes = createBytes(300)
+		def buf = bf.create()
+		buf.write(bytes, Codec.byteArray())
+
+		expect:
+		for (int[] range : [[0, 300], [5, 0], [7, 100], [13, 26], [250, 50]]) {
+			def crc = new java.util.zip.CRC32()
+			crc.update(bytes, range[0], range[1])
+			def xx = new XxHash64(7L)
+			xx.update(bytes, range[0], range[1])
+			def crc32c = new Crc32c()
+			crc32c.update(bytes, range[0], range[1])
+			assert buf.checksum(range[0], range[1], new java.util.zip.CRC32()).getValue() == crc.getValue()
+			assert buf.checksum(range[0], range[1], new Crc32c()).getValue() == crc32c.getValue()
+			assert buf.checksum(range[0], range[1], new XxHash64(7L)).getValue() == xx.getValue()
+		}
+		buf.position() == 0
+
+		cleanup:
+		buf?.close()
+
+		where:
+		unitType << ["heap", "direct"]
+	}
+
+	def "CRC32C and xxHash64 should match the reference values"() {
+		given:
+		def crc = new Crc32c()
+		crc.update("123456789".bytes)
+		def xx = new XxHash64()
+		def empty = xx.getValue()
+		xx.update("Nobody inspects the spammish repetition".bytes)
+
+		expect:
+		crc.getValue() == 0xE3069283L
+		empty == 0xEF46DB3751D8E999L
+		xx.getValue() == 0xFBCEA83C8A378BF1L
+	}
+
+	def "non-native array codecs should swap bytes in bulk across units"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 1027, unitType: unitType])
+		def n = 1500
+		def doubles = new double[n]
+		def floats = new float[n]
+		def longs = new long[n]
+		def ints = new int[n]
+		def shorts = new short[n]
+		def random = new Random(11)
+		for (int i = 0; i < n; ++i) {
+			longs[i] = random.nextLong()
+			ints[i] = random.nextInt()
+			shorts[i] = (short) random.nextInt()
+			doubles[i] = random.nextDouble() * 1e6 - 5e5
+			floats[i] = random.nextFloat() - 0.5f
+		}
+		def expected = ByteBuffer.allocate(n * 26).order(ByteOrder.BIG_ENDIAN)
+		expected.asDoubleBuffer().put(doubles)
+		expected.position(n * 8)
+		expected.asFloatBuffer().put(floats)
+		expected.position(n * 12)
+		expected.asLongBuffer().put(longs)
+		expected.position(n * 20)
+		expected.asIntBuffer().put(ints)
+		expected.position(n * 24)
+		expected.asShortBuffer().put(shorts)
+		def buf = bf.create()
+		buf.write((byte) 1)
+
+		when:
+		buf.write(doubles, DoubleArrayCodec.bigEndian())
+		buf.write(floats, FloatArrayCodec.bigEndian())
+		buf.write(longs, LongArrayCodec.bigEndian())
+		buf.write(ints, IntArrayCodec.bigEndian())
+		buf.write(shorts, ShortArrayCodec.bigEndian())
+		buf.set(1, doubles, 0, n, DoubleArrayCodec.bigEndian())
+		buf.prepend(ints, 0, 3, IntArrayCodec.bigEndian())
+		then:
+		buf.get(13, n * 26, Codec.byteArray()) == expected.array()
+		buf.get(13, n * 8, DoubleArrayCodec.bigEndian()) == doubles
+		buf.get(13 + n * 8, n * 4, FloatArrayCodec.bigEndian()) == floats
+		buf.read(3 * 4, IntArrayCodec.bigEndian()) == Arrays.copyOf(ints, 3)
+		buf.read() == (byte) 1
+		buf.read(n * 8, DoubleArrayCodec.bigEndian()) == doubles
+		buf.read(n * 4, FloatArrayCodec.bigEndian()) == floats
+		buf.read(n * 8, LongArrayCodec.bigEndian()) == longs
+		buf.read(n * 4, IntArrayCodec.bigEndian()) == ints
+		buf.read(n * 2, ShortArrayCodec.bigEndian()) == shorts
+
+		cleanup:
+		buf?.close()
+
+		where:
+		unitType << ["heap", "direct"]
+	}
+
+	def "retained buffers should share content and give units back after the last release"() {
+		given: "a buffer with unitCapacity = 64 holding 40 bytes"
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 64])
+		def buf = bf.create()
+		def bytes = createBytes(40)
+		buf.write(bytes, Codec.byteArray())
+
+		when: "retain 2 buffers and consume them"
+		def r1 = buf.retain()
+		def r2 = buf.retain()
+		then: "all of them have the same content with their own positions"
+		r1.read(Codec.byteArray()) == bytes
+		r2.read(20, Codec.byteArray()) == createBytes(20)
+		buf.remaining() == 40
+		r1.unitChain().firstUnit().capacity() == 64
+
+		when: "release all but one"
+		buf.close()
+		r1.release()
+		then: "the shared unit is still in use"
+		bf.usage() == 64L
+
+		when: "release the last one"
+		r2.release()
+		then: "the shared unit goes back to the factory"
+		bf.usage() == 0L
+	}
+
+	def "retained buffers should be read-only and write to units of their own"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 64, unitType: unitType])
+		def buf = bf.create()
+		def bytes = createBytes(40)
+		buf.write(bytes, Codec.byteArray())
+		def r1 = buf.retain()
+		def r2 = buf.retain()
+
+		when: "modify the shared content"
+		r1.set(0, 1 as byte)
+		then:
+		thrown(ReadOnlyBufferException)
+
+		when: "prepend a header to and append a trailer to one retained buffer"
+		r1.prepend(0x11223344, IntCodec.bigEndian())
+		r1.write(0x55667788, IntCodec.bigEndian())
+		then: "the others are not affected"
+		r1.size() == 48
+		r1.get(0, IntCodec.bigEndian()) == 0x11223344
+		r1.get(4, 40, Codec.byteArray()) == bytes
+		r1.get(44, IntCodec.bigEndian()) == 0x55667788
+		r2.size() == 40
+		r2.get(0, 40, Codec.byteArray()) == bytes
+		buf.size() == 40
+
+		when:
+		buf.close()
+		r1.close()
+		r2.close()
+		then:
+		bf.usage() == 0L
+
+		where:
+		unitType << ["heap", "direct"]
+	}
+
+	def "buffers garbage collected without being closed should be reported"() {
+		given: "a buffer factory with paranoid leak detection"
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 64, leakDetection: "paranoid"])
+		def detector = bf.leakDetector()
+
+		when: "create a buffer and close it, then create another one and drop it"
+		bf.create().close()
+		createAndDrop(bf)
+		for (int i = 0; i < 50 && detector.count() < 1; ++i) {
+			System.gc()
+			Thread.sleep(20)
+		}
+		then: "only the dropped one is reported with where it was created"
+		detector.count() == 1
+		detector.report().contains("createAndDrop")
+	}
+
+	def "a mapped file region should be readable and written out as is"() {
+		given: "a file of 300 bytes"
+		def bytes = createBytes(300)
+		def file = File.createTempFile("jruyi", ".map")
+		file.deleteOnExit()
+		file.bytes = bytes
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 64])
+
+		when: "map 200 bytes from position 50 and append an int"
+		def fc = FileChannel.open(file.toPath(), StandardOpenOption.READ)
+		def buf = bf.map(fc, 50, 200)
+		fc.close()
+		buf.write(0x12345678, IntCodec.bigEndian())
+		then:
+		buf.size() == 204
+		buf.get(0, 200, Codec.byteArray()) == Arrays.copyOfRange(bytes, 50, 250)
+		buf.get(200, IntCodec.bigEndian()) == 0x12345678
+
+		when: "modify the mapped content"
+		buf.set(0, 1 as byte)
+		then:
+		thrown(ReadOnlyBufferException)
+
+		when: "write the buffer out to another file"
+		def out = File.createTempFile("jruyi", ".out")
+		out.deleteOnExit()
+		def oc = FileChannel.open(out.toPath(), StandardOpenOption.WRITE)
+		while (!buf.isEmpty())
+			buf.writeOut(oc)
+		oc.close()
+		buf.close()
+		then:
+		out.bytes == (Arrays.copyOfRange(bytes, 50, 250) as List) + [0x12, 0x34, 0x56, 0x78] as byte[]
+	}
+
+	def "wrapped byte arrays should be read-only, written out as is and never pooled"() {
+		given:
+		def bytes = createBytes(100)
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 64])
+
+		when: "wrap a region and append an int"
+		def buf = bf.wrap(bytes, 10, 50)
+		buf.write(0x12345678, IntCodec.bigEndian())
+		then:
+		buf.size() == 54
+		buf.get(0, 50, Codec.byteArray()) == Arrays.copyOfRange(bytes, 10, 60)
+		buf.get(50, IntCodec.bigEndian()) == 0x12345678
+
+		when: "modify the wrapped content"
+		buf.set(0, 1 as byte)
+		then:
+		thrown(ReadOnlyBufferException)
+
+		when: "wrap several arrays and write them out"
+		def a = Arrays.copyOfRange(bytes, 0, 30)
+		def b = Arrays.copyOfRange(bytes, 30, 100)
+		def footprint = bf.footprint()
+		def wrapped = bf.wrap([a, new byte[0], b] as byte[][])
+		def baos = new ByteArrayOutputStream()
+		def channel = Channels.newChannel(baos)
+		while (!wrapped.isEmpty())
+			wrapped.writeOut(channel)
+		wrapped.close()
+		buf.close()
+		then:
+		baos.toByteArray() == bytes
+		bf.footprint() == footprint
+		bf.usage() == 0L
+	}
+
+	def "word-at-a-time search and comparison should agree with a byte-by-byte scan across unit boundaries"() {
+		given: "random bytes over a small alphabet in units of 13 bytes"
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 13])
+		def random = new Random(20161017L)
+		def bytes = new byte[300]
+		for (int i = 0; i < bytes.length; ++i)
+			bytes[i] = (byte) (random.nextInt(4) - 2)
+		def buf = bf.create()
+		buf.write(bytes, Codec.byteArray())
+
+		expect:
+		for (int b = -2; b < 2; ++b) {
+			for (int from = 0; from < bytes.length; from += 7)
+				assert buf.indexOf((byte) b, from) == naiveIndexOf(bytes, [b] as byte[], from)
+		}
+		for (int n = 1; n < 20; ++n) {
+			def pattern = Arrays.copyOfRange(bytes, 280 - n, 280)
+			assert buf.indexOf(pattern) == naiveIndexOf(bytes, pattern, 0)
+			pattern[n - 1] = (byte) 7
+			assert buf.indexOf(pattern) == -1
+		}
+		for (int n = 0; n <= bytes.length; n += 11) {
+			assert buf.startsWith(Arrays.copyOf(bytes, n))
+			assert buf.endsWith(Arrays.copyOfRange(bytes, bytes.length - n, bytes.length))
+		}
+		!buf.startsWith(((Arrays.copyOf(bytes, 100) as List) + [7]) as byte[])
+		!buf.endsWith(([7] + (Arrays.copyOfRange(bytes, 200, 300) as List)) as byte[])
+
+		when: "compare to a copy in units of 17 bytes with one byte changed"
+		def bf2 = new BufferFactory()
+		bf2.activate([unitCapacity: 17])
+		def other = bytes.clone()
+		other[150] = (byte) (other[150] + 1)
+		def buf2 = bf2.create()
+		buf2.write(other, Codec.byteArray())
+		then:
+		buf.compareTo(buf2) == -1
+		buf2.compareTo(buf) == 1
+		buf.compareTo(buf.duplicate()) == 0
+	}
+
+	def "multi-pattern search should resume across writes and units"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 8])
+		def matcher = new ByteAhoCorasick("\r\n".bytes, "\n\n".bytes, "--end--".bytes)
+		def state = new ByteAhoCorasick.State()
+		def buf = bf.create()
+
+		when: "search a partial delimiter"
+		buf.write("header: value\r".bytes, Codec.byteArray())
+		def n = buf.indexOf(matcher, state, 0)
+		then:
+		n == -1
+
+		when: "resume after the rest arrives"
+		def scanned = buf.size()
+		buf.write("\nbody--en".bytes, Codec.byteArray())
+		n = buf.indexOf(matcher, state, scanned)
+		then:
+		n == 13
+		state.pattern() == 0
+
+		when: "resume from the end of the match"
+		n = buf.indexOf(matcher, state, n + matcher.length(state.pattern()))
+		then:
+		n == -1
+
+		when:
+		scanned = buf.size()
+		buf.write("d-- tail".bytes, Codec.byteArray())
+		n = buf.indexOf(matcher, state, scanned)
+		then:
+		n == 19
+		state.pattern() == 2
+		buf.indexOf(matcher) == 13
+	}
+
+	def "horspool search should find long patterns across units"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def text = "--xx--boundary-12345---boundary-12345678--boundary-123456789--"
+		def buf = bf.create()
+		buf.write(text.bytes, Codec.byteArray())
+		def pattern = new ByteHorspool("--boundary-123456789".bytes)
+
+		expect:
+		buf.indexOf(pattern) == text.indexOf("--boundary-123456789")
+		buf.indexOf(new ByteHorspool("boundary-1".bytes), 7) == text.indexOf("boundary-1", 7)
+		buf.indexOf(new ByteHorspool("boundary-0".bytes)) == -1
+		buf.indexOf(new ByteHorspool("--".bytes), 60) == 60
+		new ByteHorspool("b-1".bytes).findIn("ab-1b-1".bytes, 2, 5) == 4
+	}
+
+	private static int naiveIndexOf(byte[] bytes, byte[] pattern, int fromIndex) {
+		for (int i = fromIndex; i <= bytes.length - pattern.length; ++i) {
+			if (Arrays.equals(Arrays.copyOfRange(bytes, i, i + pattern.length), pattern))
+				return i
+		}
+		return -1
+	}
+
+	private static void createAndDrop(BufferFactory bf) {
+		bf.create().write(1, IntCodec.bigEndian())
+	}
+
 	private static def createBytes(int length) {
 		byte[] bytes = new byte[length];
 		for (int i = 0; i < length; ++i)
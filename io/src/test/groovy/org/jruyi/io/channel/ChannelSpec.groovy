@@ -0,0 +1,66 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.channel
+
+import org.jruyi.io.buffer.BufferFactory
+import spock.lang.Specification
+
+class ChannelSpec extends Specification {
+
+	def "closing a session should close the session resources deposited but no other closeable"() {
+		given:
+		def channel = new TestChannel(Stub(IChannelService), null, null)
+		def resource = Mock(ISessionResource)
+		def shared = Mock(AutoCloseable)
+		def storage = Channel.getDeclaredField("m_storage")
+		storage.accessible = true
+		storage.set(channel, new IdentityHashMap<>())
+		channel.deposit("resource", resource)
+		channel.deposit("shared", shared)
+
+		when:
+		def releaseStorage = Channel.getDeclaredMethod("releaseStorage")
+		releaseStorage.accessible = true
+		releaseStorage.invoke(channel)
+
+		then:
+		1 * resource.close()
+		0 * shared.close()
+		channel.inquiry("resource") == null
+		channel.inquiry("shared") == null
+	}
+
+	def "a parked read should resume with no recheck timer if the budget is available"() {
+		given:
+		def selector = Mock(ISelector)
+		def admin = Stub(IChannelAdmin)
+		admin.designateSelector(1) >> selector
+		def service = Stub(IChannelService)
+		service.generateId() >> 1L
+		service.getChannelAdmin() >> admin
+		def channel = new TestChannel(service, null, null)
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def resumer = new Channel.ReadResumer(channel, bf)
+
+		when:
+		resumer.await()
+
+		then:
+		1 * selector.write(_)
+		0 * selector.createTimer(_)
+		resumer.m_timer == null
+	}
+}
@@ -0,0 +1,193 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.channel
+
+import org.jruyi.common.ICloseable
+import org.jruyi.io.IFilter
+import org.jruyi.io.file.FileRegion
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.channels.*
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+
+class FileRegionSpec extends Specification {
+
+	def "a file region should be transferred in parts as the target accepts"() {
+		given:
+		def file = tempFile(1000)
+		def fc = FileChannel.open(file, StandardOpenOption.READ)
+		def region = new FileRegion(fc, 100L, 800L)
+		def out = new ByteArrayOutputStream()
+		def target = new LimitedChannel(out, 300)
+
+		when:
+		def n = region.transferTo(target)
+
+		then:
+		n == 300L
+		region.position() == 400L
+		region.remaining() == 500L
+		!region.isEmpty()
+
+		when:
+		while (!region.isEmpty())
+			region.transferTo(target)
+
+		then:
+		region.position() == 900L
+		region.remaining() == 0L
+		out.toByteArray() == Arrays.copyOfRange(Files.readAllBytes(file), 100, 900)
+
+		when:
+		region.close()
+
+		then:
+		!fc.isOpen()
+
+		cleanup:
+		fc.close()
+		Files.delete(file)
+	}
+
+	def "closing a file region should keep the file channel open if closeChannel is false"() {
+		given:
+		def file = tempFile(10)
+		def fc = FileChannel.open(file, StandardOpenOption.READ)
+		def region = new FileRegion(fc, 0L, 10L, false)
+
+		when:
+		region.transferTo(new LimitedChannel(new ByteArrayOutputStream(), 10))
+		region.close()
+
+		then:
+		region.isEmpty()
+		fc.isOpen()
+
+		cleanup:
+		fc.close()
+		Files.delete(file)
+	}
+
+	def "a file region should fail if the file ends before the region"() {
+		given:
+		def file = tempFile(10)
+		def fc = FileChannel.open(file, StandardOpenOption.READ)
+		def region = new FileRegion(fc, 0L, 20L)
+		def target = new LimitedChannel(new ByteArrayOutputStream(), 100)
+
+		when:
+		region.transferTo(target)
+		region.transferTo(target)
+
+		then:
+		thrown(EOFException)
+		region.position() == 10L
+
+		cleanup:
+		fc.close()
+		Files.delete(file)
+	}
+
+	def "closing a session should close the file region being sent and the queued messages"() {
+		given:
+		def file = tempFile(1000)
+		def fc = FileChannel.open(file, StandardOpenOption.READ)
+		def queued = Mock(ICloseable)
+		def selector = Selector.open()
+		def target = new LimitedChannel(new ByteArrayOutputStream(), 300)
+		def channel = new TestChannel(Stub(IChannelService) {
+			generateId() >> 1L
+			getChannelAdmin() >> Stub(IChannelAdmin)
+		}, null, target)
+		def pipe = Pipe.open()
+		pipe.sink().configureBlocking(false)
+		def key = pipe.sink().register(selector, 0)
+		def writeThread = new Channel.WriteThread(channel)
+		setField(channel, "m_selectionKey", key)
+		setField(channel, "m_writeThread", writeThread)
+		IFilter<?, ?>[] filters = new IFilter<?, ?>[0]
+
+		when:
+		writeThread.run(new FileRegion(fc, 0L, 1000L), filters, 0)
+		writeThread.run(queued, filters, 0)
+
+		then:
+		fc.isOpen()
+		key.interestOps() == SelectionKey.OP_WRITE
+		0 * queued.close()
+
+		when:
+		writeThread.run(Channel.WriteThread.EOF, null, 0)
+
+		then:
+		!fc.isOpen()
+		1 * queued.close()
+		channel.onCloseCalled
+
+		cleanup:
+		selector.close()
+		pipe.sink().close()
+		pipe.source().close()
+		fc.close()
+		Files.delete(file)
+	}
+
+	private static void setField(Channel channel, String name, Object value) {
+		def field = Channel.getDeclaredField(name)
+		field.accessible = true
+		field.set(channel, value)
+	}
+
+	private static tempFile(int size) {
+		def file = Files.createTempFile("region", ".dat")
+		def bytes = new byte[size]
+		for (int i = 0; i < size; ++i)
+			bytes[i] = (byte) i
+		Files.write(file, bytes)
+		return file
+	}
+
+	// accepts up to a given number of bytes per write
+	static class LimitedChannel implements WritableByteChannel {
+
+		private final ByteArrayOutputStream m_out
+		private final int m_limit
+
+		LimitedChannel(ByteArrayOutputStream out, int limit) {
+			m_out = out
+			m_limit = limit
+		}
+
+		@Override
+		int write(ByteBuffer src) {
+			def n = Math.min(src.remaining(), m_limit)
+			def bytes = new byte[n]
+			src.get(bytes)
+			m_out.write(bytes)
+			return n
+		}
+
+		@Override
+		boolean isOpen() {
+			return true
+		}
+
+		@Override
+		void close() {
+		}
+	}
+}
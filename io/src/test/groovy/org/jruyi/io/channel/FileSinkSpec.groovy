@@ -0,0 +1,164 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.channel
+
+import org.jruyi.io.file.FileSink
+import org.jruyi.io.file.ISinkListener
+import spock.lang.Specification
+
+import java.nio.ByteBuffer
+import java.nio.channels.ClosedChannelException
+import java.nio.channels.FileChannel
+import java.nio.channels.Pipe
+import java.nio.file.Files
+import java.nio.file.StandardOpenOption
+
+class FileSinkSpec extends Specification {
+
+	def "arrival bytes should be moved into the file until the sink completes"() {
+		given:
+		def data = bytes(1000)
+		def pipe = openPipe(data)
+		def file = Files.createTempFile("sink", ".dat")
+		def fc = FileChannel.open(file, StandardOpenOption.READ, StandardOpenOption.WRITE)
+		def listener = Mock(ISinkListener)
+		def channel = new TestChannel(stubService(), pipe.source(), null)
+		def sink = new FileSink(fc, 10L, 600L, listener)
+
+		when:
+		channel.sink(sink)
+		channel.onRead()
+
+		then:
+		1 * listener.onSinkCompleted(channel, sink)
+		0 * listener.onSinkFailed(*_)
+		sink.position() == 610L
+		sink.isEmpty()
+		Arrays.copyOfRange(Files.readAllBytes(file), 10, 610) == Arrays.copyOfRange(data, 0, 600)
+		pipe.source().read(ByteBuffer.allocate(1000)) == 400
+		!channel.isClosed()
+
+		cleanup:
+		pipe.source().close()
+		pipe.sink().close()
+		fc.close()
+		Files.delete(file)
+	}
+
+	def "a sink should wait for more bytes if none has arrived"() {
+		given:
+		def pipe = openPipe(new byte[0])
+		def file = Files.createTempFile("sink", ".dat")
+		def fc = FileChannel.open(file, StandardOpenOption.WRITE)
+		def listener = Mock(ISinkListener)
+		def channel = new TestChannel(stubService(), pipe.source(), null)
+		def sink = new FileSink(fc, 0L, 100L, listener)
+
+		when:
+		channel.sink(sink)
+		channel.onRead()
+
+		then:
+		0 * listener._
+		sink.remaining() == 100L
+		!channel.isClosed()
+
+		when:
+		def probe = sink.m_probe
+		channel.onRead()
+
+		then:
+		0 * listener._
+		probe != null
+		sink.m_probe.is(probe)
+		!channel.isClosed()
+
+		cleanup:
+		pipe.source().close()
+		pipe.sink().close()
+		fc.close()
+		Files.delete(file)
+	}
+
+	def "a sink should fail if the session reaches EOF before the sink completes"() {
+		given:
+		def pipe = openPipe(bytes(100))
+		pipe.sink().close()
+		def file = Files.createTempFile("sink", ".dat")
+		def fc = FileChannel.open(file, StandardOpenOption.WRITE)
+		def listener = Mock(ISinkListener)
+		def channel = new TestChannel(stubService(), pipe.source(), null)
+		def sink = new FileSink(fc, 0L, 600L, listener)
+
+		when:
+		channel.sink(sink)
+		channel.onRead()
+
+		then:
+		1 * listener.onSinkFailed(channel, sink, { it instanceof EOFException })
+		0 * listener.onSinkCompleted(*_)
+		sink.position() == 100L
+		channel.isClosed()
+		channel.onCloseCalled
+
+		cleanup:
+		pipe.source().close()
+		fc.close()
+		Files.delete(file)
+	}
+
+	def "a sink should fail if the session is closed before the sink completes"() {
+		given:
+		def file = Files.createTempFile("sink", ".dat")
+		def fc = FileChannel.open(file, StandardOpenOption.WRITE)
+		def listener = Mock(ISinkListener)
+		def channel = new TestChannel(stubService(), null, null)
+		def sink = new FileSink(fc, 0L, 600L, listener)
+
+		when:
+		channel.sink(sink)
+		channel.close()
+
+		then:
+		1 * listener.onSinkFailed(channel, sink, { it instanceof ClosedChannelException })
+		0 * listener.onSinkCompleted(*_)
+
+		cleanup:
+		fc.close()
+		Files.delete(file)
+	}
+
+	private IChannelService stubService() {
+		return Stub(IChannelService) {
+			generateId() >> 1L
+			getChannelAdmin() >> Stub(IChannelAdmin)
+			throttle() >> Long.MAX_VALUE
+		}
+	}
+
+	private static Pipe openPipe(byte[] data) {
+		def pipe = Pipe.open()
+		pipe.sink().write(ByteBuffer.wrap(data))
+		pipe.source().configureBlocking(false)
+		return pipe
+	}
+
+	private static byte[] bytes(int size) {
+		def bytes = new byte[size]
+		for (int i = 0; i < size; ++i)
+			bytes[i] = (byte) i
+		return bytes
+	}
+}
@@ -0,0 +1,126 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.channel
+
+import org.jruyi.io.buffer.BufferFactory
+import spock.lang.Specification
+
+class ReadSizerSpec extends Specification {
+
+	def "the capacity should start at 2KB"() {
+		expect:
+		ReadSizer.predictor().capacity() == 1 << ReadSizer.INITIAL_SHIFT
+		ReadSizer.predictor().capacity() == 2048
+	}
+
+	def "the capacity should double as soon as a read fills it up, up to 64KB"() {
+		given:
+		def predictor = ReadSizer.predictor()
+		def capacities = []
+
+		when:
+		for (int i = 0; i < 8; ++i) {
+			predictor.record(predictor.capacity())
+			capacities.add(predictor.capacity())
+		}
+
+		then:
+		capacities == [4096, 8192, 16384, 32768, 65536, 65536, 65536, 65536]
+		predictor.capacity() == 1 << ReadSizer.MAX_SHIFT
+	}
+
+	def "the capacity should halve after two reads in a row fitting in half of it, down to 64 bytes"() {
+		given:
+		def predictor = ReadSizer.predictor()
+		def capacities = []
+
+		when:
+		for (int i = 0; i < 14; ++i) {
+			predictor.record(1L)
+			capacities.add(predictor.capacity())
+		}
+
+		then:
+		capacities == [2048, 1024, 1024, 512, 512, 256, 256, 128, 128, 64, 64, 64, 64, 64]
+		predictor.capacity() == 1 << ReadSizer.MIN_SHIFT
+	}
+
+	def "a read not fitting in half of the capacity should reset shrinking"() {
+		given:
+		def predictor = ReadSizer.predictor()
+
+		when:
+		predictor.record(1024L)
+		predictor.record(1025L)
+		predictor.record(1024L)
+
+		then:
+		predictor.capacity() == 2048
+
+		when:
+		predictor.record(2048L)
+		predictor.record(1024L)
+
+		then:
+		predictor.capacity() == 4096
+	}
+
+	def "reads should be counted per unit capacity"() {
+		given:
+		def readSizer = new ReadSizer()
+		def predictor = ReadSizer.predictor()
+
+		when:
+		readSizer.record(predictor, 2048L)
+		readSizer.record(predictor, 100L)
+		readSizer.record(predictor, 100L)
+
+		then:
+		readSizer.reads() == 3L
+		readSizer.bytes() == 2248L
+		readSizer.reads(2048) == 1L
+		readSizer.reads(4096) == 2L
+		readSizer.reads(64) == 0L
+		predictor.capacity() == 2048
+		readSizer.toString() == "reads=3, bytes=2248, 2048=1, 4096=2"
+	}
+
+	def "an illegal capacity should be rejected"() {
+		when:
+		new ReadSizer().reads(capacity)
+
+		then:
+		thrown(IllegalArgumentException)
+
+		where:
+		capacity << [32, 100, 131072]
+	}
+
+	def "the predicted capacity should be allocated from a buffer factory"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 8192])
+		def predictor = ReadSizer.predictor()
+
+		when:
+		def buf = ReadSizer.create(bf, predictor)
+
+		then:
+		bf.usage() == 2048L
+
+		cleanup:
+		buf.close()
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.channel
+
+import java.nio.channels.ReadableByteChannel
+import java.nio.channels.SelectableChannel
+import java.nio.channels.WritableByteChannel
+
+/**
+ * A channel over the given byte channels, with no socket behind.
+ */
+class TestChannel extends Channel {
+
+	private final ReadableByteChannel m_source
+	private final WritableByteChannel m_target
+	boolean onCloseCalled
+
+	TestChannel(IChannelService cs, ReadableByteChannel source, WritableByteChannel target) {
+		super(cs)
+		m_source = source
+		m_target = target
+	}
+
+	@Override
+	Object remoteAddress() {
+		return null
+	}
+
+	@Override
+	Object localAddress() {
+		return null
+	}
+
+	@Override
+	protected SelectableChannel selectableChannel() {
+		return null
+	}
+
+	@Override
+	protected void onAccepted() {
+	}
+
+	@Override
+	protected void onClose() {
+		onCloseCalled = true
+	}
+
+	@Override
+	protected boolean connect() {
+		return false
+	}
+
+	@Override
+	protected void onConnected() {
+	}
+
+	@Override
+	protected ReadableByteChannel readableByteChannel() {
+		return m_source
+	}
+
+	@Override
+	protected WritableByteChannel writableByteChannel() {
+		return m_target
+	}
+}
@@ -0,0 +1,75 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.checksum
+
+import org.jruyi.io.*
+import org.jruyi.io.buffer.BufferFactory
+import spock.lang.Specification
+
+class ChecksumFilterSpec extends Specification {
+
+	def "departing messages should get a trailer that arriving messages are verified against"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def filter = new ChecksumFilter()
+		filter.activate([algorithm: algorithm])
+		def session = Stub(ISession)
+		def outputs = []
+		def output = Stub(IFilterOutput) {
+			add(_) >> { args -> outputs.add(args[0]) }
+		}
+		def payload = "checksummed payload across units".bytes
+		def msg = bf.create().write(payload, Codec.byteArray())
+
+		when:
+		def departed = filter.onMsgDepart(session, msg, output)
+		then:
+		departed
+		msg.length() == payload.length + trailerLength
+		filter.msgMinSize() == 0
+
+		when:
+		outputs.clear()
+		def arrived = filter.onMsgArrive(session, msg, output)
+		then:
+		arrived
+		outputs.size() == 1
+		outputs[0].get(0, outputs[0].length(), Codec.byteArray()) == payload
+
+		when:
+		outputs.clear()
+		def corrupt = bf.create().write(payload, Codec.byteArray())
+		filter.onMsgDepart(session, corrupt, output)
+		corrupt.set(3, (byte) 0)
+		arrived = filter.onMsgArrive(session, corrupt, output)
+		then:
+		!arrived
+		outputs.size() == 1
+
+		when:
+		outputs.clear()
+		arrived = filter.onMsgArrive(session, bf.create().write([1, 2] as byte[], Codec.byteArray()), output)
+		then:
+		!arrived
+		outputs.isEmpty()
+
+		where:
+		algorithm  | trailerLength
+		"CRC32"    | 4
+		"crc32c"   | 4
+		"XXHASH64" | 8
+	}
+}
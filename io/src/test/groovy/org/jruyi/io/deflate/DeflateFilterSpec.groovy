@@ -0,0 +1,152 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package org.jruyi.io.deflate
+
+import org.jruyi.io.*
+import org.jruyi.io.buffer.BufferFactory
+import spock.lang.Specification
+
+import java.util.concurrent.ConcurrentHashMap
+import java.util.zip.Inflater
+
+class DeflateFilterSpec extends Specification {
+
+	def "departing messages should be deflated as a stream that inflates back across arbitrary chunks"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 64, unitType: unitType])
+		def filter = new DeflateFilter()
+		filter.activate([level: 6, minSize: 16])
+		def session = stubSession()
+		def outputs = []
+		def output = Stub(IFilterOutput) {
+			add(_) >> { args -> outputs.add(args[0]) }
+		}
+		def messages = ["tiny"]
+		for (int i = 0; i < 20; ++i)
+			messages.add("message " + i + ": " + ("the quick brown fox jumps over the lazy dog " * 10))
+
+		when:
+		def wire = new ByteArrayOutputStream()
+		def plain = 0
+		for (String m : messages) {
+			if (m.startsWith("message 10"))
+				DeflateFilter.fullFlush(session)
+			plain += m.length()
+			assert filter.onMsgDepart(session, bf.create().write(m.bytes, Codec.byteArray()), output)
+			def netBuf = outputs.remove(0)
+			wire.write(netBuf.get(0, netBuf.length(), Codec.byteArray()))
+			netBuf.close()
+		}
+		def bytes = wire.toByteArray()
+		def inflater = new Inflater()
+		inflater.setInput(bytes)
+		def expected = new byte[plain]
+		def inflated = inflater.inflate(expected)
+
+		then:
+		bytes.length * 4 < plain
+		inflated == plain
+		new String(expected) == messages.join("")
+
+		when:
+		def received = new ByteArrayOutputStream()
+		for (int i = 0; i < bytes.length; i += 37) {
+			def chunk = bf.create().write(bytes, i, Math.min(37, bytes.length - i), Codec.byteArray())
+			assert filter.onMsgArrive(session, chunk, output)
+			while (!outputs.isEmpty()) {
+				def appBuf = outputs.remove(0)
+				received.write(appBuf.get(0, appBuf.length(), Codec.byteArray()))
+				appBuf.close()
+			}
+		}
+
+		then:
+		new String(received.toByteArray()) == messages.join("")
+
+		where:
+		unitType << ["heap", "direct"]
+	}
+
+	def "corrupt arrival data should fail the session"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 64])
+		def filter = new DeflateFilter()
+		filter.activate([:])
+		def output = Stub(IFilterOutput)
+
+		expect:
+		!filter.onMsgArrive(stubSession(), bf.create().write("not deflated".bytes, Codec.byteArray()), output)
+	}
+
+	def "a full flush requested from another thread should apply to the next departing message only"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 64])
+		def filter = new DeflateFilter()
+		filter.activate([:])
+		def session = stubSession()
+		def output = Stub(IFilterOutput) {
+			add(_) >> { args -> args[0].close() }
+		}
+
+		when:
+		def thread = new Thread({ DeflateFilter.fullFlush(session) } as Runnable)
+		thread.start()
+		thread.join()
+
+		then:
+		session.get(DeflateFilter.FULL_FLUSH) == Boolean.TRUE
+
+		when:
+		filter.onMsgDepart(session, bf.create().write("message".bytes, Codec.byteArray()), output)
+
+		then:
+		session.get(DeflateFilter.FULL_FLUSH) == null
+	}
+
+	def "closing the deflate streams of a session should end them"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 64])
+		def filter = new DeflateFilter()
+		filter.activate([:])
+		def session = stubSession()
+		def output = Stub(IFilterOutput) {
+			add(_) >> { args -> args[0].close() }
+		}
+		filter.onMsgDepart(session, bf.create().write("message".bytes, Codec.byteArray()), output)
+
+		when:
+		session.inquiry(DeflateFilter.COMPRESSOR).close()
+
+		then:
+		!filter.onMsgDepart(session, bf.create().write("message".bytes, Codec.byteArray()), output)
+	}
+
+	private def stubSession() {
+		def map = new IdentityHashMap()
+		def attributes = new ConcurrentHashMap()
+		def session = Stub(ISession)
+		session.inquiry(_) >> { args -> return map.get(args[0]) }
+		session.withdraw(_) >> { args -> return map.remove(args[0]) }
+		session.deposit(_, _) >> { k, v -> return map.put(k, v) }
+		session.get(_) >> { args -> return attributes.get(args[0]) }
+		session.put(_, _) >> { k, v -> return attributes.put(k, v) }
+		session.remove(_) >> { args -> return attributes.remove(args[0]) }
+		return session
+	}
+}
@@ -0,0 +1,99 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jruyi.io.lengthfield
+
+import org.jruyi.io.*
+import org.jruyi.io.buffer.BufferFactory
+import spock.lang.Specification
+
+class LengthFieldFilterSpec extends Specification {
+
+	def "departing messages should be framed so that arriving bytes are delimited back"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def filter = new LengthFieldFilter()
+		filter.activate([lengthFieldOffset: offset, lengthFieldLength: width, byteOrder: byteOrder,
+				lengthAdjustment: adjustment, stripHeader: strip])
+		def session = Stub(ISession)
+		def outputs = []
+		def output = Stub(IFilterOutput) {
+			add(_) >> { args -> outputs.add(args[0]) }
+		}
+		def header = new byte[strip ? 0 : offset + (width == 0 ? 0 : width)]
+		Arrays.fill(header, (byte) 0x7F)
+		def payload = ("framed payload " * 10).bytes
+
+		when: "frame a message and append the start of the next one"
+		def msg = bf.create().write(header, Codec.byteArray()).write(payload, Codec.byteArray())
+		filter.onMsgDepart(session, msg, output)
+		def frame = outputs.remove(0)
+		def frameLength = frame.length()
+		frame.write(0 as byte)
+		def prefix = strip ? new byte[0] : Arrays.copyOfRange(header, 0, offset)
+		then:
+		frame.get(0, prefix.length, Codec.byteArray()) == prefix
+		filter.tellBoundary(session, frame) == frameLength
+
+		when: "only part of the header has arrived"
+		def partial = frame.split(filter.msgMinSize() - 1)
+		frame.rewind()
+		then:
+		filter.tellBoundary(session, partial) == IFilter.E_UNDERFLOW
+
+		when: "deliver the frame"
+		def whole = bf.create().write(partial.get(0, partial.length(), Codec.byteArray()), Codec.byteArray())
+		whole.write(frame.get(0, frameLength - partial.length(), Codec.byteArray()), Codec.byteArray())
+		partial.close()
+		frame.close()
+		filter.onMsgArrive(session, whole, output)
+		def arrived = outputs.remove(0)
+		def bytes = arrived.get(0, arrived.length(), Codec.byteArray())
+		then:
+		!strip || bytes == payload
+		strip || bytes.length == frameLength
+		strip || Arrays.copyOfRange(bytes, bytes.length - payload.length, bytes.length) == payload
+
+		where:
+		offset | width | byteOrder       | adjustment | strip
+		0      | 1     | "BIG_ENDIAN"    | 0          | true
+		2      | 2     | "LITTLE_ENDIAN" | 0          | false
+		0      | 4     | "BIG_ENDIAN"    | -4         | false
+		0      | 4     | "LITTLE_ENDIAN" | 6          | true
+		1      | 8     | "BIG_ENDIAN"    | 0          | false
+		0      | 0     | "BIG_ENDIAN"    | 0          | true
+		2      | 0     | "BIG_ENDIAN"    | 0          | false
+	}
+
+	def "a frame length beyond the max frame size should fail the session"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def filter = new LengthFieldFilter()
+		filter.activate([lengthFieldLength: width, maxFrameSize: 1024])
+		def session = Stub(ISession)
+
+		expect:
+		filter.tellBoundary(session, bf.create().write(header as byte[], Codec.byteArray())) == IFilter.E_ERROR
+
+		where:
+		width | header
+		4     | [0, 0, 4, 0]
+		8     | [0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF, 0xFF]
+		0     | [0x81, 0x80, 0x80, 0x80, 0x80, 0x00]
+		0     | [0x80, 0x08]
+	}
+}
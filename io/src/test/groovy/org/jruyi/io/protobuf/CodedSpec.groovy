@@ -0,0 +1,146 @@
+/*
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+
+package org.jruyi.io.protobuf
+
+import java.nio.BufferUnderflowException
+
+import org.jruyi.io.Codec
+import org.jruyi.io.buffer.BufferFactory
+import spock.lang.Specification
+
+class CodedSpec extends Specification {
+
+	def "wire primitives should be encoded as Protocol Buffers does and read back across units"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def buf = bf.create()
+		def out = new CodedOutput(buf)
+
+		when:
+		out.writeInt32(1, 150)
+		out.writeString(2, "testing")
+		def mark = out.beginMessage(3)
+		out.writeInt32(1, 150)
+		def inner = out.beginMessage(2)
+		out.writeSInt32(1, -1)
+		out.writeSInt64(2, -2L)
+		out.endMessage(inner)
+		out.endMessage(mark)
+		out.writeInt32(4, -1)
+		out.writeFixed32(5, 0x01020304)
+		out.writeDouble(6, 1.5d)
+		out.writeBytes(7, new byte[300])
+		out.writeBool(8, true)
+		then:
+		toList(buf.get(0, 30, Codec.byteArray())) == [
+				0x08, 0x96, 0x01,
+				0x12, 0x07, 0x74, 0x65, 0x73, 0x74, 0x69, 0x6E, 0x67,
+				0x1A, 0x8D, 0x80, 0x80, 0x80, 0x00, 0x08, 0x96, 0x01,
+				0x12, 0x84, 0x80, 0x80, 0x80, 0x00, 0x08, 0x01, 0x10]
+
+		when:
+		def input = new CodedInput(buf)
+		then:
+		input.readTag() == WireFormat.makeTag(1, WireFormat.WIRETYPE_VARINT)
+		input.readInt32() == 150
+		input.readTag() == WireFormat.makeTag(2, WireFormat.WIRETYPE_LENGTH_DELIMITED)
+		input.readString() == "testing"
+		input.readTag() == WireFormat.makeTag(3, WireFormat.WIRETYPE_LENGTH_DELIMITED)
+
+		when: "read the outer nested message, skipping the inner one"
+		def oldLimit = input.pushLimit()
+		def tags = []
+		def tag
+		while ((tag = input.readTag()) != 0) {
+			tags.add(tag)
+			if (tag == WireFormat.makeTag(1, WireFormat.WIRETYPE_VARINT))
+				assert input.readInt32() == 150
+			else
+				assert input.skipField(tag)
+		}
+		input.popLimit(oldLimit)
+		then:
+		tags == [WireFormat.makeTag(1, WireFormat.WIRETYPE_VARINT),
+				WireFormat.makeTag(2, WireFormat.WIRETYPE_LENGTH_DELIMITED)]
+
+		when:
+		input.readTag()
+		def int32 = input.readInt32()
+		input.readTag()
+		def fixed32 = input.readFixed32()
+		input.readTag()
+		def dbl = input.readDouble()
+		input.readTag()
+		def bytes = input.readBytes()
+		input.readTag()
+		def bool = input.readBool()
+		then:
+		int32 == -1
+		fixed32 == 0x01020304
+		dbl == 1.5d
+		bytes == new byte[300]
+		bool
+		input.isAtEnd()
+		input.readTag() == 0
+	}
+
+	def "zigzag varints should round-trip"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def buf = bf.create()
+		def out = new CodedOutput(buf)
+		def input = new CodedInput(buf)
+
+		when:
+		out.writeSInt32(1, value as int)
+		out.writeSInt64(2, value as long)
+		input.readTag()
+		def v32 = input.readSInt32()
+		input.readTag()
+		def v64 = input.readSInt64()
+		then:
+		v32 == (value as int)
+		v64 == (value as long)
+
+		where:
+		value << [0, 1, -1, 63, -64, 64, Integer.MAX_VALUE, Integer.MIN_VALUE]
+	}
+
+	def "no primitive read should cross the limit of a nested message"() {
+		given:
+		def bf = new BufferFactory()
+		bf.activate([unitCapacity: 9])
+		def buf = bf.create()
+		buf.write([3, 0x80, 0x80, 0x80, 0x01, 0, 0, 0, 0, 0, 0, 0] as byte[], Codec.byteArray())
+		def input = new CodedInput(buf)
+
+		when:
+		input.pushLimit()
+		read(input)
+		then:
+		thrown(BufferUnderflowException)
+
+		where:
+		read << [{ it.readUInt64() }, { it.readSInt32() }, { it.readSInt64() }, { it.readFixed32() },
+			{ it.readFixed64() }, { it.readFloat() }, { it.readDouble() }, { it.skipField(5) }]
+	}
+
+	private static List<Integer> toList(byte[] bytes) {
+		return bytes.collect { it & 0xFF }
+	}
+}